@@ -6,13 +6,19 @@ import hudson.model.Node;
 import hudson.remoting.Callable;
 import hudson.remoting.VirtualChannel;
 import jenkins.model.Jenkins;
+import net.jcip.annotations.GuardedBy;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.WeakHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
@@ -25,7 +31,13 @@ public class AsyncResultCache<T> implements Runnable {
     private final WeakHashMap<Node, T> cache;
     private final Future<T> future;
     private final Node node;
+    /**
+     * The class of the operation, {@code null} if unknown, in which case the result is not kept in the
+     * {@link PersistentResultCache}.
+     */
+    private final Class<?> operation;
     private final String name;
+    private final boolean persistent;
 
     public static <V, T extends java.lang.Throwable> V get(Node node, WeakHashMap<Node, V> cache, /*MasterToSlave*/Callable<V,T> operation, String name, V defaultIfNull)
 
@@ -37,50 +49,148 @@ public class AsyncResultCache<T> implements Runnable {
     public static <V, T extends java.lang.Throwable> V get(Node node, WeakHashMap<Node, V> cache, /*MasterToSlave*/Callable<V,T> operation, String name)
 
             throws IOException {
-        
+
         if (node == null) return null;
-        Future<V> future;
+        boolean persistent = !(operation instanceof PersistentResultCache.Transient);
+        PersistentResultCache.Record record = PersistentResultCache.get().lookup(node, operation.getClass(), name);
+        if (record != null && useWithoutWaiting(node, cache, operation, name, record, persistent)) {
+            return valueOf(record);
+        }
+        Future<V> future = launch(node, operation);
+        if (future == null) {
+            return cached(node, cache, operation.getClass(), name);
+        }
+        return collect(node, cache, future, operation.getClass(), name, SupportPlugin.REMOTE_OPERATION_TIMEOUT_MS, persistent);
+    }
+
+    /**
+     * Prepares an operation to be run on several nodes at once. Nothing is launched until the first result is
+     * requested from the returned {@link Batch}, then the operation is launched on all the nodes together and every
+     * result is waited for until a single deadline, {@link SupportPlugin#REMOTE_OPERATION_TIMEOUT_MS} after the launch,
+     * so the time spent waiting for results is bounded by the slowest node instead of adding up over all the nodes.
+     *
+     * @param nodes the nodes to run the operation on
+     * @param cache the cache the results are stored in, and read from when a result is not available in time
+     * @param operation creates the operation to run on each node, or returns {@code null} if there is nothing to run
+     * @param name the name of the retrieved information, for logging
+     * @return the batch to get the results from
+     */
+    public static <V, T extends java.lang.Throwable> Batch<V> batch(Iterable<? extends Node> nodes, WeakHashMap<Node, V> cache,
+                                                                  Function<? super Node, ? extends /*MasterToSlave*/Callable<V,T>> operation, String name) {
+        return new Batch<>(nodes, cache, operation, name);
+    }
+
+    /**
+     * Starts an operation on a node.
+     * @return the pending result, or {@code null} if the node is off-line
+     */
+    private static <V, T extends java.lang.Throwable> Future<V> launch(Node node, Callable<V,T> operation) throws IOException {
         // If launching execution on the built-in node, no need to use the CallAsyncWrapper
         if (node instanceof Jenkins) {
-            future = Computer.threadPoolForRemoting.submit(() -> {
+            return Computer.threadPoolForRemoting.submit(() -> {
                 try {
                     return operation.call();
                 } catch (Throwable e) {
                     throw new IOException(e);
                 }
             });
-        } else {
-            VirtualChannel channel = node.getChannel();
-            if (channel == null) {
-                synchronized (cache) {
-                    return cache.get(node);
+        }
+        VirtualChannel channel = node.getChannel();
+        if (channel == null) {
+            return null;
+        }
+        return CallAsyncWrapper.callAsync(channel, operation);
+    }
+
+    /**
+     * Decides whether a cached result can be used without asking the node, see
+     * {@link PersistentResultCache#FRESH_SECONDS}. A result which is no longer fresh is retrieved again in the
+     * background.
+     * @return whether the cached result can be used
+     */
+    private static <V, T extends java.lang.Throwable> boolean useWithoutWaiting(Node node, WeakHashMap<Node, V> cache, Callable<V,T> operation,
+                                                                               String name, PersistentResultCache.Record record, boolean persistent) {
+        if (PersistentResultCache.FRESH_SECONDS <= 0) {
+            return false;
+        }
+        if (!record.isFresh()) {
+            PersistentResultCache store = PersistentResultCache.get();
+            if (store.startRefresh(node, operation.getClass(), name)) {
+                try {
+                    Future<V> future = launch(node, operation);
+                    if (future == null) {
+                        store.endRefresh(node, operation.getClass(), name);
+                    } else {
+                        Computer.threadPoolForRemoting.submit(
+                                new AsyncResultCache<>(node, cache, future, operation.getClass(), name, persistent));
+                    }
+                } catch (IOException e) {
+                    final LogRecord lr = new LogRecord(Level.FINE, "Could not refresh {0} from {1}");
+                    lr.setParameters(new Object[]{name, getNodeName(node)});
+                    lr.setThrown(e);
+                    LOGGER.log(lr);
+                    store.endRefresh(node, operation.getClass(), name);
                 }
             }
-            future = CallAsyncWrapper.callAsync(channel, operation);
         }
-        try {
-            final V result = future.get(SupportPlugin.REMOTE_OPERATION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-            synchronized (cache) {
-                cache.put(node, result);
+        record.markServedFromCache();
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V valueOf(PersistentResultCache.Record record) {
+        return (V) record.getValue();
+    }
+
+    /**
+     * @param operation the class of the operation, or {@code null} if unknown
+     * @return the last result retrieved from the node, unless it has expired
+     */
+    private static <V> V cached(Node node, WeakHashMap<Node, V> cache, Class<?> operation, String name) {
+        if (operation != null) {
+            PersistentResultCache.Record record = PersistentResultCache.get().lookup(node, operation, name);
+            if (record != null) {
+                record.markServedFromCache();
+                return valueOf(record);
             }
+        }
+        synchronized (cache) {
+            return cache.get(node);
+        }
+    }
+
+    private static <V> void remember(Node node, WeakHashMap<Node, V> cache, Class<?> operation, String name, V result,
+                                     boolean persistent) {
+        synchronized (cache) {
+            cache.put(node, result);
+        }
+        if (operation != null) {
+            PersistentResultCache.get().put(node, operation, name, result, persistent);
+        }
+    }
+
+    /**
+     * Waits for the result of an operation and caches it, or falls back to the cache if it does not come in time.
+     */
+    private static <V> V collect(Node node, WeakHashMap<Node, V> cache, Future<V> future, Class<?> operation, String name,
+                                 long timeoutMs, boolean persistent) {
+        try {
+            final V result = future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            remember(node, cache, operation, name, result, persistent);
             return result;
         } catch (InterruptedException | ExecutionException e) {
             final LogRecord lr = new LogRecord(Level.FINE, "Could not retrieve {0} from {1}");
             lr.setParameters(new Object[]{name, getNodeName(node)});
             lr.setThrown(e);
             LOGGER.log(lr);
-            synchronized (cache) {
-                return cache.get(node);
-            }
+            return cached(node, cache, operation, name);
         } catch (TimeoutException e) {
             final LogRecord lr = new LogRecord(Level.FINER, "Could not retrieve {0} from {1}");
             lr.setParameters(new Object[]{name, getNodeName(node)});
             lr.setThrown(e);
             LOGGER.log(lr);
-            Computer.threadPoolForRemoting.submit(new AsyncResultCache<>(node, cache, future, name));
-            synchronized (cache) {
-                return cache.get(node);
-            }
+            Computer.threadPoolForRemoting.submit(new AsyncResultCache<>(node, cache, future, operation, name, persistent));
+            return cached(node, cache, operation, name);
         }
     }
 
@@ -89,10 +199,17 @@ public class AsyncResultCache<T> implements Runnable {
     }
 
     public AsyncResultCache(Node node, WeakHashMap<Node, T> cache, Future<T> future, String name) {
+        this(node, cache, future, null, name, true);
+    }
+
+    private AsyncResultCache(Node node, WeakHashMap<Node, T> cache, Future<T> future, Class<?> operation, String name,
+                             boolean persistent) {
         this.node = node;
         this.cache = cache;
         this.future = future;
+        this.operation = operation;
         this.name = name;
+        this.persistent = persistent;
     }
 
     @Override
@@ -100,9 +217,7 @@ public class AsyncResultCache<T> implements Runnable {
         T result;
         try {
             result = future.get(SupportPlugin.REMOTE_OPERATION_CACHE_TIMEOUT_SEC, TimeUnit.SECONDS);
-            synchronized (cache) {
-                cache.put(node, result);
-            }
+            remember(node, cache, operation, name, result, persistent);
         } catch (InterruptedException | ExecutionException e1) {
             final LogRecord lr = new LogRecord(Level.FINE, "Could not retrieve {0} from {1} for caching");
             lr.setParameters(new Object[]{name, getNodeName(node)});
@@ -114,6 +229,136 @@ public class AsyncResultCache<T> implements Runnable {
             lr.setThrown(e1);
             LOGGER.log(lr);
             future.cancel(true);
+        } finally {
+            if (operation != null) {
+                PersistentResultCache.get().endRefresh(node, operation, name);
+            }
+        }
+    }
+
+    /**
+     * An operation run on several nodes at once.
+     *
+     * @see #batch(Iterable, WeakHashMap, Function, String)
+     */
+    public static final class Batch<V> {
+        private final List<Node> nodes = new ArrayList<>();
+        private final WeakHashMap<Node, V> cache;
+        private final Function<? super Node, ? extends Callable<V, ?>> operation;
+        private final String name;
+        @GuardedBy("this")
+        private Map<Node, Future<V>> futures;
+        @GuardedBy("this")
+        private Map<Node, IOException> failures;
+        @GuardedBy("this")
+        private Map<Node, PersistentResultCache.Record> unchanged;
+        @GuardedBy("this")
+        private Map<Node, Boolean> persistents;
+        @GuardedBy("this")
+        private Map<Node, Class<?>> operations;
+        @GuardedBy("this")
+        private long deadline;
+
+        private Batch(Iterable<? extends Node> nodes, WeakHashMap<Node, V> cache,
+                      Function<? super Node, ? extends Callable<V, ?>> operation, String name) {
+            for (Node node : nodes) {
+                this.nodes.add(node);
+            }
+            this.cache = cache;
+            this.operation = operation;
+            this.name = name;
+        }
+
+        /**
+         * Launches the operation on all the nodes if not done yet, without waiting for any result.
+         * @return this batch
+         */
+        public synchronized Batch<V> start() {
+            if (futures == null) {
+                launchAll();
+            }
+            return this;
+        }
+
+        /**
+         * Gets the result of the operation on a node, launching the operation on all the nodes if not done yet.
+         * @param node the node
+         * @return the result, the cached result if it is not available before the deadline, or {@code null}
+         * @throws IOException if the operation could not be launched on the node
+         */
+        public V get(Node node) throws IOException {
+            if (node == null) return null;
+            Future<V> future;
+            Class<?> type;
+            boolean persistent;
+            long remaining;
+            synchronized (this) {
+                if (futures == null) {
+                    launchAll();
+                }
+                IOException failure = failures.get(node);
+                if (failure != null) {
+                    throw new IOException(failure);
+                }
+                PersistentResultCache.Record record = unchanged.get(node);
+                if (record != null) {
+                    return valueOf(record);
+                }
+                future = futures.get(node);
+                type = operations.get(node);
+                persistent = Boolean.TRUE.equals(persistents.get(node));
+                remaining = Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+            }
+            if (future == null) {
+                // Off-line, not part of the batch, or nothing to run
+                return cached(node, cache, type, name);
+            }
+            return collect(node, cache, future, type, name, remaining, persistent);
+        }
+
+        /**
+         * Gets the result of the operation on a node, launching the operation on all the nodes if not done yet.
+         * @param node the node
+         * @param defaultIfNull returned when no result is available
+         * @return the result, the cached result if it is not available before the deadline, or the default value
+         * @throws IOException if the operation could not be launched on the node
+         */
+        public V get(Node node, V defaultIfNull) throws IOException {
+            V result = get(node);
+            return result == null ? defaultIfNull : result;
+        }
+
+        @GuardedBy("this")
+        private void launchAll() {
+            futures = new HashMap<>();
+            failures = new HashMap<>();
+            unchanged = new HashMap<>();
+            persistents = new HashMap<>();
+            operations = new HashMap<>();
+            PersistentResultCache store = PersistentResultCache.get();
+            for (Node node : nodes) {
+                Callable<V, ?> callable = operation.apply(node);
+                if (callable == null) {
+                    continue;
+                }
+                operations.put(node, callable.getClass());
+                boolean persistent = !(callable instanceof PersistentResultCache.Transient);
+                PersistentResultCache.Record record = store.lookup(node, callable.getClass(), name);
+                if (record != null && useWithoutWaiting(node, cache, callable, name, record, persistent)) {
+                    unchanged.put(node, record);
+                    continue;
+                }
+                try {
+                    Future<V> future = launch(node, callable);
+                    if (future != null) {
+                        futures.put(node, future);
+                        persistents.put(node, persistent);
+                    }
+                } catch (IOException e) {
+                    failures.put(node, e);
+                }
+            }
+            deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SupportPlugin.REMOTE_OPERATION_TIMEOUT_MS);
         }
     }
 }
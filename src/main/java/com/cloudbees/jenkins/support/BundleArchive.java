@@ -0,0 +1,371 @@
+package com.cloudbees.jenkins.support;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * The zip file a bundle is written to. Entries are written one at a time: {@link #putArchiveEntry(String, long)},
+ * the content of the entry through the {@link OutputStream} methods, then {@link #closeArchiveEntry()}.
+ * <p>
+ * By default entries are compressed on the fly by the writing thread. When
+ * {@link SupportPlugin#BUNDLE_COMPRESSION_THREADS} is greater than 1, each finished entry is instead handed to a pool
+ * of threads compressing entries concurrently, and appended to the zip once compressed. Entries which are already
+ * compressed, like gzipped logs or images, are not compressed again.
+ *
+ * @see SupportPlugin#BUNDLE_COMPRESSION_LEVEL
+ */
+@Restricted(NoExternalUse.class)
+abstract class BundleArchive extends OutputStream {
+
+    private static final Logger LOGGER = Logger.getLogger(BundleArchive.class.getName());
+
+    /**
+     * Extensions of the files which are already compressed, so compressing them again is a waste of time.
+     */
+    private static final Set<String> COMPRESSED_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            ".gz", ".zip", ".bz2", ".xz", ".jar", ".hpi", ".jpi", ".png", ".jpg", ".jpeg", ".gif"
+    )));
+
+    /**
+     * Creates the archive matching the current configuration.
+     * @param out where to write the zip file
+     * @return the archive
+     */
+    static @NonNull BundleArchive create(@NonNull OutputStream out) {
+        if (SupportPlugin.BUNDLE_COMPRESSION_THREADS > 1) {
+            return new ParallelArchive(out, SupportPlugin.BUNDLE_COMPRESSION_THREADS, SupportPlugin.BUNDLE_COMPRESSION_LEVEL);
+        }
+        return new DirectArchive(out, SupportPlugin.BUNDLE_COMPRESSION_LEVEL);
+    }
+
+    /**
+     * Starts a new entry.
+     * @param name the name of the entry
+     * @param time the last modification time of the entry
+     * @throws IOException if the entry cannot be started
+     */
+    abstract void putArchiveEntry(@NonNull String name, long time) throws IOException;
+
+    /**
+     * Finishes the current entry.
+     * @throws IOException if the entry cannot be finished
+     */
+    abstract void closeArchiveEntry() throws IOException;
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    static boolean isAlreadyCompressed(@NonNull String name) {
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && COMPRESSED_EXTENSIONS.contains(name.substring(dot).toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Compresses the entries as they are written. Since the zip is not written to a file, the sizes and checksum of an
+     * entry cannot be written before its content, so entries which are already compressed are deflated without
+     * compression instead of being stored.
+     */
+    static class DirectArchive extends BundleArchive {
+        private final ZipArchiveOutputStream zip;
+        private final int level;
+
+        DirectArchive(@NonNull OutputStream out, int level) {
+            this.zip = new ZipArchiveOutputStream(out);
+            this.level = level;
+            this.zip.setLevel(level);
+        }
+
+        @Override
+        void putArchiveEntry(@NonNull String name, long time) throws IOException {
+            ZipArchiveEntry entry = new ZipArchiveEntry(name);
+            entry.setTime(time);
+            // Applies from this entry on
+            zip.setLevel(isAlreadyCompressed(name) ? Deflater.NO_COMPRESSION : level);
+            zip.putArchiveEntry(entry);
+        }
+
+        @Override
+        void closeArchiveEntry() throws IOException {
+            zip.closeArchiveEntry();
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            zip.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            zip.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            zip.close();
+        }
+    }
+
+    /**
+     * Buffers every entry and compresses it on a pool of threads while the next entries are written. The calling
+     * thread appends the compressed entries to the zip as soon as they are ready, in the order they were written, and
+     * waits for the oldest ones when too many are in flight, to bound the memory and disk used by the buffers.
+     */
+    static class ParallelArchive extends BundleArchive {
+        /**
+         * Number of entries being compressed or waiting to be appended, per thread.
+         */
+        private static final int PENDING_ENTRIES_PER_THREAD = 16;
+
+        /**
+         * Memory held by the entries being compressed or waiting to be appended, per thread, as a number of
+         * {@link ParallelBundleWriter#IN_MEMORY_THRESHOLD in memory buffers}.
+         */
+        private static final int PENDING_BUFFERS_PER_THREAD = 2;
+
+        private final ZipArchiveOutputStream zip;
+        private final int level;
+        private final ExecutorService executor;
+        private final Deque<Deflater> deflaters = new ConcurrentLinkedDeque<>();
+        private final Deque<PendingEntry> pending = new ArrayDeque<>();
+        private final int maxPendingEntries;
+        private final long maxPendingBytes;
+        private long pendingBytes;
+        private final CRC32 crc = new CRC32();
+        @CheckForNull
+        private ZipArchiveEntry current;
+        @CheckForNull
+        private DeferredFileOutputStream currentBuffer;
+
+        ParallelArchive(@NonNull OutputStream out, int threads, int level) {
+            this.zip = new ZipArchiveOutputStream(out);
+            this.level = level;
+            this.executor = Executors.newFixedThreadPool(threads,
+                    new NamingThreadFactory(new DaemonThreadFactory(), "SupportPlugin bundle compressor"));
+            this.maxPendingEntries = threads * PENDING_ENTRIES_PER_THREAD;
+            this.maxPendingBytes = (long) threads * PENDING_BUFFERS_PER_THREAD * ParallelBundleWriter.IN_MEMORY_THRESHOLD;
+        }
+
+        @Override
+        void putArchiveEntry(@NonNull String name, long time) throws IOException {
+            if (current != null) {
+                throw new IOException("The previous entry " + current.getName() + " was not closed");
+            }
+            current = new ZipArchiveEntry(name);
+            current.setTime(time);
+            current.setMethod(isAlreadyCompressed(name) ? ZipEntry.STORED : ZipEntry.DEFLATED);
+            currentBuffer = newBuffer();
+            crc.reset();
+        }
+
+        @Override
+        void closeArchiveEntry() throws IOException {
+            if (current == null || currentBuffer == null) {
+                throw new IOException("No current entry to close");
+            }
+            ZipArchiveEntry entry = current;
+            DeferredFileOutputStream buffer = currentBuffer;
+            current = null;
+            currentBuffer = null;
+            buffer.close();
+            Future<DeferredFileOutputStream> compressed;
+            if (entry.getMethod() == ZipEntry.STORED) {
+                // Nothing to compress, the checksum was computed while the entry was written
+                entry.setSize(buffer.getByteCount());
+                entry.setCompressedSize(buffer.getByteCount());
+                entry.setCrc(crc.getValue());
+                compressed = CompletableFuture.completedFuture(buffer);
+            } else {
+                compressed = executor.submit(() -> compress(entry, buffer));
+            }
+            // Roughly the memory used by the entry, either before or after being compressed
+            long bytes = Math.min(buffer.getByteCount(), ParallelBundleWriter.IN_MEMORY_THRESHOLD);
+            pending.add(new PendingEntry(entry, compressed, bytes));
+            pendingBytes += bytes;
+            append(false);
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            if (current == null || currentBuffer == null) {
+                throw new IOException("No current entry to write to");
+            }
+            currentBuffer.write(b, off, len);
+            if (current.getMethod() == ZipEntry.STORED) {
+                crc.update(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (currentBuffer != null) {
+                currentBuffer.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                append(true);
+            } finally {
+                executor.shutdownNow();
+                try {
+                    executor.awaitTermination(SupportPlugin.REMOTE_OPERATION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                // Entries left behind when the zip could not be written
+                for (PendingEntry entry : pending) {
+                    if (entry.compressed.isDone() && !entry.compressed.isCancelled()) {
+                        try {
+                            discard(entry.compressed.get());
+                        } catch (ExecutionException | InterruptedException e) {
+                            // nothing to discard
+                        }
+                    } else {
+                        entry.compressed.cancel(true);
+                    }
+                }
+                pending.clear();
+                deflaters.forEach(Deflater::end);
+                deflaters.clear();
+                if (currentBuffer != null) {
+                    currentBuffer.close();
+                    discard(currentBuffer);
+                }
+                zip.close();
+            }
+        }
+
+        /**
+         * Appends the oldest entries to the zip once compressed.
+         * @param all whether to wait for all the entries, otherwise only for as many as needed to go back under the
+         * limits
+         */
+        private void append(boolean all) throws IOException {
+            while (!pending.isEmpty()) {
+                PendingEntry entry = pending.peek();
+                if (!all && !entry.compressed.isDone()
+                        && pending.size() <= maxPendingEntries && pendingBytes <= maxPendingBytes) {
+                    return;
+                }
+                DeferredFileOutputStream compressed;
+                try {
+                    compressed = entry.compressed.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while compressing the support bundle", e);
+                } catch (ExecutionException e) {
+                    throw new IOException("Could not compress " + entry.entry.getName(), e.getCause());
+                }
+                pending.poll();
+                pendingBytes -= entry.bytes;
+                try (InputStream in = open(compressed)) {
+                    zip.addRawArchiveEntry(entry.entry, in);
+                } finally {
+                    discard(compressed);
+                }
+            }
+        }
+
+        /**
+         * Deflates the content of an entry. Runs on the pool.
+         * @return the deflated content
+         */
+        private DeferredFileOutputStream compress(ZipArchiveEntry entry, DeferredFileOutputStream raw) throws IOException {
+            Deflater deflater = deflaters.poll();
+            if (deflater == null) {
+                deflater = new Deflater(level, true);
+            }
+            DeferredFileOutputStream compressed = newBuffer();
+            boolean done = false;
+            try (InputStream in = open(raw);
+                 DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater, 8192)) {
+                CRC32 checksum = new CRC32();
+                byte[] buffer = new byte[8192];
+                for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                    checksum.update(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                }
+                out.finish();
+                entry.setSize(deflater.getBytesRead());
+                entry.setCompressedSize(deflater.getBytesWritten());
+                entry.setCrc(checksum.getValue());
+                done = true;
+            } finally {
+                discard(raw);
+                deflater.reset();
+                deflaters.add(deflater);
+                if (!done) {
+                    discard(compressed);
+                }
+            }
+            return compressed;
+        }
+    }
+
+    private static final class PendingEntry {
+        private final ZipArchiveEntry entry;
+        private final Future<DeferredFileOutputStream> compressed;
+        private final long bytes;
+
+        private PendingEntry(ZipArchiveEntry entry, Future<DeferredFileOutputStream> compressed, long bytes) {
+            this.entry = entry;
+            this.compressed = compressed;
+            this.bytes = bytes;
+        }
+    }
+
+    private static DeferredFileOutputStream newBuffer() {
+        return new DeferredFileOutputStream(ParallelBundleWriter.IN_MEMORY_THRESHOLD, "support-bundle-entry", ".tmp", null);
+    }
+
+    private static InputStream open(DeferredFileOutputStream buffer) throws IOException {
+        if (buffer.isInMemory()) {
+            return new ByteArrayInputStream(buffer.getData());
+        }
+        return Files.newInputStream(buffer.getFile().toPath());
+    }
+
+    private static void discard(DeferredFileOutputStream buffer) {
+        File file = buffer.getFile();
+        if (!buffer.isInMemory() && file != null && file.exists() && !file.delete()) {
+            LOGGER.log(Level.FINE, "Could not delete temporary file {0}", file);
+        }
+    }
+}
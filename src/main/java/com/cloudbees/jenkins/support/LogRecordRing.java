@@ -0,0 +1,190 @@
+package com.cloudbees.jenkins.support;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+
+/**
+ * Fixed size ring of formatted log records. The bytes of the records are copied one after the other in a single
+ * array, overwriting the oldest records once the end of the array is reached, so the memory used does not depend on
+ * the number of records, and records are not lost when the garbage collector needs memory.
+ * <p>
+ * Adding a record never blocks: each record reserves its bytes in the array with an atomic counter, copies them and
+ * is then published in an index of the last records. Readers skip the records whose bytes were overwritten while
+ * being read.
+ * <p>
+ * Records which do not need to be formatted right away, like those not written to the log files, can also be added as
+ * they are. They are then only formatted when read, and kept through a soft reference like the records themselves
+ * used to be, so they do not hold on to their parameters under memory pressure.
+ */
+@Restricted(NoExternalUse.class)
+final class LogRecordRing {
+
+    private static final class Entry {
+        private final long sequence;
+        private final long start;
+        private final int length;
+        private final long millis;
+        private final int level;
+        /**
+         * The record to format when read, if its bytes are not in the array.
+         */
+        @CheckForNull
+        private final Reference<LogRecord> record;
+
+        private Entry(long sequence, long start, int length, long millis, int level, @CheckForNull LogRecord record) {
+            this.sequence = sequence;
+            this.start = start;
+            this.length = length;
+            this.millis = millis;
+            this.level = level;
+            this.record = record == null ? null : new SoftReference<>(record);
+        }
+    }
+
+    /**
+     * Receives the records read from the ring.
+     */
+    interface Visitor {
+        /**
+         * @param bytes the array holding the bytes of the record, only valid during the call
+         * @param length the number of bytes of the record, starting at 0
+         * @param millis the time of the record
+         * @param level the value of the level of the record
+         */
+        void visit(byte[] bytes, int length, long millis, int level) throws IOException;
+    }
+
+    private final byte[] arena;
+    private final int maxRecordLength;
+    private final AtomicReferenceArray<Entry> entries;
+    /**
+     * Number of records added so far.
+     */
+    private final AtomicLong sequences = new AtomicLong();
+    /**
+     * Number of bytes reserved so far. The byte number {@code n} is stored at {@code n % arena.length}.
+     */
+    private final AtomicLong reserved = new AtomicLong();
+
+    /**
+     * @param maxRecords the maximum number of records kept
+     * @param maxBytes the size of the array holding the records
+     */
+    LogRecordRing(int maxRecords, int maxBytes) {
+        this.arena = new byte[maxBytes];
+        // A single record must not evict all the others
+        this.maxRecordLength = Math.max(1, maxBytes / 16);
+        this.entries = new AtomicReferenceArray<>(maxRecords);
+    }
+
+    /**
+     * Adds a record, truncated if too long.
+     * @param bytes the formatted record
+     * @param millis the time of the record
+     * @param level the value of the level of the record
+     */
+    void add(@NonNull byte[] bytes, long millis, int level) {
+        int length = Math.min(bytes.length, maxRecordLength);
+        long sequence = sequences.getAndIncrement();
+        long start = reserved.getAndAdd(length);
+        int offset = (int) (start % arena.length);
+        int first = Math.min(length, arena.length - offset);
+        System.arraycopy(bytes, 0, arena, offset, first);
+        System.arraycopy(bytes, first, arena, 0, length - first);
+        if (length < bytes.length) {
+            // Keep the records separated
+            arena[(int) ((start + length - 1) % arena.length)] = '\n';
+        }
+        entries.set((int) (sequence % entries.length()), new Entry(sequence, start, length, millis, level, null));
+    }
+
+    /**
+     * Adds a record to be formatted when read.
+     * @param record the record
+     */
+    void add(@NonNull LogRecord record) {
+        long sequence = sequences.getAndIncrement();
+        entries.set((int) (sequence % entries.length()),
+                new Entry(sequence, 0, 0, record.getMillis(), record.getLevel().intValue(), record));
+    }
+
+    /**
+     * Reads the records still in the ring, from the oldest to the newest.
+     * @param formatter formats the records added as they are
+     * @param visitor receives each record
+     * @throws IOException if the visitor fails
+     */
+    void read(@NonNull Formatter formatter, @NonNull Visitor visitor) throws IOException {
+        long end = sequences.get();
+        int size = entries.length();
+        byte[] buffer = new byte[Math.min(maxRecordLength, 8192)];
+        for (long sequence = Math.max(0, end - size); sequence < end; sequence++) {
+            Entry entry = entries.get((int) (sequence % size));
+            // The slot may not be written yet, or already reused by a newer record
+            if (entry == null || entry.sequence != sequence) {
+                continue;
+            }
+            if (entry.record != null) {
+                LogRecord record = entry.record.get();
+                if (record != null) {
+                    byte[] bytes = format(formatter, record);
+                    visitor.visit(bytes, bytes.length, entry.millis, entry.level);
+                }
+                continue;
+            }
+            if (buffer.length < entry.length) {
+                buffer = new byte[maxRecordLength];
+            }
+            int offset = (int) (entry.start % arena.length);
+            int first = Math.min(entry.length, arena.length - offset);
+            System.arraycopy(arena, offset, buffer, 0, first);
+            System.arraycopy(arena, 0, buffer, first, entry.length - first);
+            if (reserved.get() - arena.length > entry.start) {
+                // Newer records have been written over this one
+                continue;
+            }
+            visitor.visit(buffer, entry.length, entry.millis, entry.level);
+        }
+    }
+
+    /**
+     * Writes the records still in the ring, from the oldest to the newest.
+     * @param formatter formats the records added as they are
+     * @param out where to write the records
+     * @throws IOException if the records cannot be written
+     */
+    void writeTo(@NonNull Formatter formatter, @NonNull OutputStream out) throws IOException {
+        read(formatter, (bytes, length, millis, level) -> out.write(bytes, 0, length));
+    }
+
+    private byte[] format(Formatter formatter, LogRecord record) {
+        String formatted;
+        try {
+            formatted = formatter.format(record);
+        } catch (RuntimeException e) {
+            // Still better than losing the record
+            formatted = record.getLevel() + " " + record.getLoggerName() + " " + record.getMessage() + "\n";
+        }
+        byte[] bytes = formatted.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maxRecordLength) {
+            // Truncated like the records copied in the array
+            byte[] truncated = new byte[maxRecordLength];
+            System.arraycopy(bytes, 0, truncated, 0, maxRecordLength);
+            truncated[maxRecordLength - 1] = '\n';
+            return truncated;
+        }
+        return bytes;
+    }
+}
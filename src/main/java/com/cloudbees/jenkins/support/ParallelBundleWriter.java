@@ -0,0 +1,222 @@
+package com.cloudbees.jenkins.support;
+
+import com.cloudbees.jenkins.support.api.Content;
+import com.cloudbees.jenkins.support.filter.ContentFilter;
+import com.cloudbees.jenkins.support.filter.ContentMappings;
+import com.cloudbees.jenkins.support.filter.FilteredOutputStream;
+import com.cloudbees.jenkins.support.util.IgnoreCloseOutputStream;
+import com.cloudbees.jenkins.support.util.OutputStreamSelector;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.BulkChange;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import org.acegisecurity.Authentication;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes the contents of a bundle using a pool of workers. Each content is generated and filtered by a worker into its
+ * own buffer, kept in memory while small and spilled to a temporary file otherwise, while the calling thread appends
+ * the finished entries to the zip in the same order as the manifest. Only a few contents per worker are in flight at
+ * any time, to bound the disk and memory used by the buffers.
+ *
+ * @see SupportPlugin#BUNDLE_WRITER_THREADS
+ */
+@Restricted(NoExternalUse.class)
+class ParallelBundleWriter {
+
+    private static final Logger LOGGER = Logger.getLogger(ParallelBundleWriter.class.getName());
+
+    /**
+     * Size up to which the content of an entry is kept in memory before being spilled to a temporary file.
+     */
+    static final int IN_MEMORY_THRESHOLD =
+            Integer.getInteger(ParallelBundleWriter.class.getName() + ".IN_MEMORY_THRESHOLD", 1024 * 1024);
+
+    /**
+     * Number of contents generated ahead of the one being appended to the zip, per worker.
+     */
+    private static final int PENDING_PER_THREAD = 2;
+
+    private final BundleArchive binaryOut;
+    private final Optional<ContentFilter> maybeFilter;
+    private final PrintWriter errorWriter;
+    private final int threads;
+    private final AtomicBoolean aborted = new AtomicBoolean();
+
+    ParallelBundleWriter(@NonNull BundleArchive binaryOut, @NonNull Optional<ContentFilter> maybeFilter,
+                         @NonNull PrintWriter errorWriter, int threads) {
+        this.binaryOut = binaryOut;
+        this.maybeFilter = maybeFilter;
+        this.errorWriter = errorWriter;
+        this.threads = threads;
+    }
+
+    /**
+     * Generates the given contents and appends them to the zip.
+     * @param contents the contents to write, in the order they should appear in the zip
+     * @throws IOException if the zip cannot be written
+     */
+    void write(@NonNull List<Content> contents) throws IOException {
+        // The workers see the same authentications as the thread requesting the bundle
+        Authentication authentication = Jenkins.getAuthentication();
+        Authentication requesterAuthentication = SupportPlugin.getRequesterAuthentication();
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new NamingThreadFactory(new DaemonThreadFactory(), "SupportPlugin bundle writer"));
+        Deque<Future<Entry>> pending = new ArrayDeque<>();
+        Iterator<Content> iterator = contents.iterator();
+        try {
+            while (true) {
+                while (pending.size() < threads * PENDING_PER_THREAD && iterator.hasNext()) {
+                    Content content = iterator.next();
+                    if (content != null) {
+                        pending.add(executor.submit(() -> produce(content, authentication, requesterAuthentication)));
+                    }
+                }
+                Future<Entry> next = pending.poll();
+                if (next == null) {
+                    break;
+                }
+                append(next);
+            }
+        } finally {
+            aborted.set(true);
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(SupportPlugin.REMOTE_OPERATION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // Entries left behind when the zip could not be written
+            for (Future<Entry> future : pending) {
+                if (future.isDone() && !future.isCancelled()) {
+                    try {
+                        future.get().discard();
+                    } catch (ExecutionException | InterruptedException e) {
+                        // nothing to discard
+                    }
+                } else {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Generates and filters a content into its own buffer. Runs on a worker.
+     */
+    private Entry produce(Content content, Authentication authentication, Authentication requesterAuthentication) {
+        String name = SupportPlugin.getNameFiltered(maybeFilter, content.getName(), content.getFilterableParameters());
+        DeferredFileOutputStream buffer =
+                new DeferredFileOutputStream(IN_MEMORY_THRESHOLD, "support-bundle-entry", ".tmp", null);
+        Entry entry = new Entry(name, buffer);
+        SupportPlugin.setRequesterAuthentication(requesterAuthentication);
+        // New mappings are saved once by the thread requesting the bundle when it commits its own BulkChange
+        try (ACLContext old = ACL.as(authentication);
+             BulkChange change = new BulkChange(ContentMappings.get())) {
+            entry.time = content.getTime();
+            Optional<FilteredOutputStream> maybeFilteredOut = maybeFilter.map(filter -> new FilteredOutputStream(buffer, filter));
+            OutputStream textOut = maybeFilteredOut.map(OutputStream.class::cast).orElse(buffer);
+            OutputStreamSelector selector = new OutputStreamSelector(() -> buffer, () -> textOut);
+            IgnoreCloseOutputStream unfilteredOut = new IgnoreCloseOutputStream(buffer);
+            IgnoreCloseOutputStream filteredOut = new IgnoreCloseOutputStream(selector);
+            SupportPlugin.writeContent(content, filteredOut, unfilteredOut, maybeFilter);
+        } catch (Throwable e) {
+            entry.error = e;
+        } finally {
+            SupportPlugin.clearRequesterAuthentication();
+            try {
+                buffer.close();
+            } catch (IOException e) {
+                if (entry.error == null) {
+                    entry.error = e;
+                }
+            }
+        }
+        if (aborted.get()) {
+            // Nobody is going to append this entry anymore
+            entry.discard();
+        }
+        return entry;
+    }
+
+    /**
+     * Appends a finished entry to the zip. Runs on the calling thread.
+     */
+    private void append(Future<Entry> future) throws IOException {
+        Entry entry;
+        try {
+            entry = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing the support bundle", e);
+        } catch (ExecutionException e) {
+            // produce catches everything, so this should not happen
+            throw new IOException(e.getCause());
+        }
+        boolean entryCreated = false;
+        try {
+            if (entry.time != null) {
+                binaryOut.putArchiveEntry(entry.name, entry.time);
+                entryCreated = true;
+                entry.buffer.writeTo(binaryOut);
+            }
+        } catch (Throwable e) {
+            if (entry.error == null) {
+                entry.error = e;
+            }
+        } finally {
+            entry.discard();
+            if (entryCreated) {
+                binaryOut.closeArchiveEntry();
+            }
+        }
+        if (entry.error != null) {
+            SupportPlugin.reportContentError(errorWriter, entry.name, entry.error);
+        }
+    }
+
+    private static final class Entry {
+        private final String name;
+        private final DeferredFileOutputStream buffer;
+        @CheckForNull
+        private Long time;
+        @CheckForNull
+        private Throwable error;
+
+        private Entry(String name, DeferredFileOutputStream buffer) {
+            this.name = name;
+            this.buffer = buffer;
+        }
+
+        private void discard() {
+            File file = buffer.getFile();
+            if (!buffer.isInMemory() && file != null && file.exists() && !file.delete()) {
+                LOGGER.log(Level.FINE, "Could not delete temporary file {0}", file);
+            }
+        }
+    }
+}
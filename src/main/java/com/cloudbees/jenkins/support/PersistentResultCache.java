@@ -0,0 +1,313 @@
+package com.cloudbees.jenkins.support;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.XmlFile;
+import hudson.model.Node;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Results retrieved from the nodes by {@link AsyncResultCache}, kept by node name, operation class and information name
+ * so they survive the reconfiguration of a node, and saved to a snapshot in the {@link SupportPlugin#getRootDirectory() support
+ * directory} so they survive a restart.
+ * <p>
+ * Every result expires {@link #TTL_SECONDS} after it was retrieved. Until then it is used when the node is off-line or
+ * does not answer in time, and the bundle records how old it is. When {@link #FRESH_SECONDS} is positive, a result
+ * younger than that is used without asking the node at all, and an older one is used right away while a new one is
+ * retrieved in the background, so getting a result never waits for the node as long as one is available.
+ * <p>
+ * Results of operations implementing {@link Transient} are only kept in memory.
+ */
+@Restricted(NoExternalUse.class)
+public final class PersistentResultCache {
+
+    private static final Logger LOGGER = Logger.getLogger(PersistentResultCache.class.getName());
+
+    /**
+     * How long a result can be used after it was retrieved.
+     */
+    static final long TTL_SECONDS =
+            Long.getLong(PersistentResultCache.class.getName() + ".ttlSeconds", TimeUnit.DAYS.toSeconds(7));
+
+    /**
+     * How long a result is used without asking the node again. By default the node is always asked, and the cached
+     * result is only used when the node does not answer.
+     */
+    static final long FRESH_SECONDS = Long.getLong(PersistentResultCache.class.getName() + ".freshSeconds", 0);
+
+    /**
+     * Delay between a result being retrieved and the snapshot being saved, so results retrieved together are saved
+     * together.
+     */
+    private static final long SAVE_DELAY_SECONDS = 10;
+
+    static final String SNAPSHOT_FILE_NAME = "agent-results.xml";
+
+    private static volatile PersistentResultCache instance;
+
+    /**
+     * Marks the operations whose results must not be written to disk, for example because they may hold secrets.
+     */
+    public interface Transient {
+    }
+
+    /**
+     * A result retrieved from a node.
+     */
+    public static final class Record {
+        private final String node;
+        /**
+         * The class of the operation which retrieved the result.
+         */
+        private final String operation;
+        private final String name;
+        private final Object value;
+        private final long retrieved;
+        private final boolean persistent;
+        /**
+         * Last time the result was used instead of a new one, or 0.
+         */
+        private transient volatile long servedFromCache;
+
+        Record(@NonNull String node, @NonNull String operation, @NonNull String name, @CheckForNull Object value,
+               long retrieved, boolean persistent) {
+            this.node = node;
+            this.operation = operation;
+            this.name = name;
+            this.value = value;
+            this.retrieved = retrieved;
+            this.persistent = persistent;
+        }
+
+        /**
+         * @return the name of the node, empty for the controller
+         */
+        public @NonNull String getNode() {
+            return node;
+        }
+
+        /**
+         * @return the name of the information
+         */
+        public @NonNull String getName() {
+            return name;
+        }
+
+        @CheckForNull
+        Object getValue() {
+            return value;
+        }
+
+        /**
+         * @return when the result was retrieved
+         */
+        public long getRetrieved() {
+            return retrieved;
+        }
+
+        /**
+         * @return whether the result is saved to disk
+         */
+        public boolean isPersistent() {
+            return persistent;
+        }
+
+        /**
+         * @return the last time the result was used because no newer one was available, or 0
+         */
+        public long getServedFromCache() {
+            return servedFromCache;
+        }
+
+        /**
+         * @return how long ago the result was retrieved, in milliseconds
+         */
+        public long getAge() {
+            return Math.max(0, System.currentTimeMillis() - retrieved);
+        }
+
+        /**
+         * @return whether the result can be used without asking the node again
+         */
+        public boolean isFresh() {
+            return getAge() < TimeUnit.SECONDS.toMillis(FRESH_SECONDS);
+        }
+
+        boolean isExpired() {
+            return getAge() >= TimeUnit.SECONDS.toMillis(TTL_SECONDS);
+        }
+
+        void markServedFromCache() {
+            servedFromCache = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * What is written to disk.
+     */
+    private static final class Snapshot {
+        private List<Record> records;
+    }
+
+    private final Map<String, Record> records = new ConcurrentHashMap<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean saveScheduled = new AtomicBoolean();
+    private final File file;
+
+    PersistentResultCache(@NonNull File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the cache of the current Jenkins instance, loaded from its snapshot the first time
+     */
+    public static @NonNull PersistentResultCache get() {
+        File file = new File(SupportPlugin.getRootDirectory(), SNAPSHOT_FILE_NAME);
+        PersistentResultCache cache = instance;
+        // A new Jenkins instance in the same JVM, like in tests, must not see the results of the previous one
+        if (cache == null || !cache.file.equals(file)) {
+            synchronized (PersistentResultCache.class) {
+                cache = instance;
+                if (cache == null || !cache.file.equals(file)) {
+                    cache = new PersistentResultCache(file);
+                    cache.load();
+                    instance = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * @param node the node
+     * @param operation the class of the operation retrieving the result
+     * @param name the name of the information
+     * @return the result retrieved from the node, unless it has expired
+     */
+    @CheckForNull
+    Record lookup(@NonNull Node node, @NonNull Class<?> operation, @NonNull String name) {
+        String key = key(node.getNodeName(), operation.getName(), name);
+        Record record = records.get(key);
+        if (record != null && record.isExpired()) {
+            records.remove(key, record);
+            return null;
+        }
+        return record;
+    }
+
+    /**
+     * Records a result retrieved from a node.
+     * @param node the node
+     * @param operation the class of the operation which retrieved the result
+     * @param name the name of the information
+     * @param value the result
+     * @param persistent whether the result can be saved to disk
+     */
+    void put(@NonNull Node node, @NonNull Class<?> operation, @NonNull String name, @CheckForNull Object value,
+             boolean persistent) {
+        records.put(key(node.getNodeName(), operation.getName(), name),
+                new Record(node.getNodeName(), operation.getName(), name, value, System.currentTimeMillis(), persistent));
+        if (persistent) {
+            scheduleSave();
+        }
+    }
+
+    /**
+     * Marks the start of the retrieval of a result in the background.
+     * @return {@code false} if the result is already being retrieved
+     */
+    boolean startRefresh(@NonNull Node node, @NonNull Class<?> operation, @NonNull String name) {
+        return refreshing.add(key(node.getNodeName(), operation.getName(), name));
+    }
+
+    /**
+     * Marks the end of the retrieval of a result in the background.
+     */
+    void endRefresh(@NonNull Node node, @NonNull Class<?> operation, @NonNull String name) {
+        refreshing.remove(key(node.getNodeName(), operation.getName(), name));
+    }
+
+    /**
+     * @return the results which have not expired, sorted by node and name
+     */
+    public @NonNull List<Record> getRecords() {
+        List<Record> result = new ArrayList<>();
+        for (Record record : records.values()) {
+            if (!record.isExpired()) {
+                result.add(record);
+            }
+        }
+        result.sort(Comparator.comparing(Record::getNode).thenComparing(Record::getName));
+        return result;
+    }
+
+    private static String key(String node, String operation, String name) {
+        return node + '\n' + operation + '\n' + name;
+    }
+
+    private void scheduleSave() {
+        if (saveScheduled.compareAndSet(false, true)) {
+            Timer.get().schedule(() -> {
+                saveScheduled.set(false);
+                save();
+            }, SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Writes the results which can be saved to the snapshot.
+     */
+    void save() {
+        Snapshot snapshot = new Snapshot();
+        snapshot.records = new ArrayList<>();
+        for (Record record : records.values()) {
+            if (record.isPersistent() && !record.isExpired()) {
+                snapshot.records.add(record);
+            }
+        }
+        try {
+            new XmlFile(Jenkins.XSTREAM2, file).write(snapshot);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not save the cached agent results to " + file, e);
+        }
+    }
+
+    /**
+     * Reads the results saved to the snapshot.
+     */
+    void load() {
+        XmlFile xml = new XmlFile(Jenkins.XSTREAM2, file);
+        if (!xml.exists()) {
+            return;
+        }
+        try {
+            Snapshot snapshot = (Snapshot) xml.read();
+            if (snapshot.records != null) {
+                for (Record record : snapshot.records) {
+                    // Records saved before the operation was recorded cannot be told apart
+                    if (record != null && record.operation != null && !record.isExpired()) {
+                        records.putIfAbsent(key(record.getNode(), record.operation, record.getName()), record);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not load the cached agent results from " + file, e);
+        }
+    }
+}
@@ -35,55 +35,124 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
-import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
+import java.util.Queue;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Handler;
 import java.util.logging.LogRecord;
 
 /**
  * A log handler that rotates files.
+ * <p>
+ * Publishing a record never blocks: the record is formatted and stored in a fixed size ring of recent records, and
+ * queued for a background thread which writes the queued records in batches, flushes the file after each batch and rolls the
+ * files over. When the queue is full, the formatted records are dropped from the files, but still kept as recent
+ * records. Records which are not {@link #isLoggable(LogRecord) loggable}, or cannot be formatted, are kept as recent
+ * records as they are, and only formatted if the recent records are read.
  *
  * @author Stephen Connolly
  */
 public class SupportLogHandler extends Handler {
 
+    /**
+     * Maximum number of formatted records waiting to be written to the file.
+     */
+    static final int QUEUE_CAPACITY = Integer.getInteger(SupportLogHandler.class.getName() + ".queueCapacity", 4096);
+
+    /**
+     * Number of queued records which wakes up the writer thread, and after which the file is flushed.
+     */
+    static final int FLUSH_BATCH_SIZE = Integer.getInteger(SupportLogHandler.class.getName() + ".flushBatchSize", 256);
+
+    /**
+     * Maximum time a record waits before being written to the file.
+     */
+    static final long FLUSH_INTERVAL_MS = Long.getLong(SupportLogHandler.class.getName() + ".flushIntervalMs", 500);
+
+    /**
+     * Maximum time {@link #flush()} and {@link #close()} wait for the queued records to be written.
+     */
+    private static final long FLUSH_TIMEOUT_MS = 5000;
+
+    /**
+     * Size of the memory holding the recent records.
+     */
+    static final int RECENT_BYTES = Integer.getInteger(SupportLogHandler.class.getName() + ".recentBytes", 1024 * 1024);
+
+    /**
+     * Number of records returned by {@link #getRecent()}, as many as were kept before the records were kept formatted.
+     */
+    static final int RECENT_RECORDS = 256;
+
     private static final class LogRecordRef extends SoftReference<LogRecord> {
-        LogRecordRef(LogRecord referent) {
+        private final long sequence;
+
+        LogRecordRef(LogRecord referent, long sequence) {
             super(referent);
+            this.sequence = sequence;
         }
     }
 
     private final Lock outputLock = new ReentrantLock();
     private final int fileSize;
+    /**
+     * The last records published, formatted unless they were not loggable.
+     */
+    private final LogRecordRing records;
+    /**
+     * The last records published, as they are, only for {@link #getRecent()}. The record number {@code n} is stored at
+     * {@code n % recent.length()}.
+     */
+    private final AtomicReferenceArray<LogRecordRef> recent = new AtomicReferenceArray<>(RECENT_RECORDS);
+    /**
+     * Number of records published so far.
+     */
+    private final AtomicLong published = new AtomicLong();
+    private final Queue<String> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    /**
+     * Number of queued records taken by the writer thread, they are in the file once the batch is flushed.
+     */
+    private volatile long written;
+    private final Object writtenMonitor = new Object();
     @GuardedBy("outputLock")
-    private final LogRecordRef[] records;
-    @GuardedBy("outputLock")
-    private int position, count, fileCount;
+    private int fileCount;
     @GuardedBy("outputLock")
     private Writer writer;
     @GuardedBy("outputLock")
     private File logDirectry;
     private String logFilePrefix;
+    /**
+     * The thread writing the queued records, {@code null} until a directory is set or once closed.
+     */
+    private volatile Thread writerThread;
     private final SimpleDateFormat dateFormat;
     private final int maxFiles;
 
     public SupportLogHandler(int size, int fileSize, int maxFiles) {
         this.maxFiles = maxFiles;
-        records = new LogRecordRef[size];
-        position = 0;
-        count = 0;
+        records = new LogRecordRing(size, RECENT_BYTES);
         fileCount = 0;
         this.fileSize = fileSize;
         setFormatter(new SupportLogFormatter());
@@ -97,6 +166,12 @@ public class SupportLogHandler extends Handler {
             logDirectry = directory;
             logFilePrefix = namePrefix;
             rollOver();
+            if (writerThread == null) {
+                Thread thread = new Thread(this::writeQueued, "SupportLogHandler writer");
+                thread.setDaemon(true);
+                writerThread = thread;
+                thread.start();
+            }
         } finally {
             outputLock.unlock();
         }
@@ -104,40 +179,108 @@ public class SupportLogHandler extends Handler {
 
     @Override
     public void publish(LogRecord record) {
+        if (record == null) {
+            return;
+        }
+        long sequence = published.getAndIncrement();
+        recent.set((int) (sequence % RECENT_RECORDS), new LogRecordRef(record, sequence));
+        if (!isLoggable(record)) {
+            records.add(record);
+            return;
+        }
         String formatted;
         try {
-            formatted = isLoggable(record) ? getFormatter().format(record) : null;
+            formatted = getFormatter().format(record);
         } catch (Exception e) {
-            formatted = null;
+            records.add(record);
+            return;
+        }
+        records.add(formatted.getBytes(StandardCharsets.UTF_8), record.getMillis(), record.getLevel().intValue());
+        Thread thread = writerThread;
+        if (thread != null) {
+            int depth = queueDepth.incrementAndGet();
+            if (depth > QUEUE_CAPACITY) {
+                queueDepth.decrementAndGet();
+                dropped.incrementAndGet();
+                return;
+            }
+            queue.add(formatted);
+            queued.incrementAndGet();
+            if (depth == FLUSH_BATCH_SIZE) {
+                LockSupport.unpark(thread);
+            }
         }
+    }
+
+    /**
+     * Body of the writer thread, writing the queued records until the handler is closed.
+     */
+    private void writeQueued() {
+        Thread current = Thread.currentThread();
+        while (writerThread == current) {
+            writeBatch();
+            // Publishers only wake this thread up when the queue reaches a full batch
+            if (queueDepth.get() < FLUSH_BATCH_SIZE) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS));
+            }
+        }
+        // What was queued before closing
+        writeBatch();
+    }
+
+    private void writeBatch() {
+        long count = 0;
         outputLock.lock();
         try {
-            int maxCount = records.length;
-            records[(position + count) % maxCount] = new LogRecordRef(record);
-            if (count == maxCount) {
-                position = (position + 1) % maxCount;
-            } else {
+            String formatted;
+            while ((formatted = queue.poll()) != null) {
+                queueDepth.decrementAndGet();
                 count++;
-            }
-            if (formatted != null) {
+                if (writer != null && fileCount > fileSize) {
+                    rollOver();
+                }
                 if (writer != null) {
-                    if (fileCount > fileSize) {
-                        rollOver();
-                    }
-                    if (writer != null) {
-                        try {
-                            fileCount++;
-                            writer.write(formatted);
-                            flush();
-                        } catch (IOException e) {
-                            // ignore
+                    try {
+                        fileCount++;
+                        writer.write(formatted);
+                        if (count % FLUSH_BATCH_SIZE == 0) {
+                            writer.flush();
                         }
+                    } catch (IOException e) {
+                        // ignore
                     }
                 }
             }
+            if (count > 0 && writer != null) {
+                try {
+                    writer.flush();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
         } finally {
             outputLock.unlock();
         }
+        if (count > 0) {
+            synchronized (writtenMonitor) {
+                written += count;
+                writtenMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return the number of formatted records waiting to be written to the file
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * @return the number of formatted records which were not written to the file because the queue was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
     }
 
     @SuppressFBWarnings(
@@ -175,24 +318,44 @@ public class SupportLogHandler extends Handler {
         }
     }
 
+    /**
+     * Waits for the records queued so far to be written to the file.
+     */
     @Override
     public void flush() {
-        outputLock.lock();
-        try {
-            if (writer != null) {
+        Thread thread = writerThread;
+        if (thread == null) {
+            return;
+        }
+        long target = queued.get();
+        LockSupport.unpark(thread);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FLUSH_TIMEOUT_MS);
+        synchronized (writtenMonitor) {
+            long remaining;
+            while (written < target && thread.isAlive()
+                    && (remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())) > 0) {
                 try {
-                    writer.flush();
-                } catch (IOException e) {
-                    // ignore
+                    writtenMonitor.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
                 }
             }
-        } finally {
-            outputLock.unlock();
         }
     }
 
     @Override
     public void close() throws SecurityException {
+        Thread thread = writerThread;
+        writerThread = null;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(FLUSH_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         outputLock.lock();
         try {
             if (writer != null) {
@@ -204,20 +367,32 @@ public class SupportLogHandler extends Handler {
         }
     }
 
+    /**
+     * Writes the recent records, formatted, from the oldest to the newest.
+     * @param out where to write the records
+     * @throws IOException if the records cannot be written
+     */
+    public void writeRecent(OutputStream out) throws IOException {
+        records.writeTo(getFormatter(), out);
+    }
+
+    /**
+     * @return the last records published, at most {@value #RECENT_RECORDS}, unless the memory they use was reclaimed
+     * @deprecated only a few records are kept, use {@link #writeRecent(OutputStream)}
+     */
+    @Deprecated
     public List<LogRecord> getRecent() {
-        outputLock.lock();
-        try {
-            List<LogRecord> result = new ArrayList<LogRecord>(count);
-            for (int i = 0; i < count; i++) {
-                LogRecord lr = records[(position + i) % records.length].get();
-                if (lr != null) {
-                    result.add(lr);
-                }
+        long end = published.get();
+        List<LogRecord> result = new ArrayList<LogRecord>((int) Math.min(end, RECENT_RECORDS));
+        for (long sequence = Math.max(0, end - RECENT_RECORDS); sequence < end; sequence++) {
+            LogRecordRef ref = recent.get((int) (sequence % RECENT_RECORDS));
+            // The slot may not be written yet, or already reused by a newer record
+            LogRecord lr = ref != null && ref.sequence == sequence ? ref.get() : null;
+            if (lr != null) {
+                result.add(lr);
             }
-            return result;
-        } finally {
-            outputLock.unlock();
         }
+        return result;
     }
 
     private void setWriter(Writer writer) {
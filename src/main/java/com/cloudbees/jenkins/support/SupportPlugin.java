@@ -74,18 +74,20 @@ import jenkins.model.Jenkins;
 import jenkins.security.MasterToSlaveCallable;
 import net.sf.json.JSONObject;
 import org.acegisecurity.Authentication;
-import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
-import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.StaplerRequest;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
@@ -113,6 +115,9 @@ import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Main entry point for the support plugin.
@@ -140,6 +145,29 @@ public class SupportPlugin extends Plugin {
     public static final int AUTO_BUNDLE_PERIOD_HOURS =
             Math.max(Math.min(24, Integer.getInteger(SupportPlugin.class.getName() + ".AUTO_BUNDLE_PERIOD_HOURS", 1)), 0);
 
+    /**
+     * How many threads can generate the contents of a bundle at the same time. With {@code 1}, the default, contents
+     * are generated one after the other by the thread requesting the bundle. With more threads, slow contents don't
+     * delay the ones behind them, at the cost of buffering the generated contents in memory or temporary files.
+     */
+    public static final int BUNDLE_WRITER_THREADS =
+            Math.max(1, Integer.getInteger(SupportPlugin.class.getName() + ".BUNDLE_WRITER_THREADS", 1));
+
+    /**
+     * How many threads can compress the entries of a bundle at the same time. With {@code 1}, the default, entries
+     * are compressed as they are written. With more threads, entries are compressed concurrently and the zip is
+     * assembled at the end, storing without compression the entries which are already compressed.
+     */
+    public static final int BUNDLE_COMPRESSION_THREADS =
+            Math.max(1, Integer.getInteger(SupportPlugin.class.getName() + ".BUNDLE_COMPRESSION_THREADS", 1));
+
+    /**
+     * The compression level of the bundle entries, from {@code 0} (no compression) to {@code 9} (best compression).
+     * Defaults to {@code -1}, the default level of the JDK.
+     */
+    public static final int BUNDLE_COMPRESSION_LEVEL =
+            Math.max(Math.min(Deflater.BEST_COMPRESSION, Integer.getInteger(SupportPlugin.class.getName() + ".BUNDLE_COMPRESSION_LEVEL", Deflater.DEFAULT_COMPRESSION)), Deflater.DEFAULT_COMPRESSION);
+
     public static final PermissionGroup SUPPORT_PERMISSIONS =
             new PermissionGroup(SupportPlugin.class, Messages._SupportPlugin_PermissionGroup());
 
@@ -150,11 +178,16 @@ public class SupportPlugin extends Plugin {
     private static final AtomicLong nextBundleWrite = new AtomicLong(Long.MIN_VALUE);
     private static final Logger logger = Logger.getLogger(SupportPlugin.class.getName());
     public static final String SUPPORT_DIRECTORY_NAME = "support";
-    private transient final SupportLogHandler handler = new SupportLogHandler(256, 2048, 8);
+    /**
+     * Maximum number of recent log records kept in memory, within {@link SupportLogHandler#RECENT_BYTES}.
+     */
+    private static final int RECENT_LOG_RECORDS = 4096;
+    private transient final SupportLogHandler handler = new SupportLogHandler(RECENT_LOG_RECORDS, 2048, 8);
 
     private transient SupportContextImpl context = null;
     private transient Logger rootLogger;
     private transient WeakHashMap<Node, List<LogRecord>> logRecords;
+    private transient final WeakHashMap<Node, byte[]> recentLogRecords = new WeakHashMap<>();
 
     private SupportProvider supportProvider;
 
@@ -336,7 +369,7 @@ public class SupportPlugin extends Plugin {
 
         try {
             try (BulkChange change = new BulkChange(ContentMappings.get());
-                 ZipArchiveOutputStream binaryOut = new ZipArchiveOutputStream(new BufferedOutputStream(outputStream, 16384))) {
+                 BundleArchive binaryOut = BundleArchive.create(new BufferedOutputStream(outputStream, 16384))) {
                 // Get the filter to be used
                 Optional<ContentFilter> maybeFilter = getContentFilter();
 
@@ -357,40 +390,30 @@ public class SupportPlugin extends Plugin {
                 IgnoreCloseOutputStream unfilteredOut = new IgnoreCloseOutputStream(binaryOut);
                 IgnoreCloseOutputStream filteredOut = new IgnoreCloseOutputStream(selector);
                 boolean entryCreated = false;
-                for (Content content : contents) {
-                    if (content == null) {
-                        continue;
-                    }
-
-                    final String name = getNameFiltered(maybeFilter, content.getName(), content.getFilterableParameters());
-                    
-                    try {
-                        final ZipArchiveEntry entry = new ZipArchiveEntry(name);
-                        entry.setTime(content.getTime());
-                        binaryOut.putArchiveEntry(entry);
-                        entryCreated = true;
-                        binaryOut.flush();
-                        OutputStream out = content.shouldBeFiltered() ? filteredOut : unfilteredOut;
-                        if (content instanceof PrefilteredContent && maybeFilter.isPresent()) {
-                            ((PrefilteredContent)content).writeTo(out, maybeFilter.get());
-                        } else {
-                            content.writeTo(out);
+                if (BUNDLE_WRITER_THREADS > 1) {
+                    new ParallelBundleWriter(binaryOut, maybeFilter, errorWriter, BUNDLE_WRITER_THREADS).write(contents);
+                } else {
+                    for (Content content : contents) {
+                        if (content == null) {
+                            continue;
                         }
-                        out.flush();
-                    } catch (Throwable e) {
-                        String msg = "Could not attach ''" + name + "'' to support bundle";
-                        logger.log(e instanceof ChannelClosedException ? Level.FINE : Level.WARNING, msg, e);
-                        errorWriter.println(msg);
-                        errorWriter.println("-----------------------------------------------------------------------");
-                        errorWriter.println();
-                        Functions.printStackTrace(e, errorWriter);
-                        errorWriter.println();
-                    } finally {
-                        maybeFilteredOut.ifPresent(FilteredOutputStream::reset);
-                        selector.reset();
-                        if (entryCreated) {
-                            binaryOut.closeArchiveEntry();
-                            entryCreated = false;
+
+                        final String name = getNameFiltered(maybeFilter, content.getName(), content.getFilterableParameters());
+
+                        try {
+                            binaryOut.putArchiveEntry(name, content.getTime());
+                            entryCreated = true;
+                            binaryOut.flush();
+                            writeContent(content, filteredOut, unfilteredOut, maybeFilter);
+                        } catch (Throwable e) {
+                            reportContentError(errorWriter, name, e);
+                        } finally {
+                            maybeFilteredOut.ifPresent(FilteredOutputStream::reset);
+                            selector.reset();
+                            if (entryCreated) {
+                                binaryOut.closeArchiveEntry();
+                                entryCreated = false;
+                            }
                         }
                     }
                 }
@@ -398,7 +421,7 @@ public class SupportPlugin extends Plugin {
                 String errorContent = errors.toString();
                 if (StringUtils.isNotBlank(errorContent)) {
                     try {
-                        binaryOut.putArchiveEntry(new ZipArchiveEntry("manifest/errors.txt"));
+                        binaryOut.putArchiveEntry("manifest/errors.txt", System.currentTimeMillis());
                         entryCreated = true;
                         textOut.write(errorContent.getBytes(StandardCharsets.UTF_8));
                         textOut.flush();
@@ -418,6 +441,41 @@ public class SupportPlugin extends Plugin {
         }
     }
 
+    /**
+     * Writes a content to the stream matching whether it should be filtered or not.
+     * @param content the content to write
+     * @param filteredOut where to write the contents to be filtered
+     * @param unfilteredOut where to write the contents not to be filtered
+     * @param maybeFilter the filter given to {@link PrefilteredContent}, if any
+     * @throws IOException if the content cannot be written
+     */
+    static void writeContent(Content content, OutputStream filteredOut, OutputStream unfilteredOut,
+                             Optional<ContentFilter> maybeFilter) throws IOException {
+        OutputStream out = content.shouldBeFiltered() ? filteredOut : unfilteredOut;
+        if (content instanceof PrefilteredContent && maybeFilter.isPresent()) {
+            ((PrefilteredContent)content).writeTo(out, maybeFilter.get());
+        } else {
+            content.writeTo(out);
+        }
+        out.flush();
+    }
+
+    /**
+     * Logs and appends to the bundle errors the failure to write a content.
+     * @param errorWriter where to print the error
+     * @param name the name of the content which could not be written
+     * @param e the failure
+     */
+    static void reportContentError(PrintWriter errorWriter, String name, Throwable e) {
+        String msg = "Could not attach ''" + name + "'' to support bundle";
+        logger.log(e instanceof ChannelClosedException ? Level.FINE : Level.WARNING, msg, e);
+        errorWriter.println(msg);
+        errorWriter.println("-----------------------------------------------------------------------");
+        errorWriter.println();
+        Functions.printStackTrace(e, errorWriter);
+        errorWriter.println();
+    }
+
     /**
      * Filter the name of a content depending on the filterableParameters in the name that need to be replaced.
      * @param maybeFilter an Optional with a {@link ContentFilter} or not
@@ -568,10 +626,41 @@ public class SupportPlugin extends Plugin {
 
     }
 
+    /**
+     * @return the last log records of this instance, only a few of them
+     * @deprecated use {@link #writeRecentLogRecords(OutputStream)}
+     */
+    @Deprecated
     public List<LogRecord> getAllLogRecords() {
         return handler.getRecent();
     }
 
+    /**
+     * Writes the recent log records of this instance, formatted.
+     * @param out where to write the records
+     * @throws IOException if the records cannot be written
+     */
+    public void writeRecentLogRecords(OutputStream out) throws IOException {
+        handler.writeRecent(out);
+    }
+
+    /**
+     * Writes the recent log records of an agent, formatted. The records are fetched as a single compressed chunk,
+     * and the last ones fetched are used when the agent is too slow to answer.
+     * @param node the agent
+     * @param out where to write the records
+     * @throws IOException if the records cannot be written
+     */
+    public void writeRecentLogRecords(Node node, OutputStream out) throws IOException {
+        byte[] compressed = AsyncResultCache.get(node, recentLogRecords, new RecentLogRecordsFetcher(), "recent log records", null);
+        if (compressed == null) {
+            return;
+        }
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            IOUtils.copy(in, out);
+        }
+    }
+
     @Initializer(after = InitMilestone.EXTENSIONS_AUGMENTED, before = InitMilestone.JOB_LOADED)
     public static void loadConfig() throws IOException {
         SupportPlugin instance = getInstance();
@@ -676,6 +765,11 @@ public class SupportPlugin extends Plugin {
         super.stop();
     }
 
+    /**
+     * @return the last log records of an agent, only a few of them
+     * @deprecated use {@link #writeRecentLogRecords(Node, OutputStream)}
+     */
+    @Deprecated
     public List<LogRecord> getAllLogRecords(final Node node) throws IOException, InterruptedException {
         if (node != null) {
             VirtualChannel channel = node.getChannel();
@@ -751,7 +845,7 @@ public class SupportPlugin extends Plugin {
     }
 
     public static class LogHolder {
-        private static final SupportLogHandler AGENT_LOG_HANDLER = new SupportLogHandler(256, 2048, 8);
+        private static final SupportLogHandler AGENT_LOG_HANDLER = new SupportLogHandler(RECENT_LOG_RECORDS, 2048, 8);
     }
 
     private static class LogInitializer extends MasterToSlaveCallable<Void, RuntimeException> {
@@ -787,6 +881,10 @@ public class SupportPlugin extends Plugin {
 
     }
 
+    /**
+     * @deprecated use {@link RecentLogRecordsFetcher}
+     */
+    @Deprecated
     public static class LogFetcher extends MasterToSlaveCallable<List<LogRecord>, RuntimeException> {
         private static final long serialVersionUID = 1L;
 
@@ -796,6 +894,23 @@ public class SupportPlugin extends Plugin {
 
     }
 
+    /**
+     * Returns the recent log records of an agent, formatted and compressed with gzip.
+     */
+    public static class RecentLogRecordsFetcher extends MasterToSlaveCallable<byte[], IOException>
+            implements PersistentResultCache.Transient {
+        private static final long serialVersionUID = 1L;
+
+        public byte[] call() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (OutputStream out = new GZIPOutputStream(bytes)) {
+                LogHolder.AGENT_LOG_HANDLER.writeRecent(out);
+            }
+            return bytes.toByteArray();
+        }
+
+    }
+
     public static class LogUpdater extends MasterToSlaveCallable<Void, RuntimeException> {
 
         private static final long serialVersionUID = 1L;
@@ -76,10 +76,11 @@ class BaseCommandOutputContent {
         String content = "Exception occurred while retrieving command content";
 
         try {
-            content = AsyncResultCache.get(node, cache, new BaseCommandOutputContent.CommandLauncher(command), "sysctl info",
-                    "N/A: Either no connection to node or no cached result");
+            // Named after the command, so the results of different commands are cached separately
+            content = AsyncResultCache.get(node, cache, new BaseCommandOutputContent.CommandLauncher(command),
+                    "output of " + String.join(" ", command), "N/A: Either no connection to node or no cached result");
         } catch (IOException e) {
-            final LogRecord lr = new LogRecord(Level.FINE, "Could not retrieve sysctl content from {0}");
+            final LogRecord lr = new LogRecord(Level.FINE, "Could not retrieve command content from {0}");
             lr.setParameters(new Object[]{getNodeName(node)});
             lr.setThrown(e);
             LOGGER.log(lr);
@@ -25,6 +25,8 @@
 package com.cloudbees.jenkins.support.api;
 
 import com.cloudbees.jenkins.support.filter.ContentFilter;
+import com.cloudbees.jenkins.support.filter.FilteredContentCache;
+import com.cloudbees.jenkins.support.filter.PasswordRedactor;
 import com.cloudbees.jenkins.support.util.StreamUtils;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.Functions;
@@ -32,9 +34,8 @@ import org.apache.commons.io.IOUtils;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FilterInputStream;
 import java.io.IOException;
@@ -43,6 +44,9 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.util.function.Function;
@@ -64,10 +68,41 @@ class BaseFileContent {
      */
     private final Function<String, String> secretsFilterFunction;
     private final long maxSize;
-    private final boolean isBinary;
+    /**
+     * Whether the file is binary, only known once the file is written.
+     */
+    private volatile Boolean binary;
+    /**
+     * How the file is filtered, to keep its filtered content in the {@link FilteredContentCache}, or {@code null} if it
+     * must not be cached.
+     */
+    private volatile String cacheKind;
 
     private final static String ENCODING = "UTF-8";
 
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Length from which a line is filtered in pieces, to bound the memory used by lines without line breaks.
+     */
+    static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    /**
+     * Longest text the filters are expected to replace. A long line is only split where the filters tell that the text
+     * around the split, up to that length on each side, can be filtered in two pieces.
+     */
+    private static final int MAX_REPLACED_LENGTH = 1024;
+
+    /**
+     * Number of places tried when splitting a long line, before giving up until more of the line is read.
+     */
+    private static final int MAX_SPLIT_ATTEMPTS = 16;
+
+    /**
+     * Length from which a long line is split even if no safe place was found, so the memory used stays bounded.
+     */
+    static final int MAX_HELD_LINE_LENGTH = 16 * MAX_LINE_LENGTH;
+
     /**
      *  @deprecated (as it is placed in the api package we keep backward compatibility, no relevant usage was found)
      */
@@ -90,7 +125,6 @@ class BaseFileContent {
         this.inputStreamSupplier = inputStreamSupplier;
         this.secretsFilterFunction = secretsFilterFunction;
         this.maxSize = maxSize;
-        this.isBinary = isBinary();
     }
 
     protected void writeTo(OutputStream os) throws IOException {
@@ -120,28 +154,19 @@ class BaseFileContent {
     }
 
     protected void writeTo(OutputStream os, ContentFilter filter) throws IOException {
-        if (isBinary || filter == null) {
+        if (filter == null || isBinary()) {
             writeTo(os);
+            return;
         }
 
         try {
-            if (maxSize == -1) {
-                for (String s : Files.readAllLines(file.toPath())) {
-                    String filtered = ContentFilter.filter(filter, secretsFilterFunction.apply(s));
-                    IOUtils.write(filtered, os, ENCODING);
-                    // The new line
-                    IOUtils.write("\n", os, ENCODING);
-                }
+            FilteredContentCache cache = cacheKind == null || !FilteredContentCache.isCacheable(filter)
+                    ? null : FilteredContentCache.get();
+            if (cache == null) {
+                writeFiltered(os, filter);
             } else {
-                try (TruncatedFileReader reader = new TruncatedFileReader(file, maxSize)) {
-                    String s;
-                    while ((s = reader.readLine()) != null) {
-                        String filtered = ContentFilter.filter(filter, secretsFilterFunction.apply(s));
-                        IOUtils.write(filtered, os, ENCODING);
-                        // The new line
-                        IOUtils.write("\n", os, ENCODING);
-                    }
-                }
+                cache.write(file, cacheKind + ':' + maxSize + ':' + filter.getClass().getName(), os,
+                        out -> writeFiltered(out, filter));
             }
         } catch (FileNotFoundException | NoSuchFileException e ) { // TODO FilePathContent.isFileNotFound?
             OutputStreamWriter osw = new OutputStreamWriter(os, ENCODING);
@@ -160,16 +185,163 @@ class BaseFileContent {
         }
     }
 
+    /**
+     * Keeps the filtered content in the {@link FilteredContentCache}, so the next bundles copy it as long as the file
+     * does not change.
+     * @param kind how the file is filtered, or {@code null} to not cache it
+     */
+    void setCacheKind(String kind) {
+        this.cacheKind = kind;
+    }
+
+    private void writeFiltered(OutputStream os, ContentFilter filter) throws IOException {
+        try (InputStream is = Files.newInputStream(file.toPath())) {
+            writeFilteredLines(maxSize == -1 ? is : new TruncatedInputStream(is, maxSize), os, filter);
+        }
+    }
+
+    /**
+     * Copies the lines read from a stream through the filters, each followed by a line feed. The stream is read in
+     * chunks into buffers reused from line to line, so the memory used does not depend on the size of the stream. A line
+     * longer than {@link #MAX_LINE_LENGTH} is filtered in pieces, split where the filters do not replace any text
+     * across the split, see {@link #splitPoint(StringBuilder, ContentFilter)}. A line where no such place is found is
+     * kept whole until one is, or until it reaches {@link #MAX_HELD_LINE_LENGTH}.
+     */
+    private void writeFilteredLines(InputStream is, OutputStream os, ContentFilter filter) throws IOException {
+        Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), BUFFER_SIZE);
+        char[] chunk = new char[BUFFER_SIZE];
+        StringBuilder line = new StringBuilder();
+        int nextSplit = MAX_LINE_LENGTH;
+        boolean skipLineFeed = false;
+        int read;
+        while ((read = reader.read(chunk)) != -1) {
+            int start = 0;
+            for (int i = 0; i < read; i++) {
+                char c = chunk[i];
+                if (c == '\n' && skipLineFeed) {
+                    // Second half of a \r\n split between two chunks
+                    start = i + 1;
+                } else if (c == '\n' || c == '\r') {
+                    line.append(chunk, start, i - start);
+                    writeFiltered(line, writer, filter);
+                    writer.write('\n');
+                    line.setLength(0);
+                    nextSplit = MAX_LINE_LENGTH;
+                    if (c == '\r' && i + 1 < read && chunk[i + 1] == '\n') {
+                        i++;
+                    }
+                    start = i + 1;
+                }
+                skipLineFeed = false;
+            }
+            skipLineFeed = read > 0 && chunk[read - 1] == '\r';
+            line.append(chunk, start, read - start);
+            if (line.length() >= nextSplit) {
+                int split = splitPoint(line, filter);
+                if (split < 0 && line.length() >= MAX_HELD_LINE_LENGTH) {
+                    split = forcedSplitPoint(line);
+                }
+                if (split < 0) {
+                    nextSplit = Math.min(line.length() + MAX_LINE_LENGTH, MAX_HELD_LINE_LENGTH);
+                } else {
+                    String rest = line.substring(split);
+                    line.setLength(split);
+                    writeFiltered(line, writer, filter);
+                    line.setLength(0);
+                    line.append(rest);
+                    nextSplit = MAX_LINE_LENGTH;
+                }
+            }
+        }
+        if (line.length() > 0) {
+            writeFiltered(line, writer, filter);
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    private void writeFiltered(StringBuilder line, Writer writer, ContentFilter filter) throws IOException {
+        writer.write(filter(line.toString(), filter));
+    }
+
+    private String filter(String text, ContentFilter filter) {
+        return ContentFilter.filter(filter, secretsFilterFunction.apply(text));
+    }
+
+    /**
+     * Finds where to split a line too long to be filtered at once. A place is only chosen when the secrets and the
+     * filters tell that no text they replace, like a name made of several words or a secret after its key, can be found
+     * across it, see {@link PasswordRedactor#canSplit(CharSequence, int)} and
+     * {@link ContentFilter#canSplit(CharSequence, int)}. Nothing is filtered to find it. Places after a whitespace are
+     * tried, from the end of the line.
+     * @return where to split the line, or -1 if no place was found
+     */
+    private int splitPoint(StringBuilder line, ContentFilter filter) {
+        // Enough of the line on both sides of a split to check it
+        int first = MAX_REPLACED_LENGTH;
+        int last = line.length() - MAX_REPLACED_LENGTH;
+        int attempts = 0;
+        for (int i = last; i > first && attempts < MAX_SPLIT_ATTEMPTS; i--) {
+            if (Character.isWhitespace(line.charAt(i - 1))) {
+                attempts++;
+                if (isSafeSplit(line, i, filter)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private boolean isSafeSplit(StringBuilder line, int split, ContentFilter filter) {
+        CharSequence around = line.subSequence(split - MAX_REPLACED_LENGTH, split + MAX_REPLACED_LENGTH);
+        return PasswordRedactor.canSplit(around, MAX_REPLACED_LENGTH)
+                && (filter == null || filter.canSplit(around, MAX_REPLACED_LENGTH));
+    }
+
+    /**
+     * Finds where to split a line which reached {@link #MAX_HELD_LINE_LENGTH} without any safe place to split it. As
+     * for other splits, the end of the line is kept for the next piece: the line is split after a whitespace if there
+     * is one there, within words otherwise.
+     */
+    private static int forcedSplitPoint(StringBuilder line) {
+        int last = line.length() - MAX_REPLACED_LENGTH;
+        for (int i = last; i > last - MAX_REPLACED_LENGTH; i--) {
+            if (Character.isWhitespace(line.charAt(i - 1))) {
+                return i;
+            }
+        }
+        return last;
+    }
+
     protected long getTime() {
         return file.lastModified();
     }
 
+    // Check if the file is binary or not, by its name if possible, as opening the file for that is costly with many files
+    private boolean isBinary() {
+        Boolean result = binary;
+        if (result == null) {
+            switch (FileClassifier.classifyWithAll(file)) {
+                case TEXT:
+                    result = false;
+                    break;
+                case BINARY:
+                    result = true;
+                    break;
+                default:
+                    result = probeBinary();
+            }
+            binary = result;
+        }
+        return result;
+    }
+
     @SuppressFBWarnings(
             value = "RCN_REDUNDANT_NULLCHECK_WOULD_HAVE_BEEN_A_NPE",
             justification = "https://github.com/spotbugs/spotbugs/issues/756"
     )
-    // Check if the file is binary or not
-    private boolean isBinary() {
+    private boolean probeBinary() {
         try (InputStream in = inputStreamSupplier.get()) {
             long size = Files.size(file.toPath());
             if (size == 0) {
@@ -243,34 +415,4 @@ class BaseFileContent {
         }
     }
 
-    private static final class TruncatedFileReader extends BufferedReader {
-        private long len;
-
-        TruncatedFileReader(File file, long len) throws IOException {
-            super(new InputStreamReader(new FileInputStream(file), ENCODING));
-            this.len = len;
-        }
-
-        @Override
-        public String readLine() throws IOException {
-            if (len <= 0) {
-                return null;
-            }
-
-            String line = super.readLine();
-            if (line == null) {
-                return null;
-            }
-
-            int length = line.getBytes(ENCODING).length;
-            int toRead = (length <= len ? length : (int)len);
-            len -= length;
-
-            byte[] dest = new byte[toRead];
-            System.arraycopy(line.getBytes(ENCODING), 0, dest, 0, toRead);
-
-            return new String(dest, ENCODING);
-        }
-    }
-
 }
@@ -0,0 +1,64 @@
+package com.cloudbees.jenkins.support.api;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tells whether a file attached to a bundle holds text, filtered line by line, or binary data, copied as is. Files
+ * no classifier recognizes are classified by looking at their first bytes.
+ * <p>
+ * Classifiers are asked when the file is written to the bundle, by decreasing ordinal, until one of them knows.
+ * They should not read the file, as the point is to save opening it.
+ *
+ * @see FileContent
+ */
+public interface FileClassifier extends ExtensionPoint {
+
+    /**
+     * The kinds of files.
+     */
+    enum Kind {
+        TEXT,
+        BINARY,
+        /**
+         * Not known by the classifier.
+         */
+        UNKNOWN
+    }
+
+    /**
+     * @param file the file to classify
+     * @return the kind of the file, or {@link Kind#UNKNOWN} if the file must be classified by some other means
+     */
+    @NonNull Kind classify(@NonNull File file);
+
+    /**
+     * @return all FileClassifier extensions, or the built-in one when Jenkins is not running
+     */
+    static List<FileClassifier> all() {
+        if (Jenkins.getInstanceOrNull() == null) {
+            return Collections.singletonList(FileNameClassifier.INSTANCE);
+        }
+        return ExtensionList.lookup(FileClassifier.class);
+    }
+
+    /**
+     * @param file the file to classify
+     * @return the kind given by the first classifier knowing the file, or {@link Kind#UNKNOWN}
+     */
+    static @NonNull Kind classifyWithAll(@NonNull File file) {
+        for (FileClassifier classifier : all()) {
+            Kind kind = classifier.classify(file);
+            if (kind != Kind.UNKNOWN) {
+                return kind;
+            }
+        }
+        return Kind.UNKNOWN;
+    }
+}
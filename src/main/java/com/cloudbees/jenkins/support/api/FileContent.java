@@ -103,6 +103,9 @@ public class FileContent extends PrefilteredContent {
                 return new ByteArrayInputStream(Functions.printThrowable(e).getBytes(StandardCharsets.UTF_8));
             }
         };
-        return  new BaseFileContent(file, supplier, maxSize, this::getSimpleValueOrRedactedPassword);
+        BaseFileContent content = new BaseFileContent(file, supplier, maxSize, this::getSimpleValueOrRedactedPassword);
+        // Subclasses may filter differently
+        content.setCacheKind(getClass().getName());
+        return content;
     }
 }
\ No newline at end of file
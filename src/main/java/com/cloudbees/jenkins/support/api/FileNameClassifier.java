@@ -0,0 +1,74 @@
+package com.cloudbees.jenkins.support.api;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.File;
+import java.net.URLConnection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Classifies the files with a well known extension, then by the MIME type guessed from their name.
+ */
+@Restricted(NoExternalUse.class)
+public final class FileNameClassifier implements FileClassifier {
+
+    /**
+     * Given a lower priority than the other classifiers, so they can override it.
+     */
+    public static final @Extension(ordinal = -100) FileNameClassifier INSTANCE = new FileNameClassifier();
+
+    private static final Set<String> TEXT_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "txt", "log", "md", "xml", "json", "yaml", "yml", "properties", "conf", "cfg", "ini", "csv", "html", "htm",
+            "groovy", "java", "js", "css", "sh", "bat", "ps1", "py", "rb", "jelly", "xsl", "out", "err", "policy"
+    )));
+
+    /**
+     * Only formats which cannot hold plain text, as binary files are not anonymized.
+     */
+    private static final Set<String> BINARY_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "gz", "zip", "bz2", "xz", "tar", "tgz", "7z", "jar", "war", "hpi", "jpi", "class", "so", "dll", "exe",
+            "png", "jpg", "jpeg", "gif", "ico", "bmp", "pdf", "hprof", "jfr", "p12", "jks", "der"
+    )));
+
+    private FileNameClassifier() {
+    }
+
+    @NonNull
+    @Override
+    public Kind classify(@NonNull File file) {
+        String name = file.getName().toLowerCase(Locale.ENGLISH);
+        int dot = name.lastIndexOf('.');
+        if (dot >= 0) {
+            String extension = name.substring(dot + 1);
+            if (TEXT_EXTENSIONS.contains(extension)) {
+                return Kind.TEXT;
+            }
+            if (BINARY_EXTENSIONS.contains(extension)) {
+                return Kind.BINARY;
+            }
+        }
+        return classifyMimeType(URLConnection.guessContentTypeFromName(name));
+    }
+
+    static @NonNull Kind classifyMimeType(String mimeType) {
+        if (mimeType == null) {
+            return Kind.UNKNOWN;
+        }
+        if (mimeType.startsWith("text/")) {
+            return Kind.TEXT;
+        }
+        if (mimeType.startsWith("image/") || mimeType.startsWith("audio/") || mimeType.startsWith("video/")
+                || mimeType.equals("application/octet-stream") || mimeType.equals("application/zip")
+                || mimeType.equals("application/java-archive") || mimeType.equals("application/pdf")) {
+            return Kind.BINARY;
+        }
+        return Kind.UNKNOWN;
+    }
+}
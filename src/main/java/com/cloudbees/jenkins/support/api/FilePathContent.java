@@ -28,15 +28,19 @@ import com.cloudbees.jenkins.support.filter.FilteredOutputStream;
 import com.cloudbees.jenkins.support.filter.PasswordRedactor;
 import hudson.FilePath;
 import hudson.Functions;
-import org.apache.commons.io.IOUtils;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
@@ -106,16 +110,27 @@ public class FilePathContent extends Content {
     }
 
     private void copyRedacted(OutputStream os) throws IOException, InterruptedException {
+        copyRedacted(file.read(), os);
+    }
+
+    /**
+     * Copies the content of a file holding secrets, like {@code /proc/self/environ}, redacting the secrets.
+     * @param in the content of the file, closed once copied
+     * @param os where to copy the redacted content
+     * @throws IOException if the content cannot be read or written
+     * @see PasswordRedactor#FILES_WITH_SECRETS
+     */
+    @Restricted(NoExternalUse.class)
+    public static void copyRedacted(InputStream in, OutputStream os) throws IOException {
         CharsetDecoder charsetDecoder = StandardCharsets.UTF_8.newDecoder()
                 .onMalformedInput(CodingErrorAction.REPLACE)
                 .onUnmappableCharacter(CodingErrorAction.REPLACE)
                 .replaceWith(FilteredOutputStream.UNKNOWN_INPUT);
 
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(file.read(), charsetDecoder))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                IOUtils.write(PasswordRedactor.get().redact(line), os, charsetDecoder.charset());
-            }
+        try (Reader reader = new InputStreamReader(in, charsetDecoder)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(os, charsetDecoder.charset()));
+            PasswordRedactor.get().redact(reader, writer);
+            writer.flush();
         }
     }
 }
@@ -42,11 +42,15 @@ public class TemporaryFileContent extends FileContent {
     public TemporaryFileContent(String name, File file) {
         super(name, file);
         f = file;
+        // Deleted once written, so never written again
+        baseFileContent.setCacheKind(null);
     }
 
     public TemporaryFileContent(String name, String[] filterableParameters, File file) {
         super(name, filterableParameters, file);
         f = file;
+        // Deleted once written, so never written again
+        baseFileContent.setCacheKind(null);
     }
 
     @Override
@@ -5,32 +5,31 @@ import com.cloudbees.plugins.credentials.SecretBytes;
 import hudson.util.Secret;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
-import org.xml.sax.Attributes;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
 
 import javax.xml.XMLConstants;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Result;
-import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.sax.SAXSource;
-import javax.xml.transform.stream.StreamResult;
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.xml.sax.helpers.XMLFilterImpl;
-import org.xml.sax.helpers.XMLReaderFactory;
-
 /**
  * Secret Handler for xml files to add to the support bundle.
  * We want to use a placeholder instead of Secrets.
@@ -52,6 +51,20 @@ class SecretHandler {
      */
     private static boolean ENABLE_FALLBACK = !StringUtils.equalsIgnoreCase(System.getProperty("support-core-plugin.SecretHandler.ENABLE_FALLBACK", "TRUE"), "FALSE");
 
+    /**
+     * Files up to this size are redacted in memory, so the fallback can still be used if they turn out not to be
+     * well-formed. Larger files are checked first, then redacted straight into the output.
+     */
+    private static final long MAX_BUFFERED_SIZE = 1024 * 1024;
+
+    /**
+     * Fewest bytes a value encrypted with AES can decode to.
+     */
+    private static final int MIN_ENCRYPTED_BYTES = 16;
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+
     /**
      * find the secret in the xml file and replace it with the place holder
      * @param xmlFile we want to parse
@@ -61,78 +74,277 @@ class SecretHandler {
      * @throws TransformerException if an issue occurs while writing the result.
      */
     public static String findSecrets(File xmlFile) throws SAXException, IOException, TransformerException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try {
+            writeRedacted(xmlFile, result);
+        } catch (XMLStreamException e) {
+            throw new TransformerException(e);
+        }
+        return result.toString(OUTPUT_ENCODING);
+    }
 
-        XMLReader xr = new XMLFilterImpl(XMLReaderFactory.createXMLReader()) {
-            private String tagName = "";
-            private String previousStringTagValue;
-
-            @Override
-            public void startElement(String uri, String localName, String qName, Attributes atts)
-                    throws SAXException {
-                tagName = qName;
-                super.startElement(uri, localName, qName, atts);
-            }
-
-            public void endElement(String uri, String localName, String qName) throws SAXException {
-                tagName = "";
-                super.endElement(uri, localName, qName);
-            }
-
-            @Override
-            public void characters(char[] ch, int start, int length) throws SAXException {
-                if (!"".equals(tagName)) {
-                    String value = new String(ch, start, length).trim();
-                    //if it's a secret, then use a place holder
-                    // convenience check !"{}".equals(value) because of JENKINS-47500
-                    if (!"".equals(value) && !"{}".equals(value)) {
-                        if ((Secret.decrypt(value)) != null || SecretBytes.isSecretBytes(value)) {
-                            ch = SECRET_MARKER.toCharArray();
-                            start = 0;
-                            length = ch.length;
-                        } else if (isJvmArgsWithSecrets(tagName, value)) {
-                            ch = PasswordRedactor.get().redact(value).toCharArray();
-                            start = 0;
-                            length = ch.length;
-                        } else if ("string".equals(tagName)) {
-                            if (previousStringTagValue != null) {
-                                if (PasswordRedactor.get().match(previousStringTagValue)) {
-                                    ch = PasswordRedactor.REDACTED.toCharArray();
-                                    start = 0;
-                                    length = ch.length;
-                                }
-                                previousStringTagValue = null;
-                            } else {
-                                previousStringTagValue = value;
-                            }
-                        }
+    /**
+     * Writes the xml file with its secrets replaced by the place holder, reading and writing it as a stream of events.
+     * @param xmlFile we want to parse
+     * @param out where to write the patched xml content, not closed
+     * @throws IOException if some issue occurs while reading the providing file or writing the result.
+     * @throws XMLStreamException if the file cannot be parsed and the fallback is disabled.
+     */
+    static void writeRedacted(File xmlFile, OutputStream out) throws IOException, XMLStreamException {
+        if (xmlFile.length() <= MAX_BUFFERED_SIZE) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) xmlFile.length() + 256);
+            try {
+                copyRedacted(xmlFile, buffer);
+            } catch (XMLStreamException e) {
+                writeFallback(xmlFile, out, e);
+                return;
+            }
+            buffer.writeTo(out);
+        } else {
+            try {
+                copyRedacted(xmlFile, null);
+            } catch (XMLStreamException e) {
+                writeFallback(xmlFile, out, e);
+                return;
+            }
+            copyRedacted(xmlFile, out);
+        }
+    }
+
+    private static void writeFallback(File xmlFile, OutputStream out, XMLStreamException e)
+            throws IOException, XMLStreamException {
+        if (!ENABLE_FALLBACK) {
+            throw e;
+        }
+        out.write(findSecretFallback(FileUtils.readFileToString(xmlFile, StandardCharsets.UTF_8))
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Copies the xml file event by event, replacing the secrets. The XML declaration and the DTD are not copied.
+     * @param out where to write, or {@code null} to only check that the file can be parsed
+     */
+    private static void copyRedacted(File xmlFile, OutputStream out) throws IOException, XMLStreamException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(xmlFile.toPath()))) {
+            XMLStreamReader reader;
+            synchronized (INPUT_FACTORY) {
+                reader = INPUT_FACTORY.createXMLStreamReader(in);
+            }
+            try {
+                if (out == null) {
+                    while (reader.hasNext()) {
+                        reader.next();
                     }
+                    return;
+                }
+                XMLStreamWriter writer;
+                synchronized (OUTPUT_FACTORY) {
+                    writer = OUTPUT_FACTORY.createXMLStreamWriter(out, OUTPUT_ENCODING);
                 }
-                super.characters(ch, start, length);
-            }
-        };
-        String str = FileUtils.readFileToString(xmlFile);
-        Source src = createSafeSource(xr, new InputSource(new StringReader(str)));
-        final ByteArrayOutputStream result = new ByteArrayOutputStream();
-        Result res = new StreamResult(result);
-        TransformerFactory factory = TransformerFactory.newInstance();
-        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-        Transformer transformer = factory.newTransformer();
-        //omit xml declaration because of https://bugs.openjdk.java.net/browse/JDK-8035437
-        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-        transformer.setOutputProperty(OutputKeys.ENCODING, OUTPUT_ENCODING);
+                new Redaction(reader, writer).run();
+                // Does not close the output
+                writer.close();
+            } finally {
+                reader.close();
+            }
+        }
+    }
 
-        try {
-            transformer.transform(src, res);
-            return result.toString("UTF-8");
-        } catch (TransformerException e) {
-            if (ENABLE_FALLBACK) {
-                return findSecretFallback(str);
+    /**
+     * Copies the events of a reader to a writer, replacing the text of the elements holding secrets.
+     */
+    private static final class Redaction {
+        private final XMLStreamReader reader;
+        private final XMLStreamWriter writer;
+        private String tagName = "";
+        private String previousStringTagValue;
+        /**
+         * Whether the element just read is not written yet, so it is written as an empty element if it has no content.
+         */
+        private boolean pendingElement;
+        private String pendingPrefix;
+        private String pendingLocalName;
+        private String pendingNamespaceURI;
+        private final List<String[]> pendingNamespaces = new ArrayList<>();
+        private final List<String[]> pendingAttributes = new ArrayList<>();
+
+        Redaction(XMLStreamReader reader, XMLStreamWriter writer) {
+            this.reader = reader;
+            this.writer = writer;
+        }
+
+        void run() throws XMLStreamException {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        writePendingElement(false);
+                        readElement();
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (pendingElement) {
+                            writePendingElement(true);
+                        } else {
+                            writer.writeEndElement();
+                        }
+                        tagName = "";
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        writePendingElement(false);
+                        writer.writeCharacters(tagName.isEmpty() ? reader.getText() : redact(reader.getText()));
+                        break;
+                    case XMLStreamConstants.ENTITY_REFERENCE:
+                        // Only reported when not resolved
+                        writePendingElement(false);
+                        writer.writeCharacters(XXE_MARKER);
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        writePendingElement(false);
+                        writer.writeComment(reader.getText());
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        writePendingElement(false);
+                        writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+                        break;
+                    default:
+                        // The declaration and the DTD are left out, as they used to be
+                }
+            }
+            writePendingElement(false);
+            writer.writeEndDocument();
+        }
+
+        private void readElement() {
+            QName name = reader.getName();
+            tagName = name.getPrefix().isEmpty() ? name.getLocalPart() : name.getPrefix() + ':' + name.getLocalPart();
+            pendingElement = true;
+            pendingPrefix = name.getPrefix();
+            pendingLocalName = name.getLocalPart();
+            pendingNamespaceURI = name.getNamespaceURI();
+            pendingNamespaces.clear();
+            for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                pendingNamespaces.add(new String[] {reader.getNamespacePrefix(i), reader.getNamespaceURI(i)});
+            }
+            pendingAttributes.clear();
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                QName attribute = reader.getAttributeName(i);
+                if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute.getNamespaceURI())
+                        || XMLConstants.XMLNS_ATTRIBUTE.equals(attribute.getPrefix())
+                        || attribute.getPrefix().isEmpty() && XMLConstants.XMLNS_ATTRIBUTE.equals(attribute.getLocalPart())) {
+                    // Some parsers also report the namespace declarations of XML 1.1 documents as attributes
+                    continue;
+                }
+                pendingAttributes.add(new String[] {attribute.getPrefix(), attribute.getNamespaceURI(),
+                        attribute.getLocalPart(), reader.getAttributeValue(i)});
+            }
+        }
+
+        private void writePendingElement(boolean empty) throws XMLStreamException {
+            if (!pendingElement) {
+                return;
+            }
+            pendingElement = false;
+            if (empty) {
+                writer.writeEmptyElement(pendingPrefix, pendingLocalName, pendingNamespaceURI);
             } else {
-                throw e;
+                writer.writeStartElement(pendingPrefix, pendingLocalName, pendingNamespaceURI);
+            }
+            for (String[] namespace : pendingNamespaces) {
+                if (namespace[0] == null || namespace[0].isEmpty()) {
+                    writer.writeDefaultNamespace(namespace[1]);
+                } else {
+                    writer.writeNamespace(namespace[0], namespace[1]);
+                }
+            }
+            for (String[] attribute : pendingAttributes) {
+                if (attribute[0].isEmpty()) {
+                    writer.writeAttribute(attribute[2], attribute[3]);
+                } else {
+                    writer.writeAttribute(attribute[0], attribute[1], attribute[2], attribute[3]);
+                }
             }
         }
+
+        private String redact(String text) {
+            String value = text.trim();
+            //if it's a secret, then use a place holder
+            // convenience check !"{}".equals(value) because of JENKINS-47500
+            if (value.isEmpty() || "{}".equals(value)) {
+                return text;
+            }
+            if (isSecret(value)) {
+                return SECRET_MARKER;
+            }
+            if (isJvmArgsWithSecrets(tagName, value)) {
+                return PasswordRedactor.get().redact(value);
+            }
+            if ("string".equals(tagName)) {
+                if (previousStringTagValue != null) {
+                    boolean secret = PasswordRedactor.get().match(previousStringTagValue);
+                    previousStringTagValue = null;
+                    if (secret) {
+                        return PasswordRedactor.REDACTED;
+                    }
+                } else {
+                    previousStringTagValue = value;
+                }
+            }
+            return text;
+        }
     }
 
+    private static boolean isSecret(String value) {
+        return mayBeEncrypted(value) && (Secret.decrypt(value) != null || SecretBytes.isSecretBytes(value));
+    }
+
+    /**
+     * Tells by its shape whether a value may be encrypted, so only those are decrypted, which is costly. Values
+     * encrypted the current way are base64 in braces, the base64 being decoded leniently by some. Values encrypted the
+     * historical way are bare padded base64, decoding to whole AES blocks.
+     */
+    static boolean mayBeEncrypted(String value) {
+        int length = value.length();
+        if (length >= 2 && value.charAt(0) == '{' && value.charAt(length - 1) == '}') {
+            int base64 = 0;
+            for (int i = 1; i < length - 1; i++) {
+                if (isBase64(value.charAt(i))) {
+                    base64++;
+                }
+            }
+            return base64 * 6L / 8 >= MIN_ENCRYPTED_BYTES;
+        }
+        if (length % 4 != 0) {
+            return false;
+        }
+        int end = length;
+        while (end > 0 && length - end < 2 && value.charAt(end - 1) == '=') {
+            end--;
+        }
+        for (int i = 0; i < end; i++) {
+            if (!isBase64(value.charAt(i))) {
+                return false;
+            }
+        }
+        long bytes = end * 6L / 8;
+        return bytes >= MIN_ENCRYPTED_BYTES && bytes % MIN_ENCRYPTED_BYTES == 0;
+    }
+
+    private static boolean isBase64(char c) {
+        return c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '+' || c == '/';
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        // The DTD is read so its entities are known, but external entities are never resolved
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, true);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setXMLResolver((publicID, systemID, baseURI, namespace) ->
+                new ByteArrayInputStream(XXE_MARKER.getBytes(StandardCharsets.US_ASCII)));
+        // The whole text of an element is needed to tell whether it is a secret
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
 
     private static String findSecretFallback(String xml) {
         Matcher matcher = SECRET_PATTERN.matcher(xml);
@@ -148,28 +360,6 @@ class SecretHandler {
         return xml;
     }
 
-    /**
-     * Converts a Source into a Source that is protected against XXE attacks.
-     * @see jenkins.util.xml.XMLUtils#safeTransform
-     */
-    private static Source createSafeSource(XMLReader reader, InputSource source) {
-        try {
-            reader.setFeature("http://xml.org/sax/features/external-general-entities", false);
-        } catch (SAXException ignored) {
-            /* Fallback entity resolver will be used */
-        }
-        try {
-            reader.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
-        } catch (SAXException ignored) {
-            /* Fallback entity resolver will be used */
-        }
-         // Fallback in case the above features are not supported by the underlying XML library.
-        reader.setEntityResolver((publicId, systemId) -> {
-            return new InputSource(new ByteArrayInputStream(XXE_MARKER.getBytes(StandardCharsets.US_ASCII)));
-        });
-        return new SAXSource(reader, source);
-    }
-
     private static boolean isJvmArgsWithSecrets(String tagName, String value) {
         return ("jvmOptions".equals(tagName) || "vmargs".equals(tagName) || "cmd".equals(tagName)) && PasswordRedactor.get().match(value);
     }
@@ -4,11 +4,15 @@ import com.cloudbees.jenkins.support.api.FileContent;
 import com.cloudbees.jenkins.support.filter.PasswordRedactor;
 import org.xml.sax.SAXException;
 
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.TransformerException;
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.NoSuchFileException;
 
 class XmlRedactedSecretFileContent extends FileContent {
 
@@ -25,6 +29,21 @@ class XmlRedactedSecretFileContent extends FileContent {
         super(name, filterableParameters, file);
     }
 
+    /**
+     * Writes the redacted file straight into the bundle, rather than through {@link #getInputStream()}.
+     */
+    @Override
+    public void writeTo(OutputStream os) throws IOException {
+        try {
+            SecretHandler.writeRedacted(file, os);
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            // Reported the usual way
+            super.writeTo(os);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
     @Override
     protected InputStream getInputStream() throws IOException {
         try {
@@ -45,6 +45,25 @@ class AllContentFilters implements ContentFilter {
         return filtered;
     }
 
+    @Override
+    public @NonNull CharSequence filter(@NonNull CharSequence input) {
+        CharSequence filtered = input;
+        for (ContentFilter filter : ContentFilter.all()) {
+            filtered = filter.filter(filtered);
+        }
+        return filtered;
+    }
+
+    @Override
+    public boolean canSplit(@NonNull CharSequence input, int index) {
+        for (ContentFilter filter : ContentFilter.all()) {
+            if (!filter.canSplit(input, index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public void reload() {
         ContentFilter.all().forEach(ContentFilter::reload);
@@ -59,6 +59,32 @@ public interface ContentFilter extends ExtensionPoint {
      */
     @NonNull String filter(@NonNull String input);
 
+    /**
+     * Filters a line or snippet of text which is not necessarily a String, like a view over a reusable buffer.
+     * Implementations should return the very same input instance when there is nothing to filter, so callers can avoid
+     * copying it. The returned value must not be kept by the caller after the input is modified.
+     * By default, the input is converted to a String and passed to {@link #filter(String)}.
+     *
+     * @param input input data to filter
+     * @return the filtered input data, the very same instance if nothing was filtered
+     */
+    default @NonNull CharSequence filter(@NonNull CharSequence input) {
+        return filter(input.toString());
+    }
+
+    /**
+     * Tells whether filtering a text in two pieces, split at the given place, gives the same result as filtering it at
+     * once, so long lines can be filtered piece by piece. This must not change the state of the filter, like creating
+     * mappings for the words found. By default, no place is known to be safe.
+     *
+     * @param input the text to split
+     * @param index the place of the split
+     * @return {@code true} if the text can be split at this place
+     */
+    default boolean canSplit(@NonNull CharSequence input, int index) {
+        return false;
+    }
+
     /**
      * Reloads the state of this filter. This may be implemented to rescan for more items to filter.
      */
@@ -79,4 +105,18 @@ public interface ContentFilter extends ExtensionPoint {
             return text;
         }
     }
+
+    /**
+     * Same as {@link #filter(ContentFilter, String)} for any {@link CharSequence}.
+     * @param filter the filter to use when filtering
+     * @param text the text to filter
+     * @return the text filtered if it is not empty and the filter is not null, the very same text otherwise
+     */
+    static CharSequence filter(@CheckForNull ContentFilter filter, @CheckForNull CharSequence text) {
+        if (filter != null && text != null && text.length() > 0) {
+            return filter.filter(text);
+        } else {
+            return text;
+        }
+    }
 }
@@ -31,6 +31,7 @@ import org.kohsuke.accmod.restrictions.NoExternalUse;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
 import net.jcip.annotations.Immutable;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
@@ -49,31 +50,10 @@ public class ContentMapping implements ContentFilter {
 
     private final String original;
     private final String replacement;
-    private final int hashCode;
-
-    private final String[] originals;
-    private final String[] replacements;
 
     private ContentMapping(@NonNull String original, @NonNull String replacement) {
         this.original = original;
         this.replacement = replacement;
-
-        // add flavors of the original string to replace, avoid add when equals
-        String slashChangedInOriginal = original.replace("/", ALT_SEPARATOR);
-        Set<String> originalsSet = new HashSet<>(4);
-        originalsSet.add(original);
-        originalsSet.add(Functions.escape(original));
-        originalsSet.add(slashChangedInOriginal);
-        originalsSet.add(Functions.escape(slashChangedInOriginal));
-        originals = originalsSet.toArray(new String[0]);
-
-        // create the replacement array with the same length as the resulting originals
-        replacements = new String[originals.length];
-        for(int i = 0; i < replacements.length; i++) {
-            replacements[i] = replacement;
-        }
-
-        this.hashCode = original.hashCode();
     }
 
     /**
@@ -97,8 +77,27 @@ public class ContentMapping implements ContentFilter {
         return replacement;
     }
 
+    /**
+     * @return the flavors of the original string to replace. They are only needed when this mapping is used as a
+     * filter on its own, so they are not kept along with every mapping.
+     */
+    private @NonNull String[] getOriginals() {
+        // add flavors of the original string to replace, avoid add when equals
+        String slashChangedInOriginal = original.replace("/", ALT_SEPARATOR);
+        Set<String> originalsSet = new HashSet<>(4);
+        originalsSet.add(original);
+        originalsSet.add(Functions.escape(original));
+        originalsSet.add(slashChangedInOriginal);
+        originalsSet.add(Functions.escape(slashChangedInOriginal));
+        return originalsSet.toArray(new String[0]);
+    }
+
     @Override
     public @NonNull String filter(@NonNull String input) {
+        String[] originals = getOriginals();
+        // create the replacement array with the same length as the resulting originals
+        String[] replacements = new String[originals.length];
+        Arrays.fill(replacements, replacement);
         return WordReplacer.replaceWordsIgnoreCase(input, originals, replacements);
     }
 
@@ -112,7 +111,7 @@ public class ContentMapping implements ContentFilter {
 
     @Override
     public int hashCode() {
-        return hashCode;
+        return original.hashCode();
     }
 
     private Object writeReplace() {
@@ -26,15 +26,19 @@ package com.cloudbees.jenkins.support.filter;
 
 import com.cloudbees.jenkins.support.SupportPlugin;
 import com.cloudbees.jenkins.support.util.Persistence;
+import hudson.BulkChange;
 import hudson.Extension;
 import hudson.model.AbstractItem;
+import hudson.model.Item;
 import hudson.model.ManagementLink;
 import hudson.model.Saveable;
+import hudson.model.listeners.ItemListener;
 import jenkins.model.Jenkins;
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import java.io.BufferedReader;
 import java.io.File;
@@ -42,23 +46,29 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static java.util.stream.Collectors.toConcurrentMap;
-import static java.util.stream.Collectors.toMap;
 
 /**
  * Holds all anonymized content mappings and provides a management view to see those mappings.
@@ -78,7 +88,20 @@ public class ContentMappings extends ManagementLink implements Saveable, Iterabl
      * The location should point to a line separated file containing words. Each line is treated as a word. 
      */
     static final String ADDITIONAL_STOP_WORDS_PROPERTY = ContentMappings.class.getName()+".additionalStopWordsFile";
-    
+
+    /**
+     * Minimum number of mappings appended to the journal before all the mappings are saved again. The journal is also
+     * allowed to grow as big as the saved mappings, so saving all of them costs O(1) per new mapping on average.
+     */
+    static final int JOURNAL_COMPACTION_THRESHOLD =
+            Integer.getInteger(ContentMappings.class.getName() + ".journalCompactionThreshold", 1000);
+
+    /**
+     * Number of new originals remembered, so that what was filtered before they were added can be checked against them
+     * instead of being filtered again.
+     */
+    private static final int RECENT_ORIGINALS = 10000;
+
     /**
      * @return the singleton instance
      */
@@ -87,13 +110,12 @@ public class ContentMappings extends ManagementLink implements Saveable, Iterabl
     }
 
     /**
-     * Constructs a new ContentMappings using an existing config file or default settings if not found.
+     * Constructs a new ContentMappings using an existing config file or default settings if not found. The config file
+     * and the journal are only read the first time the mappings are used.
      */
-    public static @Extension ContentMappings newInstance() throws IOException {
-        ContentMappings mappings = Persistence.load(ContentMappings.class);
-        if (mappings == null) {
-            mappings = (ContentMappings) new XmlProxy().readResolve();
-        }
+    public static @Extension ContentMappings newInstance() {
+        ContentMappings mappings = (ContentMappings) new XmlProxy().readResolve();
+        mappings.loaded = false;
         return mappings;
     }
 
@@ -103,7 +125,38 @@ public class ContentMappings extends ManagementLink implements Saveable, Iterabl
     private static final Logger LOGGER = Logger.getLogger(ContentMappings.class.getName());
 
     private final Set<String> stopWords;
-    private final Map<String, ContentMapping> mappings;
+    /**
+     * The replacement of each original string. Only the strings are kept, the {@link ContentMapping}s are created when
+     * asked for, so each mapping costs its two strings and one entry of the map.
+     */
+    private final Map<String, String> mappings;
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong generation = new AtomicLong();
+    private final ContentMappingsJournal journal =
+            new ContentMappingsJournal(new File(Jenkins.get().getRootDir(), ContentMappings.class.getCanonicalName() + ".journal"));
+    private volatile boolean loaded = true;
+    /**
+     * Set when the mappings are removed, so the next new mapping saves all of them instead of going to the journal.
+     */
+    private volatile boolean compactionNeeded;
+    /**
+     * Number of mappings when they were last saved or loaded.
+     */
+    private volatile int savedSize;
+    /**
+     * The originals of the latest new mappings, the last one being added at the current version. Every version after
+     * {@link #recentOriginalsFrom} is the addition of one of them.
+     */
+    private final Deque<String> recentOriginals = new ArrayDeque<>();
+    private long recentOriginalsFrom;
+    /**
+     * Generation of the mappings when the stop words of all the items were last added, or -1 if they never were.
+     */
+    private volatile long reloadedGeneration = -1;
+    /**
+     * The items created or updated since the last reload, whose stop words are added by the next one.
+     */
+    private final Set<AbstractItem> changedItems = ConcurrentHashMap.newKeySet();
 
     private ContentMappings(@NonNull XmlProxy proxy) {
         if (proxy.stopWords == null) {
@@ -126,7 +179,43 @@ public class ContentMappings extends ManagementLink implements Saveable, Iterabl
                 ? new ConcurrentSkipListMap<>(COMPARATOR)
                 : proxy.mappings.stream()
                     .filter(mapping -> !stopWords.contains(mapping.getOriginal().toLowerCase(Locale.ENGLISH)))
-                    .collect(toConcurrentMap(ContentMapping::getOriginal, Function.identity(), (a, b) -> {throw new IllegalArgumentException();}, () -> new ConcurrentSkipListMap<>(COMPARATOR)));
+                    .collect(toConcurrentMap(ContentMapping::getOriginal, ContentMapping::getReplacement, (a, b) -> {throw new IllegalArgumentException();}, () -> new ConcurrentSkipListMap<>(COMPARATOR)));
+    }
+
+    /**
+     * Reads the persisted mappings, then the mappings appended to the journal since they were saved.
+     */
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (journal) {
+            if (loaded) {
+                return;
+            }
+            try {
+                ContentMappings persisted = Persistence.load(ContentMappings.class);
+                if (persisted != null) {
+                    stopWords.clear();
+                    stopWords.addAll(persisted.stopWords);
+                    mappings.putAll(persisted.mappings);
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not load mappings file", e);
+            }
+            try {
+                journal.replay((original, replacement) -> {
+                    if (!stopWords.contains(original.toLowerCase(Locale.ENGLISH))) {
+                        mappings.putIfAbsent(original, replacement);
+                    }
+                });
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not load mappings journal", e);
+            }
+            savedSize = mappings.size();
+            forgetRecentOriginals();
+            loaded = true;
+        }
     }
 
     /**
@@ -201,6 +290,7 @@ public class ContentMappings extends ManagementLink implements Saveable, Iterabl
      * @return the set of stop words to ignore when filtering
      */
     public @NonNull Set<String> getStopWords() {
+        ensureLoaded();
         return Collections.unmodifiableSet(stopWords);
     }
 
@@ -208,63 +298,229 @@ public class ContentMappings extends ManagementLink implements Saveable, Iterabl
      * @return the map of original to replacement values known to this instance
      */
     public @NonNull Map<String, String> getMappings() {
-        return mappings.values().stream().collect(toMap(ContentMapping::getOriginal, ContentMapping::getReplacement));
+        ensureLoaded();
+        return new HashMap<>(mappings);
     }
 
     /**
-     * Looks up or creates a new ContentMapping for the given original string and a ContentMapping generator.
+     * Looks up or creates a new ContentMapping for the given original string and a ContentMapping generator. A new
+     * mapping is appended to the journal, unless it is created inside a {@link BulkChange} in which case it is saved
+     * with the other mappings when the change is committed.
      */
     public @NonNull ContentMapping getMappingOrCreate(@NonNull String original, @NonNull Function<String, ContentMapping> generator) {
-        boolean isNew = !mappings.containsKey(original);
-        ContentMapping mapping = mappings.computeIfAbsent(original, generator);
+        ensureLoaded();
+        String replacement = mappings.get(original);
+        if (replacement != null) {
+            return ContentMapping.of(original, replacement);
+        }
+        ContentMapping mapping = generator.apply(original);
+        replacement = mappings.putIfAbsent(original, mapping.getReplacement());
+        if (replacement != null) {
+            // Created meanwhile by another thread
+            return ContentMapping.of(original, replacement);
+        }
         try {
-            if (isNew) {
-                save();
-            }
+            added(original);
+            persist(mapping);
         } catch (IOException e) {
             LOGGER.log(Level.WARNING, "Could not save mappings file", e);
         }
         return mapping;
     }
 
-    public void reload() {
-        Jenkins.get().allItems(AbstractItem.class).forEach(item -> {
-            stopWords.add(item.getTaskNoun().toLowerCase(Locale.ENGLISH));
-            stopWords.add(item.getPronoun().toLowerCase(Locale.ENGLISH));
-        });
+    private void persist(@NonNull ContentMapping mapping) throws IOException {
+        if (BulkChange.contains(this)) {
+            return;
+        }
+        synchronized (journal) {
+            if (compactionNeeded || journal.size() >= Math.max(JOURNAL_COMPACTION_THRESHOLD, savedSize)) {
+                save();
+            } else {
+                journal.append(mapping.getOriginal(), mapping.getReplacement());
+            }
+        }
+    }
+
+    /**
+     * @return a number which changes every time a mapping is added or removed. Useful to know when something computed
+     * from the current mappings must be computed again.
+     */
+    public long getVersion() {
+        ensureLoaded();
+        return version.get();
+    }
+
+    private void added(@NonNull String original) {
+        synchronized (recentOriginals) {
+            version.incrementAndGet();
+            recentOriginals.addLast(original);
+            if (recentOriginals.size() > RECENT_ORIGINALS) {
+                recentOriginals.removeFirst();
+                recentOriginalsFrom++;
+            }
+        }
+    }
+
+    private void forgetRecentOriginals() {
+        synchronized (recentOriginals) {
+            recentOriginalsFrom = version.incrementAndGet();
+            recentOriginals.clear();
+        }
+    }
+
+    /**
+     * @return the originals of the mappings added since the given {@link #getVersion() version}, or {@code null} if
+     * they are no longer known or mappings were loaded or removed meanwhile
+     */
+    @CheckForNull List<String> getOriginalsAddedSince(long since) {
+        ensureLoaded();
+        synchronized (recentOriginals) {
+            long current = version.get();
+            if (since < recentOriginalsFrom || since > current) {
+                return null;
+            }
+            List<String> added = new ArrayList<>((int) (current - since));
+            Iterator<String> latest = recentOriginals.descendingIterator();
+            for (long v = current; v > since; v--) {
+                added.add(latest.next());
+            }
+            return added;
+        }
+    }
+
+    /**
+     * @return a number which changes every time mappings are removed. Useful to know when mappings cached somewhere
+     * else may no longer exist.
+     */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Adds the task nouns and pronouns of the items to the stop words. All the items are only walked by the first
+     * reload or after the mappings were cleared, the next ones only add those of the items changed meanwhile.
+     */
+    public synchronized void reload() {
+        ensureLoaded();
+        long current = generation.get();
+        if (SensitiveContentFilter.FULL_RELOAD || reloadedGeneration != current) {
+            changedItems.clear();
+            reloadedGeneration = current;
+            Jenkins.get().allItems(AbstractItem.class).forEach(this::addStopWords);
+        } else {
+            for (Iterator<AbstractItem> it = changedItems.iterator(); it.hasNext(); ) {
+                addStopWords(it.next());
+                it.remove();
+            }
+        }
+    }
+
+    private void addStopWords(AbstractItem item) {
+        stopWords.add(item.getTaskNoun().toLowerCase(Locale.ENGLISH));
+        stopWords.add(item.getPronoun().toLowerCase(Locale.ENGLISH));
+    }
+
+    private void itemChanged(Item item) {
+        if (item instanceof AbstractItem && reloadedGeneration != -1) {
+            changedItems.add((AbstractItem) item);
+        }
     }
 
     protected void clear() {
+        ensureLoaded();
+        compactionNeeded = true;
         stopWords.clear();
         stopWords.addAll(getDefaultStopWords());
         mappings.clear();
+        forgetRecentOriginals();
+        generation.incrementAndGet();
     }
 
+    /**
+     * Saves all the mappings and empties the journal.
+     */
     @Override
     public void save() throws IOException {
-        Persistence.save(this);
+        if (BulkChange.contains(this)) {
+            return;
+        }
+        ensureLoaded();
+        // Hold the journal so no mapping is appended between the save and the journal being emptied
+        synchronized (journal) {
+            Persistence.save(this);
+            journal.clear();
+            savedSize = mappings.size();
+            compactionNeeded = false;
+        }
     }
 
     @Override
     public Iterator<ContentMapping> iterator() {
-        return mappings.values().iterator();
+        ensureLoaded();
+        Iterator<Map.Entry<String, String>> entries = mappings.entrySet().iterator();
+        return new Iterator<ContentMapping>() {
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public ContentMapping next() {
+                Map.Entry<String, String> entry = entries.next();
+                return ContentMapping.of(entry.getKey(), entry.getValue());
+            }
+
+            @Override
+            public void remove() {
+                entries.remove();
+            }
+        };
     }
 
     @Override
     public void forEach(Consumer<? super ContentMapping> action) {
-        mappings.values().forEach(action);
+        ensureLoaded();
+        mappings.forEach((original, replacement) -> action.accept(ContentMapping.of(original, replacement)));
     }
 
     @Override
     public Spliterator<ContentMapping> spliterator() {
-        return mappings.values().spliterator();
+        ensureLoaded();
+        return mappings.entrySet().stream()
+                .map(entry -> ContentMapping.of(entry.getKey(), entry.getValue()))
+                .spliterator();
+    }
+
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static final class ItemListenerImpl extends ItemListener {
+        @Override
+        public void onCreated(Item item) {
+            get().itemChanged(item);
+        }
+
+        @Override
+        public void onCopied(Item src, Item item) {
+            get().itemChanged(item);
+        }
+
+        @Override
+        public void onUpdated(Item item) {
+            get().itemChanged(item);
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            get().changedItems.remove(item);
+        }
     }
 
     private Object writeReplace() {
         XmlProxy proxy = new XmlProxy();
         proxy.stopWords = new HashSet<>(stopWords);
         proxy.stopWords.remove(Jenkins.VERSION);
-        proxy.mappings = new HashSet<>(mappings.values());
+        proxy.mappings = new HashSet<>(mappings.size());
+        mappings.forEach((original, replacement) -> proxy.mappings.add(ContentMapping.of(original, replacement)));
         return proxy;
     }
 
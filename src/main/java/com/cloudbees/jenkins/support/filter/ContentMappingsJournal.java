@@ -0,0 +1,172 @@
+package com.cloudbees.jenkins.support.filter;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import net.jcip.annotations.GuardedBy;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only log of the mappings created since {@link ContentMappings} was last saved. Adding a mapping only appends
+ * a line to this file instead of writing all the mappings again. The journal is emptied every time the whole mappings
+ * are saved.
+ * <p>
+ * Each line holds the original and the replacement separated by a tab, with backslashes, tabs and line breaks escaped.
+ * A line which was not completely written, for example because the process was killed, is dropped when the journal is
+ * read.
+ *
+ * @see ContentMappings
+ */
+@Restricted(NoExternalUse.class)
+class ContentMappingsJournal {
+
+    private static final Logger LOGGER = Logger.getLogger(ContentMappingsJournal.class.getName());
+
+    private final File file;
+    @GuardedBy("this")
+    private int size;
+
+    ContentMappingsJournal(@NonNull File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads all the mappings in the journal.
+     * @param action called with the original and the replacement of each mapping, in the order they were appended
+     * @throws IOException if the journal cannot be read
+     */
+    synchronized void replay(@NonNull BiConsumer<String, String> action) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file.toPath());
+        } catch (NoSuchFileException e) {
+            size = 0;
+            return;
+        }
+        int count = 0;
+        int start = 0;
+        for (int end = indexOf(bytes, start); end >= 0; end = indexOf(bytes, start)) {
+            String[] record = parse(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+            if (record == null) {
+                LOGGER.log(Level.WARNING, "Ignoring malformed line {0} of {1}", new Object[] {count + 1, file});
+            } else {
+                action.accept(record[0], record[1]);
+            }
+            count++;
+            start = end + 1;
+        }
+        if (start < bytes.length) {
+            // The last line was not completely written, drop it so the next line is not appended to it
+            LOGGER.log(Level.FINE, "Truncating incomplete line at the end of {0}", file);
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(start);
+            }
+        }
+        size = count;
+    }
+
+    /**
+     * Appends a mapping to the journal.
+     * @param original the original string
+     * @param replacement the replacement string
+     * @throws IOException if the journal cannot be written
+     */
+    synchronized void append(@NonNull String original, @NonNull String replacement) throws IOException {
+        StringBuilder line = new StringBuilder(original.length() + replacement.length() + 2);
+        escape(original, line);
+        line.append('\t');
+        escape(replacement, line);
+        line.append('\n');
+        // Written at once, so a crash can only leave an incomplete last line
+        try (OutputStream out = Files.newOutputStream(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        size++;
+    }
+
+    /**
+     * Empties the journal, once all its mappings are saved somewhere else.
+     * @throws IOException if the journal cannot be deleted
+     */
+    synchronized void clear() throws IOException {
+        Files.deleteIfExists(file.toPath());
+        size = 0;
+    }
+
+    /**
+     * @return the number of mappings in the journal
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    private static int indexOf(byte[] bytes, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void escape(String value, StringBuilder sb) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': sb.append("\\\\"); break;
+                case '\t': sb.append("\\t"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                default: sb.append(c);
+            }
+        }
+    }
+
+    /**
+     * @return the original and the replacement, or {@code null} if the line is malformed
+     */
+    private static String[] parse(String line) {
+        String[] record = new String[2];
+        int field = 0;
+        StringBuilder sb = new StringBuilder(line.length());
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                if (field > 0) {
+                    return null;
+                }
+                record[field++] = sb.toString();
+                sb.setLength(0);
+            } else if (c == '\\') {
+                if (++i == line.length()) {
+                    return null;
+                }
+                switch (line.charAt(i)) {
+                    case '\\': sb.append('\\'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    default: return null;
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        if (field != 1) {
+            return null;
+        }
+        record[1] = sb.toString();
+        return record;
+    }
+}
@@ -30,6 +30,7 @@ final class FilteredConstants {
 
     static final Pattern EOL = Pattern.compile("\r?\n|" + '\0');
     static final int DEFAULT_DECODER_CAPACITY = 1024;
+    static final int DEFAULT_ENCODER_CAPACITY = 8192;
 
     private FilteredConstants() {
     }
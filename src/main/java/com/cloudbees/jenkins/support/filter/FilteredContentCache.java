@@ -0,0 +1,448 @@
+package com.cloudbees.jenkins.support.filter;
+
+import com.cloudbees.jenkins.support.SupportPlugin;
+import com.cloudbees.jenkins.support.util.MultiWordReplacer;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Filtered content of the files written to the previous bundles, kept in the {@link SupportPlugin#getRootDirectory()
+ * support directory} so that a file which has not changed is copied as it is into the next bundle instead of being
+ * filtered again.
+ * <p>
+ * A cached copy is used as long as the file has the same identity, size and modification time. When mappings were
+ * added since the copy was made, it is only used if none of their originals is found in the file or in the copy, so
+ * that the addresses mapped while writing a bundle do not force every file to be filtered again. Only the content
+ * filtered by the built-in filters is cached, since they depend on nothing but the {@link ContentMappings}. The cache
+ * is only kept in memory, the directory is emptied when the cache is first used.
+ */
+@Restricted(NoExternalUse.class)
+public final class FilteredContentCache {
+
+    private static final Logger LOGGER = Logger.getLogger(FilteredContentCache.class.getName());
+
+    /**
+     * Disk space used by the cached copies, the least recently used being removed first. Set to 0 to disable the cache.
+     */
+    static final long MAX_SIZE_MB = Long.getLong(FilteredContentCache.class.getName() + ".maxSizeMB", 100);
+
+    static final String DIRECTORY_NAME = "filtered-content-cache";
+
+    /**
+     * Files modified more recently than that are not cached, since they could be modified again without their size nor
+     * their modification time changing.
+     */
+    private static final long MIN_AGE_MILLIS = 2000;
+
+    private static volatile FilteredContentCache instance;
+
+    /**
+     * Writes the filtered content of a file.
+     */
+    @FunctionalInterface
+    public interface Filtering {
+        void writeTo(@NonNull OutputStream os) throws IOException;
+    }
+
+    private static final class Entry {
+        private final File copy;
+        private final BasicFileAttributes attributes;
+        private final long length;
+        /**
+         * The version of the mappings the copy is known to be filtered with.
+         */
+        private volatile long version;
+        private volatile long lastUsed;
+
+        private Entry(File copy, BasicFileAttributes attributes, long length, long version) {
+            this.copy = copy;
+            this.attributes = attributes;
+            this.length = length;
+            this.version = version;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @return whether the attributes are those of the same file with the same content
+     */
+    private static boolean isSameFile(BasicFileAttributes a, BasicFileAttributes b) {
+        return Objects.equals(a.fileKey(), b.fileKey()) && a.size() == b.size()
+                && a.lastModifiedTime().equals(b.lastModifiedTime());
+    }
+
+    /**
+     * The originals of the mappings added since the versions of the entries, looked up once per version of the mappings
+     * for all the entries made at the same version.
+     */
+    private static final class AddedOriginals {
+        private final ContentMappings mappings;
+        private final long version;
+        private final Map<Long, MultiWordReplacer> replacers = new ConcurrentHashMap<>();
+
+        private AddedOriginals(ContentMappings mappings, long version) {
+            this.mappings = mappings;
+            this.version = version;
+        }
+
+        /**
+         * @return a replacer finding the originals of the mappings added since the given version, or {@code null} if
+         * they are no longer known
+         */
+        private @CheckForNull MultiWordReplacer since(long since) {
+            return replacers.computeIfAbsent(since, v -> {
+                List<String> added = mappings.getOriginalsAddedSince(v);
+                if (added == null) {
+                    return null;
+                }
+                String[] originals = added.toArray(new String[0]);
+                return MultiWordReplacer.ofIgnoreCase(originals, originals);
+            });
+        }
+    }
+
+    private final File directory;
+    private final long maxSize;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong counter = new AtomicLong();
+    private volatile AddedOriginals addedOriginals;
+
+    FilteredContentCache(@NonNull File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the cache of the current Jenkins instance, or {@code null} if it is disabled
+     */
+    public static @CheckForNull FilteredContentCache get() {
+        if (MAX_SIZE_MB <= 0) {
+            return null;
+        }
+        File directory = new File(SupportPlugin.getRootDirectory(), DIRECTORY_NAME);
+        FilteredContentCache cache = instance;
+        // A new Jenkins instance in the same JVM, like in tests, must not see the copies of the previous one
+        if (cache == null || !cache.directory.equals(directory)) {
+            synchronized (FilteredContentCache.class) {
+                cache = instance;
+                if (cache == null || !cache.directory.equals(directory)) {
+                    cache = new FilteredContentCache(directory, MAX_SIZE_MB * 1024 * 1024);
+                    cache.clear();
+                    instance = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * @return whether the content filtered by the given filter can be cached, which is only known for the built-in
+     * filters
+     */
+    public static boolean isCacheable(@NonNull ContentFilter filter) {
+        if (filter instanceof AllContentFilters) {
+            return ContentFilter.all().stream().allMatch(FilteredContentCache::isBuiltIn);
+        }
+        return isBuiltIn(filter);
+    }
+
+    private static boolean isBuiltIn(ContentFilter filter) {
+        return filter.getClass() == SensitiveContentFilter.class || filter.getClass() == InetAddressContentFilter.class;
+    }
+
+    /**
+     * Writes the filtered content of a file, copied from the cache when possible.
+     * @param file the file to filter
+     * @param kind how the file is filtered, so that the same file filtered in different ways is cached separately,
+     * with {@linkplain #isCacheable(ContentFilter) cacheable} filters only
+     * @param os where to write the filtered content
+     * @param filtering writes the filtered content when it is not cached
+     */
+    public void write(@NonNull File file, @NonNull String kind, @NonNull OutputStream os, @NonNull Filtering filtering)
+            throws IOException {
+        BasicFileAttributes before = readAttributes(file);
+        if (before == null || !before.isRegularFile()) {
+            filtering.writeTo(os);
+            return;
+        }
+        String key = kind + '\n' + file.getAbsolutePath();
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (isSameFile(entry.attributes, before) && isUpToDate(entry, file) && copy(entry, os)) {
+                return;
+            }
+            remove(key, entry);
+        }
+
+        long version = ContentMappings.get().getVersion();
+        File copy = new File(directory, counter.incrementAndGet() + ".txt");
+        CopyingOutputStream out;
+        try {
+            Files.createDirectories(directory.toPath());
+            out = new CopyingOutputStream(os, Files.newOutputStream(copy.toPath()), maxSize / 4);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not create " + copy, e);
+            filtering.writeTo(os);
+            return;
+        }
+        boolean written = false;
+        try {
+            filtering.writeTo(out);
+            written = true;
+        } finally {
+            out.closeCopy();
+            BasicFileAttributes after = readAttributes(file);
+            // Not kept if the file changed while it was read, or may still change unnoticed
+            if (written && out.isCopied() && after != null && isSameFile(before, after)
+                    && before.lastModifiedTime().toMillis() < System.currentTimeMillis() - MIN_AGE_MILLIS) {
+                put(key, new Entry(copy, before, out.getCopied(), getFilteredVersion(copy, version)));
+            } else {
+                delete(copy);
+            }
+        }
+    }
+
+    /**
+     * @return whether none of the originals of the mappings added since the copy was made can be found in the file or
+     * in the copy, so filtering the file again would give the same content
+     */
+    private boolean isUpToDate(Entry entry, File file) {
+        AddedOriginals added = getAddedOriginals();
+        if (entry.version == added.version) {
+            return true;
+        }
+        MultiWordReplacer replacer = added.since(entry.version);
+        if (replacer == null) {
+            return false;
+        }
+        try {
+            if (contains(file, replacer) || contains(entry.copy, replacer)) {
+                return false;
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not check " + file, e);
+            return false;
+        }
+        entry.version = added.version;
+        return true;
+    }
+
+    /**
+     * @param since the version of the mappings when the file started to be filtered
+     * @return the version of the mappings the copy is known to be filtered with. The mappings added while the file was
+     * filtered, often by the filters finding new names in the file itself, are only counted when none of their
+     * originals is left in the copy.
+     */
+    private long getFilteredVersion(File copy, long since) {
+        AddedOriginals added = getAddedOriginals();
+        if (since == added.version) {
+            return since;
+        }
+        MultiWordReplacer replacer = added.since(since);
+        if (replacer == null) {
+            return since;
+        }
+        try {
+            return contains(copy, replacer) ? since : added.version;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not check " + copy, e);
+            return since;
+        }
+    }
+
+    private AddedOriginals getAddedOriginals() {
+        ContentMappings mappings = ContentMappings.get();
+        // Read the version before the originals, so that a mapping added meanwhile is looked up again next time
+        long version = mappings.getVersion();
+        AddedOriginals current = addedOriginals;
+        if (current == null || current.mappings != mappings || current.version != version) {
+            current = new AddedOriginals(mappings, version);
+            addedOriginals = current;
+        }
+        return current;
+    }
+
+    private static boolean contains(File file, MultiWordReplacer replacer) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                // The replacer gives the very same line back when no word is found
+                if (replacer.replace(line) != line) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return {@code false} if the copy cannot be read, in which case nothing was written
+     */
+    private boolean copy(Entry entry, OutputStream os) throws IOException {
+        InputStream is;
+        try {
+            is = Files.newInputStream(entry.copy.toPath());
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not read " + entry.copy, e);
+            return false;
+        }
+        // Once started, the copy cannot fall back to filtering the file since part of the content is written
+        try (InputStream in = is) {
+            IOUtils.copy(in, os);
+        }
+        entry.lastUsed = System.currentTimeMillis();
+        return true;
+    }
+
+    private void put(String key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            size.addAndGet(-previous.length);
+            delete(previous.copy);
+        }
+        if (size.addAndGet(entry.length) > maxSize) {
+            evict();
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            size.addAndGet(-entry.length);
+            delete(entry.copy);
+        }
+    }
+
+    private synchronized void evict() {
+        List<Map.Entry<String, Entry>> lru = new ArrayList<>(entries.entrySet());
+        lru.sort(Comparator.comparingLong(e -> e.getValue().lastUsed));
+        for (Map.Entry<String, Entry> e : lru) {
+            if (size.get() <= maxSize) {
+                break;
+            }
+            remove(e.getKey(), e.getValue());
+        }
+    }
+
+    private void clear() {
+        entries.clear();
+        size.set(0);
+        try {
+            FileUtils.deleteDirectory(directory);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not empty " + directory, e);
+        }
+    }
+
+    private static @CheckForNull BasicFileAttributes readAttributes(File file) {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void delete(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not delete " + file, e);
+        }
+    }
+
+    /**
+     * Writes to the bundle and to the copy. A copy which cannot be written or grows too big is given up without
+     * disturbing the bundle.
+     */
+    private static final class CopyingOutputStream extends FilterOutputStream {
+        private final long maxCopied;
+        private OutputStream copy;
+        private long copied;
+        private boolean failed;
+
+        CopyingOutputStream(OutputStream out, OutputStream copy, long maxCopied) {
+            super(out);
+            this.copy = copy;
+            this.maxCopied = maxCopied;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            copy(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            copy(b, off, len);
+        }
+
+        private void copy(byte[] b, int off, int len) {
+            if (copy == null) {
+                return;
+            }
+            if (copied + len > maxCopied) {
+                failed = true;
+                closeCopy();
+                return;
+            }
+            try {
+                copy.write(b, off, len);
+                copied += len;
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Could not write the cached copy", e);
+                failed = true;
+                closeCopy();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            // The bundle stream is not ours to close
+            flush();
+        }
+
+        void closeCopy() {
+            if (copy != null) {
+                try {
+                    copy.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Could not close the cached copy", e);
+                    failed = true;
+                }
+                copy = null;
+            }
+        }
+
+        boolean isCopied() {
+            return !failed;
+        }
+
+        long getCopied() {
+            return copied;
+        }
+    }
+}
@@ -37,6 +37,7 @@ import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CoderResult;
 import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
@@ -46,6 +47,8 @@ import java.util.regex.Matcher;
  * Wraps an OutputStream by filtering written lines using a provided ContentFilter.
  * Data written to an instance of this will be decoded on the fly using the provided charset, and each line
  * written is filtered.
+ * Lines are passed to the filter as views over a reusable buffer and encoded again straight into the wrapped stream,
+ * so no copy of the line is made unless the filter actually changes it.
  *
  * @see ContentFilter
  * @see FilteredWriter
@@ -60,9 +63,12 @@ public class FilteredOutputStream extends FilterOutputStream {
     private final ByteBuffer encodedBuf = ByteBuffer.allocate(256);
     @GuardedBy("this")
     private CharBuffer decodedBuf;
-    private final Charset charset;
     @GuardedBy("this")
     private final CharsetDecoder decoder;
+    @GuardedBy("this")
+    private final CharsetEncoder encoder;
+    @GuardedBy("this")
+    private final ByteBuffer filteredBuf = ByteBuffer.allocate(FilteredConstants.DEFAULT_ENCODER_CAPACITY);
     private final ContentFilter contentFilter;
 
     /**
@@ -84,11 +90,13 @@ public class FilteredOutputStream extends FilterOutputStream {
      */
     public FilteredOutputStream(@NonNull OutputStream out, @NonNull Charset charset, @NonNull ContentFilter contentFilter) {
         super(out);
-        this.charset = charset;
         this.decoder = charset.newDecoder()
                 .onMalformedInput(CodingErrorAction.REPLACE)
                 .onUnmappableCharacter(CodingErrorAction.REPLACE)
                 .replaceWith(UNKNOWN_INPUT);
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
         this.contentFilter = contentFilter;
     }
 
@@ -133,9 +141,8 @@ public class FilteredOutputStream extends FilterOutputStream {
         ensureOpen();
         if (decodedBuf.position() > 0) {
             decodedBuf.flip();
-            String contents = decodedBuf.toString();
-            String filtered = ContentFilter.filter(contentFilter, contents);
-            out.write(filtered.getBytes(charset));
+            encode(ContentFilter.filter(contentFilter, (CharSequence) decodedBuf));
+            writeEncoded();
             decodedBuf.clear();
         }
         out.flush();
@@ -178,27 +185,53 @@ public class FilteredOutputStream extends FilterOutputStream {
         if (decodedBuf.position() > 0) {
             decodedBuf.flip();
             Matcher matcher = FilteredConstants.EOL.matcher(decodedBuf);
+            // A single view over the decoded chars is moved from line to line instead of copying each line
+            CharBuffer line = decodedBuf.duplicate();
             int start = 0;
             while (matcher.find()) {
                 int end = matcher.end();
-                String line = decodedBuf.subSequence(start, end).toString();
-                String filtered = ContentFilter.filter(contentFilter, line);
-                out.write(filtered.getBytes(charset));
+                line.limit(end);
+                line.position(start);
+                encode(ContentFilter.filter(contentFilter, (CharSequence) line));
                 start = end;
                 flushed = true;
             }
+            writeEncoded();
             decodedBuf.position(start);
             decodedBuf.compact();
         }
         return flushed;
     }
 
+    /**
+     * Encodes the given chars into the pending filtered bytes, writing them to the wrapped stream whenever the buffer
+     * gets full.
+     */
+    private void encode(CharSequence chars) throws IOException {
+        CharBuffer in = chars instanceof CharBuffer ? (CharBuffer) chars : CharBuffer.wrap(chars);
+        encoder.reset();
+        while (encoder.encode(in, filteredBuf, true).isOverflow()) {
+            writeEncoded();
+        }
+        while (encoder.flush(filteredBuf).isOverflow()) {
+            writeEncoded();
+        }
+    }
+
+    private void writeEncoded() throws IOException {
+        if (filteredBuf.position() > 0) {
+            out.write(filteredBuf.array(), filteredBuf.arrayOffset(), filteredBuf.position());
+            filteredBuf.clear();
+        }
+    }
+
     /**
      * Resets the state of this stream's decoders and buffers.
      */
     public synchronized void reset() {
         ensureOpen();
         encodedBuf.clear();
+        filteredBuf.clear();
         if (decodedBuf.capacity() > FilteredConstants.DEFAULT_DECODER_CAPACITY) {
             this.decodedBuf = CharBuffer.allocate(FilteredConstants.DEFAULT_DECODER_CAPACITY);
         } else {
@@ -109,9 +109,7 @@ public class FilteredWriter extends FilterWriter {
         ensureOpen();
         if (buf.position() > 0) {
             buf.flip();
-            String original = buf.toString();
-            String filtered = ContentFilter.filter(contentFilter, original);
-            out.write(filtered);
+            writeFiltered(ContentFilter.filter(contentFilter, (CharSequence) buf));
             buf.clear();
         }
         out.flush();
@@ -125,17 +123,31 @@ public class FilteredWriter extends FilterWriter {
         buf = null;
     }
 
+    /**
+     * Writes filtered chars, directly from the backing array when the filter left them untouched.
+     */
+    private void writeFiltered(CharSequence filtered) throws IOException {
+        if (filtered instanceof CharBuffer && ((CharBuffer) filtered).hasArray()) {
+            CharBuffer chars = (CharBuffer) filtered;
+            out.write(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+        } else {
+            out.append(filtered);
+        }
+    }
+
     private void filterFlushLines() throws IOException {
         ensureOpen();
         if (buf.position() > 0) {
             buf.flip();
             Matcher matcher = FilteredConstants.EOL.matcher(buf);
+            // A single view over the buffered chars is moved from line to line instead of copying each line
+            CharBuffer line = buf.duplicate();
             int start = 0;
             while (matcher.find()) {
                 int end = matcher.end();
-                String line = buf.subSequence(start, end).toString();
-                String filtered = ContentFilter.filter(contentFilter, line);
-                out.write(filtered);
+                line.limit(end);
+                line.position(start);
+                writeFiltered(ContentFilter.filter(contentFilter, (CharSequence) line));
                 start = end;
             }
             buf.position(start);
@@ -24,15 +24,21 @@
 
 package com.cloudbees.jenkins.support.filter;
 
-import com.cloudbees.jenkins.support.util.WordReplacer;
+import com.cloudbees.jenkins.support.util.MultiWordReplacer;
 import hudson.Extension;
 import hudson.ExtensionList;
+import org.apache.commons.lang.StringUtils;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -59,28 +65,139 @@ public class InetAddressContentFilter implements ContentFilter {
     // we add the mix notation (last 2 octet is IPv4)
     private static final String IPv6_STANDARD_AND_MIX = "(?i)(?:[0-9a-f]{1,4}:){6}(?:([0-9a-f]{1,4}):[0-9a-f]{1,4}|" + IPv4 + ")";
     private static final String IPv6_COMPRESSED_AND_MIX = "(?i)((?:[0-9a-f]{1,4}(?::[0-9a-f]{1,4})*)?)::(((?:[0-9a-f]{1,4}:){1,5})?(" + IPv4 + ")|((?:[0-9a-f]{1,4}(?::[0-9a-f]{1,4})*)?))";
-    private static final Pattern IP_ADDRESS = Pattern.compile("(?<![:.\\w])(" + IPv4 + '|' + IPv6_STANDARD_AND_MIX + '|' + IPv6_COMPRESSED_AND_MIX + ")(?![:.\\w])");
+    static final Pattern IP_ADDRESS = Pattern.compile("(?<![:.\\w])(" + IPv4 + '|' + IPv6_STANDARD_AND_MIX + '|' + IPv6_COMPRESSED_AND_MIX + ")(?![:.\\w])");
+
+    /**
+     * Maximum number of addresses whose replacement is remembered, so addresses found over and over don't need to be
+     * looked up in the {@link ContentMappings}.
+     */
+    static final int ADDRESS_CACHE_SIZE = Integer.getInteger(InetAddressContentFilter.class.getName() + ".addressCacheSize", 4096);
+
+    private volatile AddressCache cache = new AddressCache(null, -1);
 
     @Override
     public @NonNull String filter(@NonNull String input) {
-        ContentMappings mappings = ContentMappings.get();
+        return filter((CharSequence) input).toString();
+    }
+
+    @Override
+    public @NonNull CharSequence filter(@NonNull CharSequence input) {
+        // Most of the lines have no address at all, don't even run the regular expression on them
+        if (!mayContainAddress(input)) {
+            return input;
+        }
         Matcher m = IP_ADDRESS.matcher(input);
+        if (!m.find()) {
+            return input;
+        }
+        ContentMappings mappings = ContentMappings.get();
+        AddressCache addresses = getCache(mappings);
         // Use the map keys to filter every IP found without repeating the filtering if the same is found twice.
-        Map<String, String> searchAndReplacementValues = new HashMap<>();
-        while (m.find()) {
+        Map<String, String> searchAndReplacementValues = new LinkedHashMap<>();
+        do {
             String ip = m.group();
 
-            if (!mappings.getStopWords().contains(ip)) {
-                ContentMapping map = mappings.getMappingOrCreate(ip, InetAddressContentFilter::newMapping);
-                searchAndReplacementValues.put(ip, map.getReplacement());
+            if (!searchAndReplacementValues.containsKey(ip) && !mappings.getStopWords().contains(ip)) {
+                searchAndReplacementValues.put(ip, addresses.getReplacement(ip));
             }
+        } while (m.find());
+        if (searchAndReplacementValues.isEmpty()) {
+            return input;
         }
-        String filtered = input;
-        if (!searchAndReplacementValues.isEmpty()) {
-            filtered = WordReplacer.replaceWordsIgnoreCase(input, searchAndReplacementValues.keySet().toArray(new String[0]), searchAndReplacementValues.values().toArray(new String[0]));
+        // Also replaces the occurrences of the addresses not found by the regular expression, like at the end of a sentence
+        return MultiWordReplacer.ofIgnoreCase(searchAndReplacementValues.keySet().toArray(new String[0]),
+                searchAndReplacementValues.values().toArray(new String[0])).replace(input);
+    }
+
+    @Override
+    public boolean canSplit(@NonNull CharSequence input, int index) {
+        int length = input.length();
+        if (index <= 0 || index >= length) {
+            return true;
+        }
+        // An address is never next to one of these characters, so none can be found across the split if one of the
+        // characters around it is not one of them
+        if (isAddressCharacter(input.charAt(index - 1)) && isAddressCharacter(input.charAt(index))) {
+            return false;
+        }
+        // The addresses found in a piece are also replaced where the regular expression doesn't find them, so an
+        // address only found in one of the pieces must not appear in the other one. No mapping is looked up.
+        String before = input.subSequence(0, index).toString();
+        String after = input.subSequence(index, length).toString();
+        Set<String> foundBefore = findAddresses(before);
+        Set<String> foundAfter = findAddresses(after);
+        for (String address : foundBefore) {
+            if (!foundAfter.contains(address) && StringUtils.containsIgnoreCase(after, address)) {
+                return false;
+            }
+        }
+        for (String address : foundAfter) {
+            if (!foundBefore.contains(address) && StringUtils.containsIgnoreCase(before, address)) {
+                return false;
+            }
         }
+        return true;
+    }
+
+    @Override
+    public void reload() {
+        cache = new AddressCache(null, -1);
+    }
 
-        return filtered;
+    private AddressCache getCache(ContentMappings mappings) {
+        AddressCache current = cache;
+        long generation = mappings.getGeneration();
+        if (current.mappings != mappings || current.generation != generation) {
+            // First use, or some mappings were removed since the replacements were cached
+            current = new AddressCache(mappings, generation);
+            cache = current;
+        }
+        return current;
+    }
+
+    /**
+     * Cheap check telling whether some text may contain an address matching {@link #IP_ADDRESS}. An IPv4 address
+     * has at least 3 dots between digits, an IPv6 address has either {@code ::} or at least 6 colons.
+     * @return {@code false} if there is certainly no address in the input
+     */
+    static boolean mayContainAddress(@NonNull CharSequence input) {
+        int digitDots = 0;
+        int colons = 0;
+        int length = input.length();
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(i);
+            if (c == '.') {
+                if (i > 0 && i + 1 < length && isDigit(input.charAt(i - 1)) && isDigit(input.charAt(i + 1))
+                        && ++digitDots >= 3) {
+                    return true;
+                }
+            } else if (c == ':') {
+                if ((i > 0 && input.charAt(i - 1) == ':') || ++colons >= 6) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> findAddresses(String input) {
+        if (!mayContainAddress(input)) {
+            return Collections.emptySet();
+        }
+        Set<String> addresses = new HashSet<>();
+        Matcher m = IP_ADDRESS.matcher(input);
+        while (m.find()) {
+            addresses.add(m.group());
+        }
+        return addresses;
+    }
+
+    private static boolean isAddressCharacter(char c) {
+        return c == ':' || c == '.' || c == '_' || isDigit(c) || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
     }
 
     private static ContentMapping newMapping(String original) {
@@ -88,4 +205,30 @@ public class InetAddressContentFilter implements ContentFilter {
         return ContentMapping.of(original, replacement);
     }
 
+    /**
+     * Replacements of the addresses recently found, valid as long as no mapping is removed from the
+     * {@link ContentMappings} they come from. The cache is simply emptied when full.
+     */
+    private static final class AddressCache {
+        private final ContentMappings mappings;
+        private final long generation;
+        private final ConcurrentMap<String, String> replacements = new ConcurrentHashMap<>();
+
+        private AddressCache(ContentMappings mappings, long generation) {
+            this.mappings = mappings;
+            this.generation = generation;
+        }
+
+        private String getReplacement(String ip) {
+            String replacement = replacements.get(ip);
+            if (replacement == null) {
+                replacement = mappings.getMappingOrCreate(ip, InetAddressContentFilter::newMapping).getReplacement();
+                if (replacements.size() >= ADDRESS_CACHE_SIZE) {
+                    replacements.clear();
+                }
+                replacements.put(ip, replacement);
+            }
+            return replacement;
+        }
+    }
 }
@@ -27,7 +27,9 @@ package com.cloudbees.jenkins.support.filter;
 import hudson.Extension;
 import hudson.ExtensionList;
 import hudson.ExtensionPoint;
+import hudson.model.Item;
 import hudson.model.Label;
+import hudson.model.Node;
 import hudson.model.User;
 import jenkins.model.Jenkins;
 import org.kohsuke.accmod.Restricted;
@@ -89,12 +91,24 @@ public class NameProvider implements ExtensionPoint {
         return collection.stream();
     }
 
+    static Stream<String> itemNames(@NonNull Item item) {
+        return Stream.of(item.getName(), item.getDisplayName());
+    }
+
+    static Stream<String> nodeNames(@NonNull Node node) {
+        return Stream.of(node.getNodeName(), node.getDisplayName());
+    }
+
+    static Stream<String> userNames(@NonNull User user) {
+        return Stream.of(user.getId(), user.getFullName(), user.getDisplayName());
+    }
+
     /**
      * Provides the names of items.
      */
     public static final @Extension NameProvider ITEMS = new NameProvider(
             () -> stream(Jenkins.get().allItems())
-                    .flatMap(item -> Stream.of(item.getName(), item.getDisplayName())),
+                    .flatMap(NameProvider::itemNames),
             DataFaker.get().apply(name -> "item_" + name));
 
     /**
@@ -110,7 +124,7 @@ public class NameProvider implements ExtensionPoint {
      */
     public static final @Extension NameProvider NODES = new NameProvider(
             () -> stream(Jenkins.get().getNodes())
-                    .flatMap(node -> Stream.of(node.getNodeName(), node.getDisplayName())),
+                    .flatMap(NameProvider::nodeNames),
             DataFaker.get().apply(name -> "node_" + name));
 
     /**
@@ -126,7 +140,7 @@ public class NameProvider implements ExtensionPoint {
      */
     public static final @Extension NameProvider USERS = new NameProvider(
             () -> stream(User.getAll())
-                    .flatMap(user -> Stream.of(user.getId(), user.getFullName(), user.getDisplayName())),
+                    .flatMap(NameProvider::userNames),
             DataFaker.get().apply(name -> "user_" + name));
 
     /**
@@ -4,6 +4,9 @@ import hudson.Extension;
 import hudson.ExtensionList;
 import org.jenkinsci.remoting.SerializableOnlyOverRemoting;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -21,22 +24,38 @@ public class PasswordRedactor implements SerializableOnlyOverRemoting {
     public static final String REDACTED = "REDACTED";
     public static final List<String> FILES_WITH_SECRETS = Collections.unmodifiableList(Arrays.asList("cmdline", "environ"));
 
+    /**
+     * Size of the chunks read by {@link #redact(Reader, Writer)}.
+     */
+    private static final int CHUNK_SIZE = 8192;
+
     private final Pattern pattern;
-    private final String matcher;
+    private final Pattern secretPropertyPattern;
+    /**
+     * Whether the secret words only hold word characters, so a secret is known to be a key without whitespace nor
+     * {@code =}, whitespaces, an {@code =}, whitespaces and a value as matched by the pattern.
+     */
+    private final boolean plainWords;
 
     public static PasswordRedactor get() {
         return ExtensionList.lookupSingleton(PasswordRedactor.class);
     }
 
     public PasswordRedactor() {
-        this.pattern = PasswordRedactorRegexBuilder.PASSWORD_PATTERN;
-        this.matcher = PasswordRedactorRegexBuilder.SECRET_PROPERTY_MATCHER;
+        this(PasswordRedactorRegexBuilder.PASSWORD_PATTERN, PasswordRedactorRegexBuilder.SECRET_PROPERTY_MATCHER,
+                PasswordRedactorRegexBuilder.PLAIN_SECRET_WORDS);
     }
 
     // for tests usage
     PasswordRedactor(Pattern pattern, String matcher) {
+        this(pattern, matcher, false);
+    }
+
+    // for tests usage
+    PasswordRedactor(Pattern pattern, String matcher, boolean plainWords) {
         this.pattern = pattern;
-        this.matcher = matcher;
+        this.secretPropertyPattern = matcher == null ? null : Pattern.compile(matcher);
+        this.plainWords = plainWords;
     }
 
     public String redact(String input) {
@@ -44,23 +63,191 @@ public class PasswordRedactor implements SerializableOnlyOverRemoting {
             // 'security-stop-words.txt' is empty
             return input;
         }
+        StringBuilder redacted = new StringBuilder(input.length());
+        try {
+            redact(input, redacted);
+        } catch (IOException e) {
+            throw new AssertionError(e); // a StringBuilder does not throw
+        }
+        return redacted.toString();
+    }
+
+    /**
+     * Copies the input, redacting the secrets. The input is read in chunks, each redacted up to where the secret it
+     * may end with could start, so the result is the one of {@link #redact(String)} on the whole input. When the
+     * secret words are not plain words, the whole input is read before being redacted.
+     *
+     * @param in the input, not closed
+     * @param out where to write the redacted input, neither flushed nor closed
+     * @throws IOException if the input cannot be read or the output written
+     */
+    public void redact(Reader in, Writer out) throws IOException {
+        char[] chunk = new char[CHUNK_SIZE];
+        if (pattern == null) {
+            // 'security-stop-words.txt' is empty
+            for (int read = in.read(chunk); read != -1; read = in.read(chunk)) {
+                out.write(chunk, 0, read);
+            }
+            return;
+        }
+        StringBuilder pending = new StringBuilder(2 * CHUNK_SIZE);
+        // Grows with what is held back, so a long secret in the making is not scanned again for each chunk
+        int next = CHUNK_SIZE;
+        for (int read = in.read(chunk); read != -1; read = in.read(chunk)) {
+            pending.append(chunk, 0, read);
+            if (!plainWords || pending.length() < next) {
+                continue;
+            }
+            pending.delete(0, redactCompleted(pending, out));
+            next = Math.max(CHUNK_SIZE, 2 * pending.length());
+        }
+        redact(pending, out);
+    }
+
+    /**
+     * Rewrites the input in a single pass, each value following a secret key being replaced by {@link #REDACTED}.
+     */
+    private void redact(CharSequence input, Appendable out) throws IOException {
         Matcher patternMatcher = pattern.matcher(input);
+        int last = 0;
         while (patternMatcher.find()) {
+            last = appendRedacted(input, patternMatcher, last, out);
+        }
+        out.append(input, last, input.length());
+    }
+
+    /**
+     * Rewrites the input up to where the secret it may end with could start, which further input could change.
+     *
+     * @return the number of characters rewritten
+     */
+    private int redactCompleted(CharSequence input, Appendable out) throws IOException {
+        int partial = partialStart(input);
+        Matcher patternMatcher = pattern.matcher(input);
+        int last = 0;
+        // A secret found before the partial one does not reach the end of the input, so it is complete
+        while (patternMatcher.find() && patternMatcher.start() < partial) {
+            last = appendRedacted(input, patternMatcher, last, out);
+        }
+        int cut = Math.max(last, partial);
+        out.append(input, last, cut);
+        return cut;
+    }
+
+    /**
+     * Appends the input since the previous secret and the key of the one found, its value being redacted.
+     *
+     * @return the end of the secret
+     */
+    private static int appendRedacted(CharSequence input, Matcher patternMatcher, int last, Appendable out)
+            throws IOException {
+        if (LOGGER.isLoggable(Level.FINE)) {
             LOGGER.log(Level.FINE, "Argument ''{0}'' contain secret data", patternMatcher.group(1));
-            String secretValue = patternMatcher.group(2);
-            input = input.replaceFirst("=\\s*" + Pattern.quote(secretValue), "=" + REDACTED);
         }
-        return input;
+        // The key ends before any whitespace followed by '=', which are kept
+        int equals = patternMatcher.end(1);
+        while (input.charAt(equals) != '=') {
+            equals++;
+        }
+        out.append(input, last, equals).append('=').append(REDACTED);
+        return patternMatcher.end();
+    }
+
+    /**
+     * Finds where a secret reaching the end of the input, so which could go on with the next characters, could start.
+     * The secret words being plain words, such a secret is a key without whitespace nor {@code =}, whitespaces, an
+     * {@code =}, whitespaces and a value without whitespace, {@code \0}, {@code ,}, {@code <}, {@code '} nor
+     * {@code `}, the input possibly ending in any of these parts. A value is thus complete once followed by one of
+     * these characters, while a key can span them.
+     *
+     * @return the first place from which the input could be the start of a secret
+     */
+    static int partialStart(CharSequence input) {
+        int end = input.length();
+        // A key and whitespaces, the '=' not being read yet
+        int start = skipKey(input, skipWhitespaces(input, end));
+        // Or a key, whitespaces, the first '=' following it, whitespaces and a value which can hold '='
+        int value = end;
+        while (value > 0 && isValue(input.charAt(value - 1))) {
+            value--;
+        }
+        int equals = skipWhitespaces(input, value) - 1;
+        if (equals < 0 || input.charAt(equals) != '=') {
+            equals = value;
+            while (equals < end && input.charAt(equals) != '=') {
+                equals++;
+            }
+        }
+        if (equals < end) {
+            start = Math.min(start, skipKey(input, skipWhitespaces(input, equals)));
+        }
+        return start;
+    }
+
+    /**
+     * Tells whether redacting a text in two pieces, split at the given place, gives the same result as redacting it at
+     * once, without redacting anything. The secret words being plain words, a secret only holds whitespaces around the
+     * {@code =} between its key and its value, so the text can be split after a whitespace which neither precedes nor
+     * follows an {@code =}.
+     *
+     * @param input the text to split
+     * @param index the place of the split
+     * @return {@code true} if no secret can be found across the split
+     */
+    public static boolean canSplit(CharSequence input, int index) {
+        if (index <= 0 || index >= input.length()) {
+            return true;
+        }
+        char next = input.charAt(index);
+        if (!isWhitespace(input.charAt(index - 1)) || isWhitespace(next) || next == '=') {
+            return false;
+        }
+        int previous = skipWhitespaces(input, index);
+        return previous == 0 || input.charAt(previous - 1) != '=';
+    }
+
+    /**
+     * @return the start of the whitespaces ending before the given place
+     */
+    private static int skipWhitespaces(CharSequence input, int end) {
+        while (end > 0 && isWhitespace(input.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * @return the start of the characters a key can hold ending before the given place
+     */
+    private static int skipKey(CharSequence input, int end) {
+        while (end > 0 && !isWhitespace(input.charAt(end - 1)) && input.charAt(end - 1) != '=') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * @return whether the character is matched by {@code \s}
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * @return whether the character can be part of a value
+     */
+    private static boolean isValue(char c) {
+        return !isWhitespace(c) && c != ',' && c != '\0' && c != '<' && c != '\'' && c != '`';
     }
 
     public Map<String, String> redact(Map<String, String> properties) {
-        if (matcher == null) {
+        if (secretPropertyPattern == null) {
             // 'security-stop-words.txt' is empty
             return properties;
         }
         Map<String, String> redacted = new HashMap<>();
         for (Map.Entry<String, String> entry : properties.entrySet()) {
-            if (entry.getKey().matches(matcher)) {
+            if (secretPropertyPattern.matcher(entry.getKey()).matches()) {
                 LOGGER.log(Level.FINE, "Argument ''{0}'' contain secret data", entry.getKey());
                 redacted.put(entry.getKey(), REDACTED);
             } else {
@@ -71,11 +258,11 @@ public class PasswordRedactor implements SerializableOnlyOverRemoting {
     }
 
     public boolean match(String value) {
-        if (matcher == null) {
+        if (secretPropertyPattern == null) {
             // 'security-stop-words.txt' is empty
             return false;
         }
-        return value.matches(matcher);
+        return secretPropertyPattern.matcher(value).matches();
     }
 
 }
@@ -23,11 +23,14 @@ public class PasswordRedactorRegexBuilder {
     private static final Logger LOGGER = Logger.getLogger(PasswordRedactorRegexBuilder.class.getName());
 
     public static final String ADDITIONAL_SECURITY_WORDS_FILENAME = "security-stop-words.txt";
+    private static final Pattern PLAIN_WORD = Pattern.compile("[\\w-]+");
     private static final Set<String> SECRET_WORDS = getSecretWords();
     //ex: (?i)(private[^=\s]*|key[^=\s]*|passwd[^=\s]*|password[^=\s]*|token[^=\s]*|passphrase[^=\s]*|secret[^=\s]*)\s*=\s*([^,\s\0]*)
     public static final Pattern PASSWORD_PATTERN = getPasswordPattern(SECRET_WORDS);
     // ex: "(?i).*(password|private|passwd|passphrase|key|token).*"
     public static final String SECRET_PROPERTY_MATCHER = getSecretMatcher(SECRET_WORDS);
+    // whether the secret words only hold word characters, so they never match a whitespace
+    static final boolean PLAIN_SECRET_WORDS = arePlainWords(SECRET_WORDS);
 
     private PasswordRedactorRegexBuilder() {
         // to hide the implicit public constructor
@@ -49,6 +52,11 @@ public class PasswordRedactorRegexBuilder {
         return buildRegex(secretWords, "", "(?i).*(", ").*");
     }
 
+    // package private for tests
+    static boolean arePlainWords(Set<String> secretWords) {
+        return secretWords.stream().allMatch(word -> PLAIN_WORD.matcher(word).matches());
+    }
+
     private static String buildRegex(Set<String> words, String wordSuffix, String prefix, String suffix) {
         return words.stream()
                 .map(securityWord -> securityWord + wordSuffix)
@@ -24,21 +24,41 @@
 
 package com.cloudbees.jenkins.support.filter;
 
-import com.cloudbees.jenkins.support.util.WordReplacer;
+import com.cloudbees.jenkins.support.util.MultiWordReplacer;
 import hudson.Extension;
 import hudson.ExtensionList;
+import hudson.XmlFile;
+import hudson.model.Item;
+import hudson.model.Node;
+import hudson.model.Saveable;
+import hudson.model.User;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
+import jenkins.model.Jenkins;
+import jenkins.model.NodeListener;
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 /**
  * Filters contents based on names provided by all {@linkplain NameProvider known sources}.
+ * <p>
+ * The names of all the sources are only looked up by the first reload, or after the mappings were cleared or
+ * {@link #requestFullReload()} was called. The next reloads only look up the names of the built-in sources which changed
+ * meanwhile, as told by the item, node and save events. The names of the other sources are always looked up, since no
+ * event tells about their changes.
  *
  * @see NameProvider
  * @since TODO
@@ -47,37 +67,227 @@ import java.util.Set;
 @Restricted(NoExternalUse.class)
 public class SensitiveContentFilter implements ContentFilter {
 
+    /**
+     * Set to {@code true} to look up the names of all the sources on every reload instead of only the changed ones.
+     */
+    static final boolean FULL_RELOAD = Boolean.getBoolean(SensitiveContentFilter.class.getName() + ".fullReload");
+
+    /**
+     * The sources whose changes are told by the events, so whose names are only looked up again when they changed.
+     */
+    private static final Set<NameProvider> TRACKED_PROVIDERS = new HashSet<>(Arrays.asList(NameProvider.ITEMS,
+            NameProvider.NODES, NameProvider.USERS, NameProvider.VIEWS, NameProvider.COMPUTERS, NameProvider.LABELS));
+
     public static SensitiveContentFilter get() {
         return ExtensionList.lookupSingleton(SensitiveContentFilter.class);
     }
 
+    /**
+     * Generation of the mappings when the names of all the sources were last looked up, or -1 when they must be looked
+     * up again.
+     */
+    private long reloadedGeneration = -1;
+
+    /**
+     * Set once all the names were looked up. Changes are not recorded before since the first reload finds them anyway.
+     */
+    private volatile boolean recording;
+
+    /**
+     * The names which changed since the last reload, by source.
+     */
+    private final Map<NameProvider, Set<String>> changedNames = new ConcurrentHashMap<>();
+
+    /**
+     * The sources whose names are all looked up again on the next reload. Used for the sources which are cheap to list
+     * and whose changes are not told one by one, such as the views saved along with Jenkins.
+     */
+    private final Set<NameProvider> changedProviders = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Ids of the users whose names were looked up. Users created on the fly, such as commit authors, are not saved and
+     * no event tells about them, so they are found by comparing ids.
+     */
+    private final Set<String> knownUsers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The replacer compiled from the mappings known when it was built. It is built again as soon as the mappings change.
+     */
+    private volatile CompiledMappings compiled;
+
     @Override
     public @NonNull String filter(@NonNull String input) {
-        ContentMappings mappings = ContentMappings.get();
-        String filtered = input;
-        List<String> searchList = new ArrayList<>();
-        List<String> replacementList = new ArrayList<>();
+        return getReplacer(ContentMappings.get()).replace(input);
+    }
 
-        for (ContentMapping mapping : mappings) {
-            searchList.add(mapping.getOriginal());
-            replacementList.add(mapping.getReplacement());
-        }
-        if (!searchList.isEmpty()) {
-            filtered = WordReplacer.replaceWordsIgnoreCase(input, searchList.toArray(new String[0]), replacementList.toArray(new String[0]));
-        }
+    @Override
+    public @NonNull CharSequence filter(@NonNull CharSequence input) {
+        return getReplacer(ContentMappings.get()).replace(input);
+    }
 
-        return filtered;
+    @Override
+    public boolean canSplit(@NonNull CharSequence input, int index) {
+        return getReplacer(ContentMappings.get()).canSplit(input, index);
+    }
+
+    private MultiWordReplacer getReplacer(ContentMappings mappings) {
+        CompiledMappings current = compiled;
+        // Read the version before iterating so that a mapping added meanwhile forces a new compilation next time
+        long version = mappings.getVersion();
+        if (current == null || current.mappings != mappings || current.version != version) {
+            List<String> searchList = new ArrayList<>();
+            List<String> replacementList = new ArrayList<>();
+
+            // Mappings are sorted by length descending, so the first replacement given for a word is kept as before
+            for (ContentMapping mapping : mappings) {
+                searchList.add(mapping.getOriginal());
+                replacementList.add(mapping.getReplacement());
+            }
+            current = new CompiledMappings(mappings, version,
+                    MultiWordReplacer.ofIgnoreCase(searchList.toArray(new String[0]), replacementList.toArray(new String[0])));
+            compiled = current;
+        }
+        return current.replacer;
     }
 
     @Override
     public synchronized void reload() {
         ContentMappings mappings = ContentMappings.get();
         Set<String> stopWords = mappings.getStopWords();
+        long generation = mappings.getGeneration();
+        boolean full = FULL_RELOAD || reloadedGeneration != generation;
+        if (full) {
+            // Record the changes before looking up, so that a name changed meanwhile is looked up again next time
+            recording = true;
+            changedNames.clear();
+            changedProviders.clear();
+            User.getAll().forEach(user -> knownUsers.add(user.getId()));
+        } else {
+            // No event tells about the users created on the fly. Listing the users only reads those already in memory,
+            // which is far cheaper than looking up all their names again.
+            User.getAll().stream()
+                    .filter(user -> knownUsers.add(user.getId()))
+                    .forEach(user -> changed(NameProvider.USERS, NameProvider.userNames(user)));
+        }
         for (NameProvider provider : NameProvider.all()) {
-            provider.names()
-                    .filter(name -> StringUtils.isNotBlank(name) && !stopWords.contains(name.toLowerCase(Locale.ENGLISH)))
+            Set<String> changed = changedNames.remove(provider);
+            Stream<String> names;
+            if (full || !TRACKED_PROVIDERS.contains(provider) || changedProviders.remove(provider)) {
+                names = provider.names();
+            } else if (changed != null) {
+                names = changed.stream();
+            } else {
+                continue;
+            }
+            names.filter(name -> StringUtils.isNotBlank(name) && !stopWords.contains(name.toLowerCase(Locale.ENGLISH)))
                     .forEach(name -> mappings.getMappingOrCreate(name, original -> ContentMapping.of(original, provider.generateFake())));
         }
+        reloadedGeneration = generation;
+    }
+
+    /**
+     * Makes the next reload look up the names of all the sources, in case a change was missed.
+     */
+    public synchronized void requestFullReload() {
+        reloadedGeneration = -1;
+    }
+
+    private void changed(NameProvider provider, Stream<String> names) {
+        if (recording) {
+            // Add in compute so that no name is added to a set which a reload has just taken
+            changedNames.compute(provider, (p, changed) -> {
+                Set<String> set = changed == null ? ConcurrentHashMap.newKeySet() : changed;
+                names.filter(Objects::nonNull).forEach(set::add);
+                return set;
+            });
+        }
+    }
+
+    private void changed(NameProvider provider) {
+        if (recording) {
+            changedProviders.add(provider);
+        }
+    }
+
+    private void itemChanged(Item item) {
+        changed(NameProvider.ITEMS, NameProvider.itemNames(item));
+        // Jobs may bring new labels with their label expression
+        changed(NameProvider.LABELS);
+    }
+
+    private void nodeChanged(Node node) {
+        changed(NameProvider.NODES, NameProvider.nodeNames(node));
+        changed(NameProvider.COMPUTERS);
+        changed(NameProvider.LABELS);
+    }
+
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static final class ItemListenerImpl extends ItemListener {
+        @Override
+        public void onCreated(Item item) {
+            get().itemChanged(item);
+        }
+
+        @Override
+        public void onCopied(Item src, Item item) {
+            get().itemChanged(item);
+        }
+
+        @Override
+        public void onUpdated(Item item) {
+            get().itemChanged(item);
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            get().itemChanged(item);
+        }
+    }
+
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static final class NodeListenerImpl extends NodeListener {
+        @Override
+        protected void onCreated(@NonNull Node node) {
+            get().nodeChanged(node);
+        }
+
+        @Override
+        protected void onUpdated(@NonNull Node oldOne, @NonNull Node newOne) {
+            get().nodeChanged(newOne);
+        }
     }
 
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static final class SaveableListenerImpl extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof Item) {
+                // Display names may be set without going through the configuration page
+                get().itemChanged((Item) o);
+            } else if (o instanceof User) {
+                User user = (User) o;
+                get().knownUsers.add(user.getId());
+                get().changed(NameProvider.USERS, NameProvider.userNames(user));
+            } else if (o instanceof Jenkins) {
+                // The views and the labels of the controller are saved along with Jenkins
+                get().changed(NameProvider.VIEWS);
+                get().changed(NameProvider.LABELS);
+            }
+        }
+    }
+
+    private static final class CompiledMappings {
+        private final ContentMappings mappings;
+        private final long version;
+        private final MultiWordReplacer replacer;
+
+        private CompiledMappings(ContentMappings mappings, long version, MultiWordReplacer replacer) {
+            this.mappings = mappings;
+            this.version = version;
+            this.replacer = replacer;
+        }
+    }
 }
@@ -123,8 +123,14 @@ public class AboutJenkins extends Component {
         container.add(new Dockerfile(activePlugins, disabledPlugins));
 
         container.add(new ControllerChecksumsContent());
-        for (final Node node : Jenkins.getInstance().getNodes()) {
-            container.add(new NodeChecksumsContent(node));
+        List<Node> nodes = Jenkins.getInstance().getNodes();
+        // Launched on all the agents together when the first checksums are written
+        AsyncResultCache.Batch<String> agentDigests = AsyncResultCache.batch(nodes, agentDigestCache, node -> {
+            FilePath rootPath = node.getRootPath();
+            return rootPath == null ? null : new GetAgentDigest(rootPath);
+        }, "checksums");
+        for (final Node node : nodes) {
+            container.add(new NodeChecksumsContent(node, agentDigests));
         }
     }
 
@@ -646,7 +652,13 @@ public class AboutJenkins extends Component {
             out.println("      - Slave Version:  " + Launcher.VERSION);
             out.print(new GetJavaInfo("      -", "          +").getInfo(filter));
             out.println();
-            for (Node node : jenkins.getNodes()) {
+            List<Node> nodes = jenkins.getNodes();
+            // Ask all the agents at once rather than waiting for each of them in turn
+            AsyncResultCache.Batch<String> agentVersions = AsyncResultCache.batch(nodes, agentVersionCache,
+                    node -> new GetAgentVersion(), "agent.jar version").start();
+            AsyncResultCache.Batch<String> javaInfos = AsyncResultCache.batch(nodes, javaInfoCache,
+                    node -> new GetJavaInfo("      -", "          +"), "Java info").start();
+            for (Node node : nodes) {
                 out.println("  * `" + Markdown.escapeBacktick(ContentFilter.filter(filter, node.getNodeName())) + "` (" +getDescriptorName(node) +
                         ")");
                 out.println("      - Description:    _" +
@@ -676,15 +688,13 @@ public class AboutJenkins extends Component {
                     out.println("      - Status:         on-line");
                     try {
                         out.println("      - Version:        " +
-                                AsyncResultCache.get(node, agentVersionCache, new GetAgentVersion(),
-                                        "agent.jar version", "(timeout with no cache available)"));
+                                agentVersions.get(node, "(timeout with no cache available)"));
                     } catch (IOException e) {
                         logger.log(Level.WARNING,
                                 "Could not get agent.jar version for " + node.getNodeName(), e);
                     }
                     try {
-                        final String javaInfo = AsyncResultCache.get(node, javaInfoCache,
-                                new GetJavaInfo("      -", "          +"), "Java info");
+                        final String javaInfo = javaInfos.get(node);
                         if (javaInfo == null) {
                             logger.log(Level.FINE,
                                     "Could not get Java info for {0} and no cached value available",
@@ -791,16 +801,16 @@ public class AboutJenkins extends Component {
 
     private class NodeChecksumsContent extends PrintedContent {
         private final Node node;
-        NodeChecksumsContent(Node node) {
+        private final AsyncResultCache.Batch<String> agentDigests;
+        NodeChecksumsContent(Node node, AsyncResultCache.Batch<String> agentDigests) {
             super("nodes/slave/{0}/checksums.md5", node.getNodeName());
             this.node = node;
+            this.agentDigests = agentDigests;
         }
         @Override protected void printTo(PrintWriter out) throws IOException {
             try {
                 final FilePath rootPath = node.getRootPath();
-                String agentDigest = rootPath == null ? "N/A" :
-                        AsyncResultCache.get(node, agentDigestCache, new GetAgentDigest(rootPath),
-                                "checksums", "N/A");
+                String agentDigest = rootPath == null ? "N/A" : agentDigests.get(node, "N/A");
                 out.println(agentDigest);
             } catch (IOException e) {
                 logger.log(Level.WARNING,
@@ -1,21 +1,50 @@
 package com.cloudbees.jenkins.support.impl;
 
+import com.cloudbees.jenkins.support.AsyncResultCache;
+import com.cloudbees.jenkins.support.PersistentResultCache;
 import com.cloudbees.jenkins.support.api.Container;
+import com.cloudbees.jenkins.support.api.Content;
 import com.cloudbees.jenkins.support.api.FilePathContent;
+import com.cloudbees.jenkins.support.filter.PasswordRedactor;
 import com.cloudbees.jenkins.support.util.SystemPlatform;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
-import hudson.FilePath;
 import hudson.model.Computer;
 import hudson.model.Node;
 import jenkins.model.Jenkins;
+import jenkins.security.MasterToSlaveCallable;
+import org.apache.commons.io.IOUtils;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.DoNotUse;
 
-import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Base class for gathering specified /proc files with the capacity of selecting whether filter or not each file
@@ -23,6 +52,10 @@ import java.util.logging.Logger;
  */
 public abstract class AdvancedProcFilesRetriever extends ProcFilesRetriever {
     private static final Logger LOGGER = Logger.getLogger(AdvancedProcFilesRetriever.class.getName());
+    /**
+     * The files collected by this component, the other components collecting other files.
+     */
+    private final WeakHashMap<Node, CollectedProcFiles> procFilesCache = new WeakHashMap<>();
 
     /**
      * If you want to use this method, it's best to use {@link ProcFilesRetriever}.
@@ -41,40 +74,216 @@ public abstract class AdvancedProcFilesRetriever extends ProcFilesRetriever {
      */
     public abstract Set<ProcFile> getProcFilesToRetrieve();
 
+    @Override
+    public void addContents(@NonNull Container container) {
+        addProcContents(container, getNodes());
+    }
+
     @Override
     protected void addUnixContents(@NonNull Container container, final @NonNull Node node) {
-        Computer c = node.toComputer();
-        if (c == null || c.isOffline()) {
-            return;
+        addProcContents(container, Collections.singletonList(node));
+    }
+
+    /**
+     * Collects the files from all the nodes at once, each node sending its platform and all its files in a single
+     * answer, then adds the files of the Linux nodes.
+     */
+    private void addProcContents(@NonNull Container container, @NonNull List<Node> nodes) {
+        List<ProcFile> procFiles = new ArrayList<>(getProcFilesToRetrieve());
+        List<String> paths = new ArrayList<>(procFiles.size());
+        for (ProcFile procFile : procFiles) {
+            paths.add(procFile.getFile());
+        }
+        List<Node> unixNodes = new ArrayList<>();
+        for (Node node : nodes) {
+            Computer c = node.toComputer();
+            // fast path bailout for Windows
+            if (c != null && !c.isOffline() && Boolean.TRUE.equals(c.isUnix())) {
+                unixNodes.add(node);
+            }
+        }
+        // Named after the files, so the files collected for another set of files are never used instead
+        String cacheName = "proc files " + String.join(", ", new TreeSet<>(paths));
+        AsyncResultCache.Batch<CollectedProcFiles> batch = AsyncResultCache.batch(unixNodes, procFilesCache,
+                node -> new CollectProcFiles(paths), cacheName).start();
+        for (Node node : unixNodes) {
+            CollectedProcFiles collected;
+            try {
+                collected = batch.get(node);
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Could not retrieve the proc files from " + getNodeName(node), e);
+                continue;
+            }
+            if (collected == null || !SystemPlatform.LINUX.equals(collected.getPlatform())) {
+                continue;
+            }
+            String name;
+            if (node instanceof Jenkins) {
+                name = "master";
+            } else {
+                name = "slave/" + node.getNodeName();
+            }
+
+            for (ProcFile procDescriptor : procFiles) {
+                container.add(new Content("nodes/{0}/proc/{1}", name, procDescriptor.getName()) {
+                    @Override
+                    public void writeTo(OutputStream os) throws IOException {
+                        collected.writeTo(procDescriptor.getFile(), os);
+                    }
+
+                    @Override
+                    public long getTime() {
+                        return collected.getTime();
+                    }
+
+                    @Override
+                    public boolean shouldBeFiltered() {
+                        // Whether this specific file should be filtered or not
+                        return procDescriptor.isFiltered();
+                    }
+                });
+            }
+
+            afterAddUnixContents(container, node, name);
         }
-        // fast path bailout for Windows
-        if (!Boolean.TRUE.equals(c.isUnix())) {
-            return;
+    }
+
+    /**
+     * The files read from a node, compressed together, along with the platform of the node.
+     */
+    static final class CollectedProcFiles implements Serializable {
+        private static final int FOUND = 0;
+        private static final int NOT_FOUND = 1;
+        private static final int FAILED = 2;
+
+        private final SystemPlatform platform;
+        private final long time;
+        /**
+         * For each file: its path, its status, then its length and content if found, or the error otherwise.
+         */
+        @CheckForNull
+        private final byte[] compressed;
+
+        CollectedProcFiles(@NonNull SystemPlatform platform, long time, @CheckForNull byte[] compressed) {
+            this.platform = platform;
+            this.time = time;
+            this.compressed = compressed;
         }
-        SystemPlatform nodeSystemPlatform = getSystemPlatform(node);
-        if (!SystemPlatform.LINUX.equals(nodeSystemPlatform)) {
-            return;
+
+        @NonNull
+        SystemPlatform getPlatform() {
+            return platform;
         }
-        String name;
-        if (node instanceof Jenkins) {
-            name = "master";
-        } else {
-            name = "slave/" + node.getNodeName();
+
+        long getTime() {
+            return time;
         }
 
-        for (ProcFile procDescriptor : getProcFilesToRetrieve()) {
-            container.add(new FilePathContent("nodes/{0}/proc/{1}", new String[]{name, procDescriptor.getName()},
-                    new FilePath(c.getChannel(), procDescriptor.getFile())) {
+        /**
+         * Reads the files, on the node.
+         */
+        static CollectedProcFiles read(@NonNull List<String> paths) throws IOException {
+            SystemPlatform platform = SystemPlatform.current();
+            if (!SystemPlatform.LINUX.equals(platform)) {
+                return new CollectedProcFiles(platform, System.currentTimeMillis(), null);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                for (String path : paths) {
+                    out.writeUTF(path);
+                    content.reset();
+                    // Files in /proc have no size, they must be read until the end
+                    try (InputStream in = Files.newInputStream(Paths.get(path))) {
+                        IOUtils.copy(in, content);
+                        out.writeByte(FOUND);
+                        out.writeInt(content.size());
+                        content.writeTo(out);
+                    } catch (FileNotFoundException | NoSuchFileException e) {
+                        out.writeByte(NOT_FOUND);
+                        out.writeUTF(e.toString());
+                    } catch (IOException | RuntimeException e) {
+                        out.writeByte(FAILED);
+                        out.writeUTF(e.toString());
+                    }
+                }
+            }
+            return new CollectedProcFiles(platform, System.currentTimeMillis(), bytes.toByteArray());
+        }
 
-                        @Override
-                        public boolean shouldBeFiltered() {
-                            // Whether this specific file should be filtered or not
-                            return procDescriptor.isFiltered();
+        /**
+         * Writes a file as {@link FilePathContent} would have.
+         * @param path the path of the file on the node
+         * @param os where to write the file
+         */
+        void writeTo(@NonNull String path, @NonNull OutputStream os) throws IOException {
+            if (compressed == null) {
+                return;
+            }
+            try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(compressed)))) {
+                while (true) {
+                    String entry;
+                    try {
+                        entry = in.readUTF();
+                    } catch (EOFException e) {
+                        // Rather than an empty file
+                        throw new IOException(path + " was not collected");
+                    }
+                    int status = in.readByte();
+                    if (status != FOUND) {
+                        String error = in.readUTF();
+                        if (entry.equals(path)) {
+                            if (status == FAILED) {
+                                throw new IOException("Could not read " + path + ": " + error);
+                            }
+                            PrintWriter pw = new PrintWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+                            pw.println("--- WARNING: Could not attach " + path + " as it cannot currently be found ---");
+                            pw.println();
+                            pw.println(error);
+                            pw.flush();
+                            return;
                         }
-            });
+                        continue;
+                    }
+                    int length = in.readInt();
+                    if (!entry.equals(path)) {
+                        IOUtils.skipFully(in, length);
+                        continue;
+                    }
+                    byte[] bytes = new byte[length];
+                    in.readFully(bytes);
+                    InputStream content = new ByteArrayInputStream(bytes);
+                    if (PasswordRedactor.FILES_WITH_SECRETS.contains(new File(path).getName())) {
+                        FilePathContent.copyRedacted(content, os);
+                    } else {
+                        IOUtils.copy(content, os);
+                    }
+                    return;
+                }
+            }
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Collects the platform of a node and, when it is Linux, the given files.
+     * The results hold the environment of the process, so they are never written to disk.
+     */
+    private static final class CollectProcFiles extends MasterToSlaveCallable<CollectedProcFiles, IOException>
+            implements PersistentResultCache.Transient {
+        private final List<String> paths;
+
+        CollectProcFiles(List<String> paths) {
+            this.paths = paths;
+        }
+
+        @Override
+        public CollectedProcFiles call() throws IOException {
+            return CollectedProcFiles.read(paths);
         }
 
-        afterAddUnixContents(container, node, name);
+        private static final long serialVersionUID = 1L;
     }
 
     /**
@@ -0,0 +1,283 @@
+package com.cloudbees.jenkins.support.impl;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.io.RewindableRotatingFileOutputStream;
+import io.jenkins.lib.support_log_formatter.SupportLogFormatter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Writes the records of a custom log recorder from a thread of its own, so the logging threads only format the records
+ * and queue them. The writer thread writes the queued records in batches, flushes the file after each batch, and
+ * rotates the file when it would grow beyond the maximum size.
+ * <p>
+ * What happens when the queue is full is given by the {@link OverflowPolicy}.
+ */
+final class AsyncLogFileHandler extends Handler {
+
+    private static final Logger LOGGER = Logger.getLogger(AsyncLogFileHandler.class.getName());
+
+    /**
+     * Maximum number of records written in a batch.
+     */
+    static final int BATCH_SIZE = 256;
+
+    /**
+     * Maximum time {@link #flush()} and {@link #close()} wait for the queued records to be written, and
+     * {@link OverflowPolicy#BLOCK} waits for room in the queue.
+     */
+    private static final long TIMEOUT_MS = 5000;
+
+    /**
+     * How often the writer thread checks whether the handler was closed when there is nothing to write.
+     */
+    private static final long POLL_INTERVAL_MS = 200;
+
+    /**
+     * What to do with a record when the queue is full.
+     */
+    enum OverflowPolicy {
+        /**
+         * Drop the record being published.
+         */
+        DROP_NEWEST,
+        /**
+         * Drop the oldest queued record to make room, so the file ends with the latest records.
+         */
+        DROP_OLDEST,
+        /**
+         * Make the logging thread wait for room in the queue, for a few seconds at most before dropping the record.
+         */
+        BLOCK
+    }
+
+    private final String name;
+    private final RewindableRotatingFileOutputStream stream;
+    private final long maxFileSize;
+    private final OverflowPolicy policy;
+    private final BlockingQueue<byte[]> queue;
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    /**
+     * Number of queued records dropped by {@link OverflowPolicy#DROP_OLDEST}, which will never be written.
+     */
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong enqueueNanos = new AtomicLong();
+    private final AtomicLong maxEnqueueNanos = new AtomicLong();
+    /**
+     * Number of queued records taken by the writer thread, they are in the file once the batch is flushed.
+     */
+    private volatile long written;
+    private final Object writtenMonitor = new Object();
+    /**
+     * Bytes written to the current file, only used by the writer thread.
+     */
+    private long fileSize;
+    private volatile boolean closed;
+    private final Thread writerThread;
+
+    /**
+     * @param name the name of the recorder
+     * @param stream the file, already opened
+     * @param capacity the maximum number of records waiting to be written
+     * @param maxFileSize the size beyond which the file is rotated
+     * @param policy what to do with a record when the queue is full
+     */
+    AsyncLogFileHandler(@NonNull String name, @NonNull RewindableRotatingFileOutputStream stream, int capacity,
+                        long maxFileSize, @NonNull OverflowPolicy policy) {
+        this.name = name;
+        this.stream = stream;
+        this.maxFileSize = maxFileSize;
+        this.policy = policy;
+        queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        setFormatter(new SupportLogFormatter());
+        writerThread = new Thread(this::writeQueued, "CustomLogs writer for " + name);
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        long start = System.nanoTime();
+        byte[] formatted;
+        try {
+            formatted = getFormatter().format(record).getBytes(StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            return;
+        }
+        if (enqueue(formatted)) {
+            queued.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+        long elapsed = System.nanoTime() - start;
+        enqueueNanos.addAndGet(elapsed);
+        maxEnqueueNanos.accumulateAndGet(elapsed, Math::max);
+    }
+
+    private boolean enqueue(byte[] formatted) {
+        if (queue.offer(formatted)) {
+            return true;
+        }
+        switch (policy) {
+            case DROP_OLDEST:
+                // Another logging thread may take the room first, so try again a few times before giving up
+                for (int i = 0; i < 3; i++) {
+                    if (queue.poll() != null) {
+                        dropped.incrementAndGet();
+                        evicted.incrementAndGet();
+                    }
+                    if (queue.offer(formatted)) {
+                        return true;
+                    }
+                }
+                return false;
+            case BLOCK:
+                try {
+                    return queue.offer(formatted, TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Body of the writer thread, writing the queued records until the handler is closed.
+     */
+    private void writeQueued() {
+        List<byte[]> batch = new ArrayList<>(BATCH_SIZE);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        while (!closed || !queue.isEmpty()) {
+            try {
+                // Not interrupted when closed, as that would close the file if it is backed by a channel
+                byte[] first = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                writeBatch(batch, buffer);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Error while writing log records for '" + name + "'", e);
+            } finally {
+                int count = batch.size();
+                batch.clear();
+                buffer.reset();
+                if (count > 0) {
+                    synchronized (writtenMonitor) {
+                        written += count;
+                        writtenMonitor.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeBatch(List<byte[]> batch, ByteArrayOutputStream buffer) throws IOException {
+        for (byte[] formatted : batch) {
+            if (fileSize > 0 && fileSize + formatted.length > maxFileSize) {
+                buffer.writeTo(stream);
+                buffer.reset();
+                stream.rewind();
+                fileSize = 0;
+            }
+            buffer.write(formatted, 0, formatted.length);
+            fileSize += formatted.length;
+        }
+        buffer.writeTo(stream);
+        stream.flush();
+    }
+
+    /**
+     * @return the number of records waiting to be written to the file
+     */
+    int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of records which were queued to be written
+     */
+    long getQueuedCount() {
+        return queued.get();
+    }
+
+    /**
+     * @return the number of records which were not written to the file because the queue was full
+     */
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the mean time spent by the logging threads to publish a record, in nanoseconds
+     */
+    long getMeanEnqueueNanos() {
+        long count = queued.get() + dropped.get();
+        return count == 0 ? 0 : enqueueNanos.get() / count;
+    }
+
+    /**
+     * @return the longest time spent by a logging thread to publish a record, in nanoseconds
+     */
+    long getMaxEnqueueNanos() {
+        return maxEnqueueNanos.get();
+    }
+
+    /**
+     * Waits for the records queued so far to be written to the file.
+     */
+    @Override
+    public void flush() {
+        long target = queued.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MS);
+        synchronized (writtenMonitor) {
+            long remaining;
+            while (written + evicted.get() < target && writerThread.isAlive()
+                    && (remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())) > 0) {
+                try {
+                    writtenMonitor.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws SecurityException {
+        closed = true;
+        try {
+            writerThread.join(TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.cloudbees.jenkins.support.impl;
+
+import com.cloudbees.jenkins.support.PersistentResultCache;
+import com.cloudbees.jenkins.support.api.Component;
+import com.cloudbees.jenkins.support.api.Container;
+import com.cloudbees.jenkins.support.api.PrefilteredPrintedContent;
+import com.cloudbees.jenkins.support.filter.ContentFilter;
+import com.cloudbees.jenkins.support.util.Markdown;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.Util;
+import hudson.security.Permission;
+import jenkins.model.Jenkins;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Tells how old the results retrieved from the nodes are, as some of them may come from
+ * {@link PersistentResultCache} instead of the nodes themselves.
+ */
+@Extension(ordinal = -1000.0) // run this last so it covers the results used by the other components
+public class CachedAgentResults extends Component {
+
+    @NonNull
+    @Override
+    public Set<Permission> getRequiredPermissions() {
+        return Collections.singleton(Jenkins.ADMINISTER);
+    }
+
+    @NonNull
+    @Override
+    public String getDisplayName() {
+        return "Cached agent results";
+    }
+
+    @Override
+    public void addContents(@NonNull Container container) {
+        container.add(new PrefilteredPrintedContent("nodes/cached-results.md") {
+            @Override
+            protected void printTo(PrintWriter out, ContentFilter filter) throws IOException {
+                SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ", Locale.ENGLISH);
+                format.setTimeZone(TimeZone.getTimeZone("UTC"));
+                out.println("Cached agent results");
+                out.println("====================");
+                out.println();
+                out.println("Results used when a node is off-line or does not answer in time, or while they are fresh.");
+                out.println();
+                for (PersistentResultCache.Record record : PersistentResultCache.get().getRecords()) {
+                    String node = record.getNode().isEmpty() ? "master" : ContentFilter.filter(filter, record.getNode());
+                    out.println("  * `" + Markdown.escapeBacktick(node) + "`: " + record.getName());
+                    out.println("      - Retrieved:         " + format.format(new Date(record.getRetrieved())) +
+                            " (" + Util.getTimeSpanString(record.getAge()) + " ago)");
+                    out.println("      - Status:            " + (record.isFresh() ? "fresh" : "stale"));
+                    long served = record.getServedFromCache();
+                    out.println("      - Served from cache: " + (served == 0 ? "never" :
+                            format.format(new Date(served))));
+                    out.println("      - Saved to disk:     " + record.isPersistent());
+                }
+            }
+        });
+    }
+}
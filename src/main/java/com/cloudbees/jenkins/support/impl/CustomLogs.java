@@ -3,13 +3,21 @@ package com.cloudbees.jenkins.support.impl;
 import com.cloudbees.jenkins.support.api.Component;
 import com.cloudbees.jenkins.support.api.Container;
 import com.cloudbees.jenkins.support.api.FileContent;
+import com.cloudbees.jenkins.support.api.PrefilteredPrintedContent;
 import com.cloudbees.jenkins.support.api.SupportContext;
+import com.cloudbees.jenkins.support.filter.ContentFilter;
+import com.cloudbees.jenkins.support.util.Markdown;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.XmlFile;
 import hudson.init.Terminator;
 import hudson.logging.LogRecorder;
 import hudson.model.PeriodicWork;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
 import hudson.security.Permission;
 import hudson.util.CopyOnWriteList;
 import hudson.util.io.RewindableFileOutputStream;
@@ -21,12 +29,20 @@ import jenkins.model.Jenkins;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
@@ -42,7 +58,31 @@ public class CustomLogs extends Component {
     private static final Logger LOGGER = Logger.getLogger(CustomLogs.class.getName());
     private static final int MAX_ROTATE_LOGS = Integer.getInteger(CustomLogs.class.getName() + ".MAX_ROTATE_LOGS", 9);
     private static final File customLogs = new File(TaskLogs.getLogsRoot(), "custom");
+    /**
+     * Whether the records are written to the files by a thread per recorder instead of the logging threads.
+     */
+    static final boolean ASYNC = Boolean.getBoolean(CustomLogs.class.getName() + ".ASYNC");
+    /**
+     * In asynchronous mode, maximum number of records waiting to be written to the file of a recorder.
+     */
+    private static final int QUEUE_CAPACITY = Integer.getInteger(CustomLogs.class.getName() + ".QUEUE_CAPACITY", 8192);
+    /**
+     * In asynchronous mode, size beyond which the file of a recorder is rotated.
+     */
+    private static final long MAX_FILE_SIZE =
+            Long.getLong(CustomLogs.class.getName() + ".MAX_FILE_SIZE", 10L * 1024 * 1024);
+    /**
+     * In asynchronous mode, what to do with a record when the queue of its recorder is full.
+     */
+    private static final AsyncLogFileHandler.OverflowPolicy OVERFLOW_POLICY = overflowPolicy(
+            System.getProperty(CustomLogs.class.getName() + ".OVERFLOW_POLICY"));
+    /**
+     * How often the routing of the log records is checked against the recorders, in case they were changed without
+     * being saved.
+     */
+    private static final long INDEX_CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
     private final List<LogRecorder> logRecorders = Jenkins.get().getLog().getRecorders();
+    private final CustomHandler handler = new CustomHandler();
 
     @NonNull
     @Override
@@ -58,12 +98,54 @@ public class CustomLogs extends Component {
 
     @Override
     public void start(@NonNull SupportContext context) {
-        Logger.getLogger("").addHandler(new CustomHandler());
+        Logger.getLogger("").addHandler(handler);
     }
 
     @Override
     public void addContents(@NonNull Container result) {
         addLogRecorders(result);
+        if (ASYNC) {
+            result.add(new PrefilteredPrintedContent("nodes/master/logs/custom/writers.md") {
+                @Override
+                protected void printTo(PrintWriter out, ContentFilter filter) {
+                    printWriters(out, filter);
+                }
+            });
+        }
+    }
+
+    static AsyncLogFileHandler.OverflowPolicy overflowPolicy(String value) {
+        if (value != null) {
+            try {
+                return AsyncLogFileHandler.OverflowPolicy.valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                LOGGER.warning("Unknown overflow policy '" + value + "', using DROP_OLDEST");
+            }
+        }
+        return AsyncLogFileHandler.OverflowPolicy.DROP_OLDEST;
+    }
+
+    /**
+     * Prints how the writers of the recorder files keep up with the records.
+     */
+    private void printWriters(PrintWriter out, ContentFilter filter) {
+        out.println("Custom log recorder writers");
+        out.println("===========================");
+        out.println();
+        out.println("Overflow policy: " + OVERFLOW_POLICY);
+        out.println();
+        for (Map.Entry<String, LogFile> entry : new TreeMap<>(handler.logFiles).entrySet()) {
+            AsyncLogFileHandler writer = entry.getValue().writer;
+            if (writer == null) {
+                continue;
+            }
+            out.println("  * `" + Markdown.escapeBacktick(ContentFilter.filter(filter, entry.getKey())) + "`");
+            out.println("      - Queued:             " + writer.getQueuedCount());
+            out.println("      - Waiting:            " + writer.getQueueDepth());
+            out.println("      - Dropped:            " + writer.getDroppedCount());
+            out.println("      - Mean enqueue time:  " + TimeUnit.NANOSECONDS.toMicros(writer.getMeanEnqueueNanos()) + " us");
+            out.println("      - Max enqueue time:   " + TimeUnit.NANOSECONDS.toMicros(writer.getMaxEnqueueNanos()) + " us");
+        }
     }
 
     /**
@@ -92,6 +174,11 @@ public class CustomLogs extends Component {
     private static final class LogFile {
         private final RewindableRotatingFileOutputStream stream;
         private final Handler handler;
+        /**
+         * The handler, in asynchronous mode.
+         */
+        @CheckForNull
+        private final AsyncLogFileHandler writer;
         private int count;
         @SuppressFBWarnings(value="RV_RETURN_VALUE_IGNORED_BAD_PRACTICE", justification="if mkdirs fails, will just get a stack trace later")
         LogFile(String name) throws IOException {
@@ -99,11 +186,22 @@ public class CustomLogs extends Component {
             stream = new RewindableRotatingFileOutputStream(new File(customLogs, name + ".log"), MAX_ROTATE_LOGS);
             // TODO there is no way to avoid rotating when first opened; if .rewind is skipped, the file is just truncated
             stream.rewind();
-            handler = new StreamHandler(stream, new SupportLogFormatter());
+            if (ASYNC) {
+                writer = new AsyncLogFileHandler(name, stream, QUEUE_CAPACITY, MAX_FILE_SIZE, OVERFLOW_POLICY);
+                handler = writer;
+            } else {
+                writer = null;
+                handler = new StreamHandler(stream, new SupportLogFormatter());
+            }
             handler.setLevel(Level.ALL);
             count = 0;
         }
         void publish(LogRecord record) throws IOException {
+            if (writer != null) {
+                // rotated by size and flushed by the writer thread
+                writer.publish(record);
+                return;
+            }
             boolean rewind = false;
             synchronized (this) {
                 if (count++ > 9999) { // make sure it does not get enormous during a single session
@@ -119,9 +217,136 @@ public class CustomLogs extends Component {
         }
     }
 
+    /**
+     * Routes the log records to the recorders having a target which includes them. The targets are indexed by logger
+     * name with the lowest level of each recorder, so a record is routed by looking up its logger name and the names
+     * of its parents instead of testing every target of every recorder.
+     */
+    static final class RecorderIndex {
+
+        /**
+         * Index without any recorder.
+         */
+        static final RecorderIndex EMPTY = new RecorderIndex(Collections.emptyList());
+
+        private static final class Route {
+            private final String recorder;
+            private final int level;
+
+            private Route(String recorder, int level) {
+                this.recorder = recorder;
+                this.level = level;
+            }
+        }
+
+        private final Map<String, Route[]> routes = new HashMap<>();
+        /**
+         * The recorders, target names and levels the index was built from, to know when it must be rebuilt.
+         */
+        private final List<Object> signature;
+        private final int minLevel;
+
+        private RecorderIndex(List<Object> signature) {
+            this.signature = signature;
+            int min = Integer.MAX_VALUE;
+            Map<String, Map<String, Integer>> levels = new HashMap<>();
+            for (int i = 0; i < signature.size(); i += 3) {
+                String recorder = (String) signature.get(i);
+                String target = (String) signature.get(i + 1);
+                int level = (Integer) signature.get(i + 2);
+                levels.computeIfAbsent(target, k -> new LinkedHashMap<>()).merge(recorder, level, Math::min);
+                min = Math.min(min, level);
+            }
+            for (Map.Entry<String, Map<String, Integer>> entry : levels.entrySet()) {
+                routes.put(entry.getKey(), entry.getValue().entrySet().stream()
+                        .map(e -> new Route(e.getKey(), e.getValue()))
+                        .toArray(Route[]::new));
+            }
+            this.minLevel = min;
+        }
+
+        /**
+         * @param recorders the recorders to index
+         * @return the index of the recorders
+         */
+        static RecorderIndex of(Iterable<LogRecorder> recorders) {
+            return new RecorderIndex(signatureOf(recorders));
+        }
+
+        private static List<Object> signatureOf(Iterable<LogRecorder> recorders) {
+            List<Object> signature = new ArrayList<>();
+            for (LogRecorder recorder : recorders) {
+                for (LogRecorder.Target target : recorder.getLoggers()) {
+                    signature.add(recorder.getName());
+                    signature.add(target.name);
+                    signature.add(target.getLevel().intValue());
+                }
+            }
+            return signature;
+        }
+
+        /**
+         * @return whether the recorders have changed since this index was built
+         */
+        boolean isOutdated(Iterable<LogRecorder> recorders) {
+            return !signature.equals(signatureOf(recorders));
+        }
+
+        /**
+         * Finds the recorders including a record, as {@link LogRecorder.Target#includes(LogRecord)} would.
+         * @param record the record
+         * @return the names of the recorders including the record, each once
+         */
+        List<String> route(LogRecord record) {
+            int level = record.getLevel().intValue();
+            if (level < minLevel) {
+                return Collections.emptyList();
+            }
+            List<String> result = null;
+            String name = record.getLoggerName();
+            if (name != null) {
+                // The logger name, then its parents, a target named "a.b" including both "a.b" and "a.b.c"
+                for (String prefix = name; ; ) {
+                    result = collect(prefix, level, result);
+                    int dot = prefix.lastIndexOf('.');
+                    if (dot < 0) {
+                        break;
+                    }
+                    prefix = prefix.substring(0, dot);
+                }
+            }
+            if (name == null || !name.isEmpty()) {
+                // A target without name includes everything
+                result = collect("", level, result);
+            }
+            return result == null ? Collections.emptyList() : result;
+        }
+
+        private List<String> collect(String prefix, int level, List<String> result) {
+            Route[] candidates = routes.get(prefix);
+            if (candidates != null) {
+                for (Route route : candidates) {
+                    if (level >= route.level) {
+                        if (result == null) {
+                            result = new ArrayList<>(2);
+                        }
+                        if (!result.contains(route.recorder)) {
+                            result.add(route.recorder);
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
     private final class CustomHandler extends Handler {
 
-        private final Map<String,LogFile> logFiles = new HashMap<String,LogFile>();
+        private final ConcurrentMap<String, LogFile> logFiles = new ConcurrentHashMap<>();
+        private volatile RecorderIndex index = RecorderIndex.EMPTY;
+        private volatile boolean outdated = true;
+        private volatile long lastCheck;
+        private final AtomicBoolean checking = new AtomicBoolean();
 
         /** JENKINS-27669: try to preload classes that will be needed by {@link #publish} */
         CustomHandler() {
@@ -130,6 +355,9 @@ public class CustomLogs extends Component {
                     LogRecorder.class,
                     LogRecorder.Target.class,
                     LogFile.class,
+                    AsyncLogFileHandler.class,
+                    RecorderIndex.class,
+                    RecorderIndex.Route.class,
                     RewindableFileOutputStream.class,
                     RewindableRotatingFileOutputStream.class,
                     StreamHandler.class,
@@ -141,25 +369,47 @@ public class CustomLogs extends Component {
             });
         }
 
+        /**
+         * Rebuilds the index before routing the next record.
+         */
+        void invalidate() {
+            outdated = true;
+        }
+
+        private RecorderIndex getIndex() {
+            long now = System.nanoTime();
+            if ((outdated || now - lastCheck > INDEX_CHECK_INTERVAL_NANOS) && checking.compareAndSet(false, true)) {
+                try {
+                    // Cleared first so a change made while rebuilding triggers another rebuild
+                    boolean rebuild = outdated;
+                    outdated = false;
+                    lastCheck = now;
+                    if (rebuild || index.isOutdated(logRecorders)) {
+                        index = RecorderIndex.of(logRecorders);
+                    }
+                } finally {
+                    checking.set(false);
+                }
+            }
+            return index;
+        }
+
         @Override public void publish(LogRecord record) {
-            for (final LogRecorder recorder : logRecorders) {
-                for (LogRecorder.Target target : recorder.getLoggers()) {
-                    if (target.includes(record)) {
-                        String name = recorder.getName();
-                        try {
-                            LogFile logFile;
-                            synchronized (logFiles) {
-                                logFile = logFiles.get(name);
-                                if (logFile == null) {
-                                    logFile = new LogFile(name);
-                                    logFiles.put(name, logFile);
-                                }
+            for (String name : getIndex().route(record)) {
+                try {
+                    LogFile logFile = logFiles.get(name);
+                    if (logFile == null) {
+                        synchronized (logFiles) {
+                            logFile = logFiles.get(name);
+                            if (logFile == null) {
+                                logFile = new LogFile(name);
+                                logFiles.put(name, logFile);
                             }
-                            logFile.publish(record);
-                        } catch (IOException x) {
-                            LOGGER.warning("Error while publishing log records for '" + name);
                         }
                     }
+                    logFile.publish(record);
+                } catch (IOException x) {
+                    LOGGER.warning("Error while publishing log records for '" + name);
                 }
             }
         }
@@ -170,6 +420,21 @@ public class CustomLogs extends Component {
 
     }
 
+    /**
+     * Rebuilds the routing of the log records as soon as a recorder is saved.
+     */
+    @Extension public static final class RecorderListener extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof LogRecorder) {
+                CustomLogs customLogs = ExtensionList.lookup(Component.class).get(CustomLogs.class);
+                if (customLogs != null) {
+                    customLogs.handler.invalidate();
+                }
+            }
+        }
+    }
+
     @Extension public static final class LogFlusher extends PeriodicWork {
 
         private static final Set<Handler> unflushedHandlers = new HashSet<Handler>();
@@ -186,6 +451,20 @@ public class CustomLogs extends Component {
             flush();
         }
 
+        /**
+         * Waits for the records queued in asynchronous mode to be written, which the writers do on their own otherwise.
+         */
+        @Terminator public static void drainWriters() {
+            CustomLogs customLogs = ExtensionList.lookup(Component.class).get(CustomLogs.class);
+            if (customLogs != null) {
+                for (LogFile logFile : customLogs.handler.logFiles.values()) {
+                    if (logFile.writer != null) {
+                        logFile.writer.flush();
+                    }
+                }
+            }
+        }
+
         @Terminator public static void flush() {
             Handler[] handlers;
             synchronized (LogFlusher.class) {
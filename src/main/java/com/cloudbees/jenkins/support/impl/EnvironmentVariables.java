@@ -1,6 +1,7 @@
 package com.cloudbees.jenkins.support.impl;
 
 import com.cloudbees.jenkins.support.AsyncResultCache;
+import com.cloudbees.jenkins.support.PersistentResultCache;
 import com.cloudbees.jenkins.support.api.Component;
 import com.cloudbees.jenkins.support.api.Container;
 import com.cloudbees.jenkins.support.api.PrintedContent;
@@ -17,6 +18,7 @@ import java.io.PrintWriter;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -66,13 +68,17 @@ public class EnvironmentVariables extends Component {
                     }
                 }
         );
-        for (final Node node : Jenkins.getInstance().getNodes()) {
+        List<Node> nodes = Jenkins.getInstance().getNodes();
+        // Launched on all the agents together when the first environment is written
+        AsyncResultCache.Batch<Map<String, String>> environments = AsyncResultCache.batch(nodes,
+                environmentVariableCache, node -> new GetEnvironmentVariables(), "environment");
+        for (final Node node : nodes) {
             result.add(
                     new PrintedContent("nodes/slave/{0}/environment.txt", node.getNodeName()) {
                         @Override
                         protected void printTo(PrintWriter out) throws IOException {
                             try {
-                                Map<String, String> environmentVariables = getEnvironmentVariables(node);
+                                Map<String, String> environmentVariables = environments.get(node, UNAVAILABLE);
                                 for (Map.Entry<String, String> entry : PasswordRedactor.get().redact(environmentVariables)
                                         .entrySet()) {
                                     out.println(entry.getKey() + "=" + entry.getValue());
@@ -101,7 +107,8 @@ public class EnvironmentVariables extends Component {
         return channel.call(new GetEnvironmentVariables());
     }
 
-    private static final class GetEnvironmentVariables extends MasterToSlaveCallable<Map<String, String>, RuntimeException> {
+    private static final class GetEnvironmentVariables extends MasterToSlaveCallable<Map<String, String>, RuntimeException>
+            implements PersistentResultCache.Transient {
         public Map<String, String> call() {
             return new TreeMap<String, String>(AccessController.doPrivileged(
                     new PrivilegedAction<Map<String, String>>() {
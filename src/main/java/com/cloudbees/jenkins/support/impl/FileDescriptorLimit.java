@@ -11,7 +11,6 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.Extension;
 import hudson.Functions;
-import hudson.Util;
 import hudson.model.Computer;
 import hudson.model.Node;
 import hudson.model.TaskListener;
@@ -31,9 +30,18 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.lang.management.ManagementFactory;
 import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Objects;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.WeakHashMap;
 
 /**
@@ -42,6 +50,24 @@ import java.util.WeakHashMap;
 @Extension
 public class FileDescriptorLimit extends Component {
 
+    /**
+     * Number of open file descriptors listed one by one, the others only being counted in the summary. Set it to 0 to
+     * only get the summary.
+     */
+    static final int MAX_LISTED = Integer.getInteger(FileDescriptorLimit.class.getName() + ".maxListed", 10000);
+
+    /**
+     * Number of directories the summary counts the open files of, the files in other directories are counted together.
+     */
+    private static final int MAX_SUMMARY_DIRECTORIES = 10000;
+
+    /**
+     * Number of directories printed in the summary, those with the most open files.
+     */
+    private static final int PRINTED_SUMMARY_DIRECTORIES = 20;
+
+    private static final String LIMITS_FILE = "/proc/self/limits";
+
     private final WeakHashMap<Node,String> fileDescriptorCache = new WeakHashMap<Node, String>();
 
     @NonNull
@@ -91,8 +117,10 @@ public class FileDescriptorLimit extends Component {
                     out.println("======");
                     out.println();
                     try {
-                        out.println(AsyncResultCache.get(node, fileDescriptorCache, new GetUlimit(filter),
-                            "file descriptor info", "N/A: Either no connection to node or no cached result"));
+                        // Filtered here rather than on the agent, so the cached result does not depend on the filter
+                        out.println(ContentFilter.filter(filter, AsyncResultCache.get(node, fileDescriptorCache,
+                            new GetUlimit(null, MAX_LISTED), "file descriptor info",
+                            "N/A: Either no connection to node or no cached result")));
                     } catch (IOException e) {
                         Functions.printStackTrace(e, out);
                     } finally {
@@ -108,7 +136,7 @@ public class FileDescriptorLimit extends Component {
         if (channel == null) {
             return "N/A: No connection to node.";
         }
-        return channel.call(new GetUlimit(SupportPlugin.getContentFilter().orElse(null)));
+        return channel.call(new GetUlimit(SupportPlugin.getContentFilter().orElse(null), MAX_LISTED));
     }
 
     /**
@@ -117,16 +145,22 @@ public class FileDescriptorLimit extends Component {
     private static final class GetUlimit extends MasterToSlaveCallable<String, RuntimeException> {
         
         private final ContentFilter filter;
+        private final int maxListed;
 
-        public GetUlimit(ContentFilter filter) {
+        public GetUlimit(ContentFilter filter, int maxListed) {
             this.filter = filter;
+            this.maxListed = maxListed;
         }
 
         public String call() {
             StringWriter bos = new StringWriter();
             PrintWriter pw = new PrintWriter(bos);
             try {
-                getUlimit(pw);
+                if (new File(LIMITS_FILE).isFile()) {
+                    printLimits(pw);
+                } else {
+                    getUlimit(pw);
+                }
             } catch (Exception e) {
                 Functions.printStackTrace(e, pw);
             }
@@ -136,7 +170,7 @@ public class FileDescriptorLimit extends Component {
                 Functions.printStackTrace(e, pw);
             }
             try {
-                listAllOpenFileDescriptors(pw, filter);
+                listAllOpenFileDescriptors(pw, filter, maxListed);
             } catch (Exception e) {
                 Functions.printStackTrace(e, pw);
             }
@@ -167,26 +201,142 @@ public class FileDescriptorLimit extends Component {
      * * List all the open file descriptors. For Unix systems this information can be obtained by
      * * going to /proc/self/fd. This will translate self to the correct PID of the current java
      * * process. Each file in the folder is a symlink to the location of the file descriptor.
+     * * The links are read one at a time, listing the first ones and counting all of them by type and directory.
      */
-    private static void listAllOpenFileDescriptors(PrintWriter writer, ContentFilter filter) throws IOException {
+    private static void listAllOpenFileDescriptors(PrintWriter writer, ContentFilter filter, int maxListed) throws IOException {
         writer.println();
         writer.println("All open files");
         writer.println("==============");
-        File[] files = new File("/proc/self/fd").listFiles();
-        if (files != null) {
-            for (File file : files) {
+        Path fds = Paths.get("/proc/self/fd");
+        if (!Files.isDirectory(fds)) {
+            return;
+        }
+        FileDescriptorSummary summary = new FileDescriptorSummary();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(fds)) {
+            for (Path fd : stream) {
+                String target;
                 try {
-                    writer.println(ContentFilter.filter(filter, Objects.requireNonNull(Util.resolveSymlink(file))));
-                } catch (NullPointerException | IOException e) {
-                    // If we fail to resolve the symlink, just print the file.
-                    writer.println(ContentFilter.filter(filter, file.getCanonicalPath()));
+                    target = Files.readSymbolicLink(fd).toString();
+                } catch (IOException | UnsupportedOperationException e) {
+                    // Closed since listed, or not a link; just print the file.
+                    target = fd.toString();
+                }
+                summary.add(target);
+                if (summary.getCount() <= maxListed) {
+                    writer.println(ContentFilter.filter(filter, target));
                 }
             }
         }
+        if (summary.getCount() > maxListed) {
+            writer.println("... " + (summary.getCount() - maxListed) + " more, only counted in the summary");
+        }
+        summary.printTo(writer, filter);
+    }
+
+    /**
+     * Counts the open file descriptors by type of target, and the open files by directory.
+     */
+    static final class FileDescriptorSummary {
+        private int count;
+        private final Map<String, Integer> types = new TreeMap<>();
+        private final Map<String, Integer> directories = new HashMap<>();
+        private int otherDirectories;
+
+        /**
+         * @param target the target of the link in {@code /proc/self/fd}
+         */
+        void add(String target) {
+            count++;
+            String type;
+            if (target.startsWith("/")) {
+                if (target.endsWith(" (deleted)")) {
+                    type = "deleted file";
+                } else if (target.startsWith("/dev/")) {
+                    type = "device";
+                } else {
+                    type = "file";
+                }
+                int slash = target.lastIndexOf('/');
+                String directory = slash == 0 ? "/" : target.substring(0, slash);
+                Integer previous = directories.get(directory);
+                if (previous != null || directories.size() < MAX_SUMMARY_DIRECTORIES) {
+                    directories.put(directory, previous == null ? 1 : previous + 1);
+                } else {
+                    otherDirectories++;
+                }
+            } else {
+                // socket:[1234], pipe:[1234], anon_inode:[eventpoll], anon_inode:inotify...
+                int colon = target.indexOf(':');
+                type = colon > 0 ? target.substring(0, colon) : "other";
+                if (type.equals("anon_inode")) {
+                    type += " " + target.substring(colon + 1).replace("[", "").replace("]", "");
+                }
+            }
+            types.merge(type, 1, Integer::sum);
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        void printTo(PrintWriter writer, ContentFilter filter) {
+            writer.println();
+            writer.println("Summary");
+            writer.println("=======");
+            writer.println();
+            writer.println("By type:");
+            for (Map.Entry<String, Integer> entry : types.entrySet()) {
+                writer.println("  * " + entry.getKey() + ": " + entry.getValue());
+            }
+            writer.println();
+            writer.println("By directory, the " + PRINTED_SUMMARY_DIRECTORIES + " with the most open files:");
+            List<Map.Entry<String, Integer>> sorted = new ArrayList<>(directories.entrySet());
+            sorted.sort(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+            for (Map.Entry<String, Integer> entry : sorted.subList(0, Math.min(PRINTED_SUMMARY_DIRECTORIES, sorted.size()))) {
+                writer.println("  * " + ContentFilter.filter(filter, entry.getKey()) + ": " + entry.getValue());
+            }
+            if (otherDirectories > 0) {
+                writer.println("  * other directories: " + otherDirectories);
+            }
+        }
+    }
+
+    /**
+     * Prints the limits of the process as read from {@code /proc/self/limits}, which has a column per field, the
+     * position of each column being given by the header.
+     */
+    private static void printLimits(PrintWriter writer) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(LIMITS_FILE), StandardCharsets.UTF_8);
+        if (lines.isEmpty()) {
+            return;
+        }
+        String header = lines.get(0);
+        int soft = header.indexOf("Soft Limit");
+        int hard = header.indexOf("Hard Limit");
+        int units = header.indexOf("Units");
+        if (soft < 0 || hard < soft || units < hard) {
+            // Not the expected format, keep it as is
+            for (String line : lines) {
+                writer.println(line);
+            }
+            return;
+        }
+        for (String line : lines.subList(1, lines.size())) {
+            writer.println(String.format("%-30s soft: %-12s hard: %-12s %s",
+                    column(line, 0, soft), column(line, soft, hard), column(line, hard, units),
+                    column(line, units, line.length())));
+        }
+    }
+
+    private static String column(String line, int start, int end) {
+        if (start >= line.length()) {
+            return "";
+        }
+        return line.substring(start, Math.min(end, line.length())).trim();
     }
 
     /**
-     * This method executes the command "bash -c ulimit -a" on the machine.
+     * This method executes the command "bash -c ulimit -a" on the machine, when the limits cannot be read from /proc.
      */
     @SuppressFBWarnings({"DM_DEFAULT_ENCODING", "OS_OPEN_STREAM"})
     private static void getUlimit(PrintWriter writer) throws IOException {
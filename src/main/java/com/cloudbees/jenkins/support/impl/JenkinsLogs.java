@@ -3,6 +3,7 @@ package com.cloudbees.jenkins.support.impl;
 import com.cloudbees.jenkins.support.SupportPlugin;
 import com.cloudbees.jenkins.support.api.Component;
 import com.cloudbees.jenkins.support.api.Container;
+import com.cloudbees.jenkins.support.api.Content;
 import com.cloudbees.jenkins.support.api.FileContent;
 import com.google.common.collect.Lists;
 import edu.umd.cs.findbugs.annotations.NonNull;
@@ -13,6 +14,8 @@ import jenkins.model.Jenkins;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Set;
@@ -77,10 +80,10 @@ public class JenkinsLogs extends Component {
         // but added nonetheless just in case.
         //
         // should be ignorable.
-        result.add(new LogRecordContent("nodes/master/logs/all_memory_buffer.log") {
+        result.add(new Content("nodes/master/logs/all_memory_buffer.log") {
             @Override
-            public Iterable<LogRecord> getLogRecords() {
-                return SupportPlugin.getInstance().getAllLogRecords();
+            public void writeTo(OutputStream os) throws IOException {
+                SupportPlugin.getInstance().writeRecentLogRecords(os);
             }
         });
 
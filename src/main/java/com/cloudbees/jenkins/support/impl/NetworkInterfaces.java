@@ -54,6 +54,8 @@ import jenkins.security.MasterToSlaveCallable;
  */
 @Extension
 public class NetworkInterfaces extends Component {
+    private static final String NO_CONNECTION = "N/A: No connection to node, or no cache.";
+
     private final WeakHashMap<Node, String> networkInterfaceCache = new WeakHashMap<Node, String>();
 
     @NonNull
@@ -79,12 +81,16 @@ public class NetworkInterfaces extends Component {
                 }
         );
 
-        for (final Node node : Jenkins.getInstance().getNodes()) {
+        List<Node> nodes = Jenkins.getInstance().getNodes();
+        // Launched on all the agents together when the first interfaces are written
+        AsyncResultCache.Batch<String> networkInterfaces = AsyncResultCache.batch(nodes, networkInterfaceCache,
+                node -> new GetNetworkInterfaces(), "network interfaces");
+        for (final Node node : nodes) {
             result.add(
                     new Content("nodes/slave/{0}/networkInterface.md", node.getNodeName()) {
                         @Override
                         public void writeTo(OutputStream os) throws IOException {
-                            os.write(getNetworkInterface(node).getBytes(StandardCharsets.UTF_8));
+                            os.write(networkInterfaces.get(node, NO_CONNECTION).getBytes(StandardCharsets.UTF_8));
                         }
                     }
             );
@@ -96,7 +102,7 @@ public class NetworkInterfaces extends Component {
                 networkInterfaceCache,
                 new GetNetworkInterfaces(),
                 "network interfaces",
-                "N/A: No connection to node, or no cache.");
+                NO_CONNECTION);
     }
 
     private static final class GetNetworkInterfaces extends MasterToSlaveCallable<String, RuntimeException> {
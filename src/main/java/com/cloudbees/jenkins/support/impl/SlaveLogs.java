@@ -27,6 +27,7 @@ package com.cloudbees.jenkins.support.impl;
 import com.cloudbees.jenkins.support.SupportPlugin;
 import com.cloudbees.jenkins.support.api.Component;
 import com.cloudbees.jenkins.support.api.Container;
+import com.cloudbees.jenkins.support.api.Content;
 import com.cloudbees.jenkins.support.api.FileContent;
 import com.cloudbees.jenkins.support.timer.FileListCapComponent;
 import com.google.common.collect.Lists;
@@ -42,7 +43,7 @@ import jenkins.model.Jenkins;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -183,14 +184,10 @@ public class SlaveLogs extends Component {
         // but added nonetheless just in case.
         //
         // should be ignorable.
-        result.add(new LogRecordContent("nodes/slave/{0}/logs/all_memory_buffer.log", node.getNodeName()) {
+        result.add(new Content("nodes/slave/{0}/logs/all_memory_buffer.log", node.getNodeName()) {
             @Override
-            public Iterable<LogRecord> getLogRecords() throws IOException {
-                try {
-                    return SupportPlugin.getInstance().getAllLogRecords(node);
-                } catch (InterruptedException e) {
-                    throw (IOException)new InterruptedIOException().initCause(e);
-                }
+            public void writeTo(OutputStream os) throws IOException {
+                SupportPlugin.getInstance().writeRecentLogRecords(node, os);
             }
         });
     }
@@ -1,6 +1,7 @@
 package com.cloudbees.jenkins.support.impl;
 
 import com.cloudbees.jenkins.support.AsyncResultCache;
+import com.cloudbees.jenkins.support.PersistentResultCache;
 import com.cloudbees.jenkins.support.api.Component;
 import com.cloudbees.jenkins.support.api.Container;
 import com.cloudbees.jenkins.support.api.Content;
@@ -19,6 +20,7 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -73,14 +75,18 @@ public class SystemProperties extends Component {
                        }
                    }
         );
-        for (final Node node : Jenkins.getInstance().getNodes()) {
+        List<Node> nodes = Jenkins.getInstance().getNodes();
+        // Launched on all the agents together when the first properties are written
+        AsyncResultCache.Batch<Map<Object, Object>> allSystemProperties = AsyncResultCache.batch(nodes,
+                systemPropertyCache, node -> new GetSystemProperties(), "system properties");
+        for (final Node node : nodes) {
             result.add(
                     new Content("nodes/slave/{0}/system.properties", node.getNodeName()) {
                         @Override
                         public void writeTo(OutputStream os) {
                             try {
                                 Properties properties = new SortedProperties();
-                                Map<Object, Object> systemProperties = getSystemProperties(node);
+                                Map<Object, Object> systemProperties = allSystemProperties.get(node, UNAVAILABLE);
                                 Map<String, String> redactedProperties = PasswordRedactor.get().redact(systemProperties.entrySet().stream()
                                         .collect(Collectors.toMap(e -> (String) e.getKey(), e -> (String) e.getValue())));
                                 properties.putAll(redactedProperties);
@@ -107,7 +113,8 @@ public class SystemProperties extends Component {
         return channel.call(new GetSystemProperties());
     }
 
-    private static final class GetSystemProperties extends MasterToSlaveCallable<Map<Object, Object>, RuntimeException> {
+    private static final class GetSystemProperties extends MasterToSlaveCallable<Map<Object, Object>, RuntimeException>
+            implements PersistentResultCache.Transient {
         public Map<Object, Object> call() {
             return new TreeMap<Object, Object>(AccessController.doPrivileged(new PrivilegedAction<Properties>() {
                 public Properties run() {
@@ -16,26 +16,38 @@ import hudson.model.AbstractModelObject;
 import hudson.model.Computer;
 import hudson.model.Node;
 import hudson.remoting.Future;
+import hudson.remoting.RemoteOutputStream;
 import hudson.remoting.VirtualChannel;
 import hudson.security.Permission;
 import jenkins.model.Jenkins;
 import jenkins.security.MasterToSlaveCallable;
 import jenkins.util.Timer;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import java.io.*;
 import java.lang.management.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterOutputStream;
 
 /**
  * Thread dumps from the nodes.
@@ -47,6 +59,34 @@ public class ThreadDumps extends ObjectComponent<Computer> {
 
     private final Logger logger = Logger.getLogger(ThreadDumps.class.getName());
 
+    /**
+     * Whether thread dumps are taken in fast mode by default, see {@link #threadDump(OutputStream, boolean, int)}.
+     */
+    public static final boolean FAST = Boolean.getBoolean(ThreadDumps.class.getName() + ".fast");
+
+    /**
+     * Maximum number of frames printed per thread by default.
+     */
+    public static final int MAX_STACK_DEPTH = Integer.getInteger(ThreadDumps.class.getName() + ".maxStackDepth", Integer.MAX_VALUE);
+
+    /**
+     * Whether thread dumps group the threads having the same stack by default.
+     */
+    public static final boolean AGGREGATED = Boolean.getBoolean(ThreadDumps.class.getName() + ".aggregated");
+
+    /**
+     * How the groups of threads are sorted in aggregated thread dumps, {@code cpu} or {@code state}.
+     */
+    public static final AggregationOrder AGGREGATION_ORDER =
+            AggregationOrder.of(System.getProperty(ThreadDumps.class.getName() + ".aggregationOrder"));
+
+    private static final String NL = System.lineSeparator();
+
+    /**
+     * Size from which the thread dump of an agent is kept in a temporary file rather than in memory until written.
+     */
+    private static final int IN_MEMORY_THRESHOLD = 256 * 1024;
+
     @DataBoundConstructor
     public ThreadDumps() {
     }
@@ -117,21 +157,7 @@ public class ThreadDumps extends ObjectComponent<Computer> {
         if(node == null) {
             return;
         }
-        // let's start collecting thread dumps now... this gives us until the end of the bundle to finish
-        final Future<String> threadDump;
-        try {
-            threadDump = getThreadDump(node);
-        } catch (IOException e) {
-            logger.log(Level.WARNING, "Could not record thread dump for " + node.getNodeName(), e);
-            final StringWriter sw = new StringWriter();
-            PrintWriter out = new PrintWriter(sw);
-            Functions.printStackTrace(e, out);
-            out.close();
-            container.add(
-                    new StringContent("nodes/slave/{0}/thread-dump.txt", new String[]{node.getNodeName()}, sw.toString()));
-            return;
-        }
-        if (threadDump == null) {
+        if (node.getChannel() == null) {
             StringBuilder buf = new StringBuilder();
             buf.append(node.getNodeName()).append("\n");
             buf.append("======\n");
@@ -139,6 +165,9 @@ public class ThreadDumps extends ObjectComponent<Computer> {
             buf.append("N/A: No connection to node.\n");
             container.add(new StringContent("nodes/slave/{0}/thread-dump.txt", new String[]{node.getNodeName()}, buf.toString()));
         } else {
+            // Requested right away, so the agents take their thread dumps at the same time rather than one after the
+            // other as their entries are written
+            PendingThreadDump dump = new PendingThreadDump(node);
             container.add(
                     new Content("nodes/slave/{0}/thread-dump.txt", node.getNodeName()) {
                         @Override
@@ -149,44 +178,143 @@ public class ThreadDumps extends ObjectComponent<Computer> {
                                 out.println(node.getNodeName());
                                 out.println("======");
                                 out.println();
-                                String content = null;
-                                try {
-                                    // We want to wait here a bit longer than normal
-                                    // as we will not fall back to a cache
-                                    content = threadDump.get(Math.min(
-                                            SupportPlugin.REMOTE_OPERATION_TIMEOUT_MS * 8,
-                                            TimeUnit.SECONDS
-                                                    .toMillis(SupportPlugin.REMOTE_OPERATION_CACHE_TIMEOUT_SEC)
-                                    ), TimeUnit.MILLISECONDS);
-                                } catch (InterruptedException e) {
-                                    logger.log(Level.WARNING,
-                                            "Could not record thread dump for " + node.getNodeName(),
-                                            e);
-                                    Functions.printStackTrace(e, out);
-                                } catch (ExecutionException e) {
-                                    logger.log(Level.WARNING,
-                                            "Could not record thread dump for " + node.getNodeName(),
-                                            e);
-                                    Functions.printStackTrace(e, out);
-                                } catch (TimeoutException e) {
-                                    logger.log(Level.WARNING,
-                                            "Could not record thread dump for " + node.getNodeName(),
-                                            e);
-                                    Functions.printStackTrace(e, out);
-                                    threadDump.cancel(true);
-                                }
-                                if (content != null) {
-                                    out.println(content);
-                                }
                             } finally {
                                 out.flush();
                             }
+                            try {
+                                dump.writeTo(os);
+                            } catch (IOException | InterruptedException | ExecutionException | TimeoutException e) {
+                                logger.log(Level.WARNING, "Could not record thread dump for " + node.getNodeName(), e);
+                                Functions.printStackTrace(e, out);
+                            } finally {
+                                out.println();
+                                out.flush();
+                            }
                         }
                     }
             );
         }
     }
 
+    /**
+     * Thread dump of an agent, requested when the bundle entries are listed. The agent writes it as it produces it,
+     * compressed while sent over the channel, into a buffer kept on disk once large, until the entry is written.
+     */
+    private static final class PendingThreadDump {
+        private final DeferredFileOutputStream buffer =
+                new DeferredFileOutputStream(IN_MEMORY_THRESHOLD, "thread-dump", ".tmp", null);
+        private final StreamedOutputStream streamed = new StreamedOutputStream(buffer);
+        private final long deadline;
+        @CheckForNull
+        private Future<Void> future;
+        @CheckForNull
+        private IOException failure;
+
+        PendingThreadDump(Node node) {
+            // We want to wait here a bit longer than normal as we will not fall back to a cache
+            deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.min(
+                    SupportPlugin.REMOTE_OPERATION_TIMEOUT_MS * 8,
+                    TimeUnit.SECONDS.toMillis(SupportPlugin.REMOTE_OPERATION_CACHE_TIMEOUT_SEC)));
+            VirtualChannel channel = node.getChannel();
+            try {
+                if (channel == null) {
+                    throw new IOException("No connection to node");
+                }
+                future = CallAsyncWrapper.callAsync(channel,
+                        new StreamThreadDump(new RemoteOutputStream(new InflaterOutputStream(streamed)), FAST,
+                                MAX_STACK_DEPTH, AGGREGATED));
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        /**
+         * Writes what was received of the thread dump, waiting for the rest until the deadline.
+         *
+         * @param os where to write the thread dump, not closed
+         */
+        void writeTo(OutputStream os) throws IOException, InterruptedException, ExecutionException, TimeoutException {
+            try {
+                if (failure != null || future == null) {
+                    throw failure != null ? failure : new IOException("No thread dump requested");
+                }
+                try {
+                    future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    // The agent closes the stream before returning, wait for the end of the dump to be received
+                    if (!streamed.awaitClose(Math.max(0, deadline - System.nanoTime()))) {
+                        throw new TimeoutException("The end of the thread dump was not received in time");
+                    }
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    throw e;
+                }
+            } finally {
+                // Whatever arrives late must not end up in the bundle, what arrived in time is written anyway
+                streamed.detach();
+                try {
+                    buffer.close();
+                    if (buffer.isInMemory()) {
+                        os.write(buffer.getData());
+                    } else {
+                        Files.copy(buffer.getFile().toPath(), os);
+                    }
+                } finally {
+                    File file = buffer.getFile();
+                    if (!buffer.isInMemory() && file != null) {
+                        Files.deleteIfExists(file.toPath());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Receives the thread dump of an agent, until detached. Closing it does not close the buffer, it only tells the
+     * whole dump was written. Writes happen on a remoting thread, so detaching waits for the one in progress.
+     */
+    private static final class StreamedOutputStream extends FilterOutputStream {
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private boolean detached;
+
+        StreamedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            if (!detached) {
+                out.write(b);
+            }
+        }
+
+        @Override
+        public synchronized void write(@NonNull byte[] b, int off, int len) throws IOException {
+            if (!detached) {
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            if (!detached) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+
+        boolean awaitClose(long timeoutNanos) throws InterruptedException {
+            return closed.await(timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+
+        synchronized void detach() {
+            detached = true;
+        }
+    }
+
     public Future<String> getThreadDump(Node node) throws IOException {
         VirtualChannel channel = node.getChannel();
         if (channel == null) {
@@ -223,26 +351,88 @@ public class ThreadDumps extends ObjectComponent<Computer> {
     }
 
     /**
-     * Dumps all of the threads' current information to an output stream.
+     * Writes the thread dump to a stream from the controller, compressed.
+     */
+    private static final class StreamThreadDump extends MasterToSlaveCallable<Void, IOException> {
+        private final OutputStream out;
+        private final boolean fast;
+        private final int maxStackDepth;
+        private final boolean aggregated;
+
+        StreamThreadDump(OutputStream out, boolean fast, int maxStackDepth, boolean aggregated) {
+            this.out = out;
+            this.fast = fast;
+            this.maxStackDepth = maxStackDepth;
+            this.aggregated = aggregated;
+        }
+
+        public Void call() throws IOException {
+            try (OutputStream os = new DeflaterOutputStream(new BufferedOutputStream(out, 64 * 1024))) {
+                threadDump(os, fast, maxStackDepth, aggregated);
+            }
+            return null;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Dumps all of the threads' current information to an output stream, in fast mode if {@link #FAST} is set and
+     * aggregated if {@link #AGGREGATED} is set.
      *
      * @param out an output stream.
      * @throws UnsupportedEncodingException if the utf-8 encoding is not supported.
      */
-    @SuppressFBWarnings(
-            value = "VA_FORMAT_STRING_USES_NEWLINE",
-            justification = "We don't want platform specific"
-    )
     public static void threadDump(OutputStream out) throws UnsupportedEncodingException {
+        threadDump(out, FAST, MAX_STACK_DEPTH, AGGREGATED);
+    }
+
+    /**
+     * Dumps all of the threads' current information to an output stream, not aggregated.
+     *
+     * @see #threadDump(OutputStream, boolean, int, boolean)
+     */
+    public static void threadDump(OutputStream out, boolean fast, int maxStackDepth) throws UnsupportedEncodingException {
+        threadDump(out, fast, maxStackDepth, false);
+    }
+
+    /**
+     * Dumps all of the threads' current information to an output stream.
+     * <p>
+     * In fast mode, the stacks are retrieved only down to the given depth, without the locked monitors and
+     * synchronizers, whose retrieval is what takes time and stalls the JVM on processes with many threads, and the CPU
+     * times of all the threads are retrieved at once.
+     * <p>
+     * Aggregated, the threads having the same stack are printed together, see
+     * {@link #printAggregatedThreadInfos(PrintWriter, ThreadInfo[], ThreadMXBean, ContentFilter, int, AggregationOrder)}.
+     *
+     * @param out an output stream.
+     * @param fast whether to dump in fast mode.
+     * @param maxStackDepth the maximum number of frames printed per thread.
+     * @param aggregated whether to group the threads having the same stack.
+     * @throws UnsupportedEncodingException if the utf-8 encoding is not supported.
+     */
+    public static void threadDump(OutputStream out, boolean fast, int maxStackDepth, boolean aggregated)
+            throws UnsupportedEncodingException {
         final PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, "utf-8"), true);
 
         ThreadMXBean mbean = ManagementFactory.getThreadMXBean();
         ThreadInfo[] threads;
         try {
-            threads = mbean.dumpAllThreads(mbean.isObjectMonitorUsageSupported(), mbean.isSynchronizerUsageSupported());
+            if (fast) {
+                writer.println("Fast mode: at most " + maxStackDepth
+                        + " frames per thread, locked monitors and synchronizers are not listed");
+                writer.println();
+                threads = mbean.getThreadInfo(mbean.getAllThreadIds(), Math.max(0, maxStackDepth));
+            } else {
+                threads = mbean.dumpAllThreads(mbean.isObjectMonitorUsageSupported(), mbean.isSynchronizerUsageSupported());
+            }
         } catch (UnsupportedOperationException x) {
             Functions.printStackTrace(x, writer);
             threads = new ThreadInfo[0];
         }
+        // Threads which ended since their ids were retrieved
+        threads = Arrays.stream(threads).filter(Objects::nonNull).toArray(ThreadInfo[]::new);
 
         Arrays.sort(threads, new Comparator<ThreadInfo>() {
             @Override
@@ -250,8 +440,21 @@ public class ThreadDumps extends ObjectComponent<Computer> {
                 return t1.getThreadName().compareTo(t2.getThreadName());
             }
         });
-        for (ThreadInfo t : threads) {
-            printThreadInfo(writer, t, mbean);
+        if (aggregated) {
+            printAggregatedThreadInfos(writer, threads, mbean, null, maxStackDepth, AGGREGATION_ORDER);
+        } else if (fast) {
+            long[][] cpuTimes = getCpuTimes(threads, mbean, writer);
+            StringBuilder buf = new StringBuilder();
+            for (int i = 0; i < threads.length; i++) {
+                buf.setLength(0);
+                appendThreadInfo(buf, threads[i], cpuPercentage(cpuTimes[0][i], cpuTimes[1][i]), null, maxStackDepth);
+                writer.append(buf);
+            }
+            writer.flush();
+        } else {
+            for (ThreadInfo t : threads) {
+                printThreadInfo(writer, t, mbean, null, maxStackDepth);
+            }
         }
 
         // Print any information about deadlocks.
@@ -277,6 +480,222 @@ public class ThreadDumps extends ObjectComponent<Computer> {
         writer.flush();
     }
 
+    /**
+     * Gets the CPU time and the user time of each thread, asking for all the threads at once when the JVM allows it.
+     *
+     * @return the CPU times then the user times, in nanoseconds, 0 when not available
+     */
+    @IgnoreJRERequirement // com.sun.management.ThreadMXBean
+    private static long[][] getCpuTimes(ThreadInfo[] threads, ThreadMXBean mbean, PrintWriter writer) {
+        long[] ids = new long[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            ids[i] = threads[i].getThreadId();
+        }
+        try {
+            if (mbean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) mbean;
+                return new long[][] {sunBean.getThreadCpuTime(ids), sunBean.getThreadUserTime(ids)};
+            }
+            long[] cpuTimes = new long[ids.length];
+            long[] userTimes = new long[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                cpuTimes[i] = mbean.getThreadCpuTime(ids[i]);
+                userTimes[i] = mbean.getThreadUserTime(ids[i]);
+            }
+            return new long[][] {cpuTimes, userTimes};
+        } catch (UnsupportedOperationException | LinkageError x) {
+            Functions.printStackTrace(x, writer);
+            return new long[][] {new long[ids.length], new long[ids.length]};
+        }
+    }
+
+    private static long cpuPercentage(long cpuTime, long userTime) {
+        return cpuTime <= 0 ? 0 : 100 * userTime / cpuTime;
+    }
+
+    /**
+     * Prints the threads grouped by identical stack, each stack being printed once with the threads having it.
+     * Threads are grouped when they are in the same state, waiting on the same lock owned by the same thread, holding
+     * the same monitors and synchronizers, with the same frames down to the given depth.
+     *
+     * @param writer the writer to print to.
+     * @param threads the threads to print, {@code null} elements being skipped.
+     * @param mbean the {@link ThreadMXBean} to get the CPU times from.
+     * @param filter the {@link ContentFilter} to use for filtering the thread names.
+     * @param maxStackDepth the maximum number of frames printed per stack.
+     * @param order how to sort the groups.
+     */
+    public static void printAggregatedThreadInfos(PrintWriter writer, ThreadInfo[] threads, ThreadMXBean mbean,
+                                                  @CheckForNull ContentFilter filter, int maxStackDepth,
+                                                  @NonNull AggregationOrder order) {
+        // Threads which ended since their ids were retrieved
+        threads = Arrays.stream(threads).filter(Objects::nonNull).toArray(ThreadInfo[]::new);
+        long[] cpuTimes = getCpuTimes(threads, mbean, writer)[0];
+        Map<StackKey, StackGroup> groups = new HashMap<>();
+        for (int i = 0; i < threads.length; i++) {
+            StackGroup group = groups.computeIfAbsent(new StackKey(threads[i], maxStackDepth), StackGroup::new);
+            group.threads.add(threads[i]);
+            group.cpuTime += Math.max(0, cpuTimes[i]);
+        }
+        List<StackGroup> sorted = new ArrayList<>(groups.values());
+        sorted.sort(order.comparator);
+
+        StringBuilder buf = new StringBuilder();
+        buf.append("Aggregated: ").append(threads.length).append(" threads, ").append(sorted.size())
+                .append(" distinct stacks, sorted by ").append(order.description).append(NL).append(NL);
+        writer.append(buf);
+        for (StackGroup group : sorted) {
+            buf.setLength(0);
+            StackKey key = group.key;
+            buf.append(group.threads.size()).append(group.threads.size() == 1 ? " thread" : " threads")
+                    .append(" state=").append(key.state)
+                    .append(" cpu=").append(TimeUnit.NANOSECONDS.toMillis(group.cpuTime)).append("ms").append(NL);
+            if (key.lock != null) {
+                buf.append(key.state == Thread.State.BLOCKED ? "    - waiting to lock " : "    - waiting on ")
+                        .append(key.lock).append(NL);
+            }
+            if (key.lockOwnerName != null) {
+                buf.append("      owned by \"").append(ContentFilter.filter(filter, key.lockOwnerName)).append("\" id=")
+                        .append(key.lockOwnerId).append(" (0x").append(Long.toHexString(key.lockOwnerId)).append(')')
+                        .append(NL);
+            }
+            for (ThreadInfo t : group.threads) {
+                buf.append("    \"").append(ContentFilter.filter(filter, t.getThreadName())).append("\" id=")
+                        .append(t.getThreadId()).append(" (0x").append(Long.toHexString(t.getThreadId())).append(')')
+                        .append(NL);
+            }
+            for (int i = 0; i < key.frames.length; i++) {
+                buf.append("    at ").append(key.frames[i]).append(NL);
+                for (String monitor : key.lockedMonitors.getOrDefault(i, Collections.emptyList())) {
+                    buf.append("      - locked ").append(monitor).append(NL);
+                }
+            }
+            if (key.omittedFrames > 0) {
+                buf.append("    ... ").append(key.omittedFrames).append(" more").append(NL);
+            }
+            if (!key.lockedSynchronizers.isEmpty()) {
+                buf.append(NL).append("    Locked synchronizers: count = ").append(key.lockedSynchronizers.size())
+                        .append(NL);
+                for (String synchronizer : key.lockedSynchronizers) {
+                    buf.append("      - ").append(synchronizer).append(NL);
+                }
+            }
+            buf.append(NL);
+            writer.append(buf);
+        }
+        writer.flush();
+    }
+
+    /**
+     * How the groups of threads of an aggregated thread dump are sorted.
+     */
+    public enum AggregationOrder {
+        /**
+         * The groups whose threads used the most CPU first.
+         */
+        CPU("CPU time", Comparator.comparingLong((StackGroup g) -> g.cpuTime).reversed()),
+        /**
+         * The running threads first, then the blocked ones, then the waiting ones.
+         */
+        STATE("state", Comparator.comparing((StackGroup g) -> g.key.state));
+
+        private final String description;
+        private final Comparator<StackGroup> comparator;
+
+        AggregationOrder(String description, Comparator<StackGroup> comparator) {
+            this.description = description;
+            // Then the biggest groups first, then by name so the order is stable
+            this.comparator = comparator
+                    .thenComparing(Comparator.comparingInt((StackGroup g) -> g.threads.size()).reversed())
+                    .thenComparing(g -> g.threads.get(0).getThreadName());
+        }
+
+        static AggregationOrder of(String value) {
+            return "state".equalsIgnoreCase(value) ? STATE : CPU;
+        }
+    }
+
+    /**
+     * What the threads of a group have in common. The locks are told apart by their identity, so threads waiting on
+     * different locks, or holding different ones, are not grouped.
+     */
+    private static final class StackKey {
+        private final Thread.State state;
+        @CheckForNull
+        private final String lock;
+        @CheckForNull
+        private final String lockOwnerName;
+        private final long lockOwnerId;
+        private final StackTraceElement[] frames;
+        private final int omittedFrames;
+        /**
+         * The monitors locked by each frame, by depth.
+         */
+        private final Map<Integer, List<String>> lockedMonitors = new HashMap<>();
+        private final List<String> lockedSynchronizers = new ArrayList<>();
+        private final int hash;
+
+        StackKey(ThreadInfo t, int maxStackDepth) {
+            StackTraceElement[] elements = t.getStackTrace();
+            int depth = Math.min(elements.length, Math.max(0, maxStackDepth));
+            state = t.getThreadState();
+            if (t.getLockInfo() == null) {
+                lock = null;
+            } else {
+                StringBuilder buf = new StringBuilder();
+                appendLock(buf, t.getLockInfo());
+                lock = buf.toString();
+            }
+            lockOwnerName = t.getLockOwnerName();
+            lockOwnerId = t.getLockOwnerId();
+            frames = depth == elements.length ? elements : Arrays.copyOf(elements, depth);
+            omittedFrames = elements.length - depth;
+            for (MonitorInfo monitor : t.getLockedMonitors()) {
+                lockedMonitors.computeIfAbsent(monitor.getLockedStackDepth(), k -> new ArrayList<>(1))
+                        .add(monitor.toString());
+            }
+            for (LockInfo synchronizer : t.getLockedSynchronizers()) {
+                lockedSynchronizers.add(synchronizer.toString());
+            }
+            hash = Objects.hash(state, lock, lockOwnerName, lockOwnerId, omittedFrames, lockedMonitors,
+                    lockedSynchronizers) * 31 + Arrays.hashCode(frames);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof StackKey)) {
+                return false;
+            }
+            StackKey other = (StackKey) o;
+            return hash == other.hash && state == other.state && omittedFrames == other.omittedFrames
+                    && lockOwnerId == other.lockOwnerId && Objects.equals(lock, other.lock)
+                    && Objects.equals(lockOwnerName, other.lockOwnerName) && Arrays.equals(frames, other.frames)
+                    && lockedMonitors.equals(other.lockedMonitors)
+                    && lockedSynchronizers.equals(other.lockedSynchronizers);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The threads having the same stack.
+     */
+    private static final class StackGroup {
+        private final StackKey key;
+        private final List<ThreadInfo> threads = new ArrayList<>();
+        private long cpuTime;
+
+        StackGroup(StackKey key) {
+            this.key = key;
+        }
+    }
+
     public static void printThreadInfo(PrintWriter writer, ThreadInfo t, ThreadMXBean mbean) {
         printThreadInfo(writer, t, mbean, null);
     }
@@ -292,6 +711,11 @@ public class ThreadDumps extends ObjectComponent<Computer> {
      * @param filter the {@link ContentFilter} to use for filtering the thread name.
      */
     public static void printThreadInfo(PrintWriter writer, ThreadInfo t, ThreadMXBean mbean, @CheckForNull ContentFilter filter) {
+        printThreadInfo(writer, t, mbean, filter, Integer.MAX_VALUE);
+    }
+
+    private static void printThreadInfo(PrintWriter writer, ThreadInfo t, ThreadMXBean mbean,
+                                        @CheckForNull ContentFilter filter, int maxStackDepth) {
         long cpuPercentage;
         try {
             long cpuTime = mbean.getThreadCpuTime(t.getThreadId());
@@ -301,67 +725,88 @@ public class ThreadDumps extends ObjectComponent<Computer> {
             Functions.printStackTrace(x, writer);
             cpuPercentage = 0;
         }
-        writer.printf("\"%s\" id=%d (0x%x) state=%s cpu=%d%%",
-                ContentFilter.filter(filter, t.getThreadName()),
-                t.getThreadId(),
-                t.getThreadId(),
-                t.getThreadState(),
-                cpuPercentage);
+        StringBuilder buf = new StringBuilder();
+        appendThreadInfo(buf, t, cpuPercentage, filter, maxStackDepth);
+        writer.append(buf);
+        writer.flush();
+    }
+
+    /**
+     * Formats a thread the way {@link #printThreadInfo(PrintWriter, ThreadInfo, ThreadMXBean, ContentFilter)} prints
+     * it.
+     */
+    private static void appendThreadInfo(StringBuilder buf, ThreadInfo t, long cpuPercentage,
+                                         @CheckForNull ContentFilter filter, int maxStackDepth) {
+        buf.append('"').append(ContentFilter.filter(filter, t.getThreadName())).append("\" id=").append(t.getThreadId())
+                .append(" (0x").append(Long.toHexString(t.getThreadId())).append(") state=").append(t.getThreadState())
+                .append(" cpu=").append(cpuPercentage).append('%');
         final LockInfo lock = t.getLockInfo();
         if (lock != null && t.getThreadState() != Thread.State.BLOCKED) {
-            writer.printf("%n    - waiting on <0x%08x> (a %s)",
-                    lock.getIdentityHashCode(),
-                    lock.getClassName());
-            writer.printf("%n    - locked <0x%08x> (a %s)",
-                    lock.getIdentityHashCode(),
-                    lock.getClassName());
+            buf.append(NL).append("    - waiting on ");
+            appendLock(buf, lock);
+            buf.append(NL).append("    - locked ");
+            appendLock(buf, lock);
         } else if (lock != null && t.getThreadState() == Thread.State.BLOCKED) {
-            writer.printf("%n    - waiting to lock <0x%08x> (a %s)",
-                    lock.getIdentityHashCode(),
-                    lock.getClassName());
+            buf.append(NL).append("    - waiting to lock ");
+            appendLock(buf, lock);
         }
 
         if (t.isSuspended()) {
-            writer.print(" (suspended)");
+            buf.append(" (suspended)");
         }
 
         if (t.isInNative()) {
-            writer.print(" (running in native)");
+            buf.append(" (running in native)");
         }
 
-        writer.println();
+        buf.append(NL);
         if (t.getLockOwnerName() != null) {
-            writer.printf("      owned by \"%s\" id=%d (0x%x)%n",
-                    ContentFilter.filter(filter, t.getLockOwnerName()),
-                    t.getLockOwnerId(),
-                    t.getLockOwnerId());
+            buf.append("      owned by \"").append(ContentFilter.filter(filter, t.getLockOwnerName())).append("\" id=")
+                    .append(t.getLockOwnerId()).append(" (0x").append(Long.toHexString(t.getLockOwnerId())).append(')')
+                    .append(NL);
         }
 
         final StackTraceElement[] elements = t.getStackTrace();
         final MonitorInfo[] monitors = t.getLockedMonitors();
+        // The monitors locked by each frame, the first monitor being left out as it always was
+        Map<Integer, List<MonitorInfo>> monitorsByDepth = new HashMap<>();
+        for (int j = 1; j < monitors.length; j++) {
+            monitorsByDepth.computeIfAbsent(monitors[j].getLockedStackDepth(), k -> new ArrayList<>(1)).add(monitors[j]);
+        }
 
-        for (int i = 0; i < elements.length; i++) {
-            final StackTraceElement element = elements[i];
-            writer.printf("    at %s%n", element);
-            for (int j = 1; j < monitors.length; j++) {
-                final MonitorInfo monitor = monitors[j];
-                if (monitor.getLockedStackDepth() == i) {
-                    writer.printf("      - locked %s%n", monitor);
+        int depth = Math.min(elements.length, Math.max(0, maxStackDepth));
+        for (int i = 0; i < depth; i++) {
+            buf.append("    at ").append(elements[i]).append(NL);
+            List<MonitorInfo> locked = monitorsByDepth.get(i);
+            if (locked != null) {
+                for (MonitorInfo monitor : locked) {
+                    buf.append("      - locked ").append(monitor).append(NL);
                 }
             }
         }
-        writer.println();
+        if (depth < elements.length) {
+            buf.append("    ... ").append(elements.length - depth).append(" more").append(NL);
+        }
+        buf.append(NL);
 
         final LockInfo[] locks = t.getLockedSynchronizers();
         if (locks.length > 0) {
-            writer.printf("    Locked synchronizers: count = %d%n", locks.length);
+            buf.append("    Locked synchronizers: count = ").append(locks.length).append(NL);
             for (LockInfo l : locks) {
-                writer.printf("      - %s%n", l);
+                buf.append("      - ").append(l).append(NL);
             }
-            writer.println();
+            buf.append(NL);
         }
     }
 
+    private static void appendLock(StringBuilder buf, LockInfo lock) {
+        String hash = Integer.toHexString(lock.getIdentityHashCode());
+        buf.append("<0x");
+        for (int i = hash.length(); i < 8; i++) {
+            buf.append('0');
+        }
+        buf.append(hash).append("> (a ").append(lock.getClassName()).append(')');
+    }
 
     /** @deprecated use {@link #threadDump} */
     @Deprecated
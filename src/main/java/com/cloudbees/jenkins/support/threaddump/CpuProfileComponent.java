@@ -0,0 +1,120 @@
+package com.cloudbees.jenkins.support.threaddump;
+
+import com.cloudbees.jenkins.support.api.Component;
+import com.cloudbees.jenkins.support.api.Container;
+import com.cloudbees.jenkins.support.api.PrefilteredPrintedContent;
+import com.cloudbees.jenkins.support.filter.ContentFilter;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.security.Permission;
+import jenkins.model.Jenkins;
+
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the stacks sampled by the {@link CpuProfiler} as collapsed stacks, one file per time window, which
+ * flame graph tools read as they are.
+ */
+@Extension
+public class CpuProfileComponent extends Component {
+
+    @NonNull
+    @Override
+    public Set<Permission> getRequiredPermissions() {
+        return Collections.singleton(Jenkins.ADMINISTER);
+    }
+
+    @NonNull
+    @Override
+    public String getDisplayName() {
+        return Messages.CpuProfile_DisplayName();
+    }
+
+    @Override
+    public void addContents(@NonNull Container container) {
+        CpuProfiler profiler = CpuProfiler.get();
+        if (profiler == null) {
+            return;
+        }
+        List<CpuProfiler.Window> windows = profiler.getWindows();
+        container.add(new PrefilteredPrintedContent("nodes/master/cpu-profile/summary.md") {
+            @Override
+            protected void printTo(PrintWriter out, ContentFilter filter) {
+                printSummary(out, profiler, windows);
+            }
+        });
+        for (CpuProfiler.Window window : windows) {
+            container.add(new PrefilteredPrintedContent("nodes/master/cpu-profile/{0}.folded", format(window.getStart())) {
+                @Override
+                protected void printTo(PrintWriter out, ContentFilter filter) {
+                    printStacks(out, window, filter);
+                }
+            });
+        }
+    }
+
+    private static void printSummary(PrintWriter out, CpuProfiler profiler, List<CpuProfiler.Window> windows) {
+        out.println("CPU profile");
+        out.println("===========");
+        out.println();
+        out.println("  * Sampling rate: " + CpuProfiler.SAMPLING_RATE + " per second");
+        out.println("  * Window length: " + CpuProfiler.WINDOW_SECONDS + " s");
+        out.println("  * Maximum stack depth: " + CpuProfiler.MAX_STACK_DEPTH);
+        out.println("  * Memory budget: " + CpuProfiler.MEMORY_BUDGET_KB + " KB");
+        out.println("  * Mean sampling time: "
+                + TimeUnit.NANOSECONDS.toMicros(profiler.getMeanSamplingNanos()) + " us over "
+                + profiler.getSamplingCount() + " samples");
+        out.println();
+        out.println("Only the threads which used the CPU since the previous sample are counted. Each `.folded` file is");
+        out.println("named after the start of its window, in UTC, and can be given to flame graph tools as it is.");
+        out.println();
+        out.println("| Window | Last sample | Samples | Stacks | Over budget |");
+        out.println("|--------|-------------|---------|--------|-------------|");
+        for (CpuProfiler.Window window : windows) {
+            out.println("| " + format(window.getStart()) + " | " + format(window.getEnd()) + " | "
+                    + window.getSamples() + " | " + window.getStacks().size() + " | " + window.getOverflows() + " |");
+        }
+    }
+
+    /**
+     * Prints the stacks of a window, each thread name being filtered before its numbers are replaced, so the names
+     * holding numbers are filtered as they are, then the threads of a pool are counted together.
+     */
+    static void printStacks(PrintWriter out, CpuProfiler.Window window, ContentFilter filter) {
+        Map<String, Long> counts = new HashMap<>();
+        for (Map.Entry<String, Long> stack : window.getStacks()) {
+            String folded = stack.getKey();
+            // Only the thread name may hold something to filter
+            int threadName = folded.indexOf(';');
+            String grouped = threadName < 0
+                    ? CpuProfiler.threadGroupName(ContentFilter.filter(filter, folded))
+                    : CpuProfiler.threadGroupName(ContentFilter.filter(filter, folded.substring(0, threadName)))
+                            + folded.substring(threadName);
+            counts.merge(grouped, stack.getValue(), Long::sum);
+        }
+        List<Map.Entry<String, Long>> stacks = new ArrayList<>(counts.entrySet());
+        stacks.sort(Collections.reverseOrder(Map.Entry.<String, Long>comparingByValue())
+                .thenComparing(Map.Entry.comparingByKey()));
+        for (Map.Entry<String, Long> stack : stacks) {
+            out.print(stack.getKey());
+            out.print(' ');
+            out.println(stack.getValue());
+        }
+    }
+
+    private static String format(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd-HHmmss");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(millis));
+    }
+}
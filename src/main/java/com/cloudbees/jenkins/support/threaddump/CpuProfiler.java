@@ -0,0 +1,460 @@
+package com.cloudbees.jenkins.support.threaddump;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Samples the stacks of the threads using the CPU several times per second, so what the controller was busy with is
+ * known even when the load was too short for {@link HighLoadCpuChecker} to notice it.
+ * <p>
+ * Only the threads whose CPU time grew since the previous sample have their stack taken. The samples are counted by
+ * collapsed stack, rooted at the name of the thread. The names are kept as they are, so they can be filtered when
+ * written, before their numbers are replaced to count the threads of a pool together. Only a few names are kept per
+ * pool, the other threads of a pool being counted under one of them. The counts are kept in a ring of time windows,
+ * each window holding a bounded amount of stacks.
+ */
+@Restricted(NoExternalUse.class)
+public final class CpuProfiler {
+
+    private static final Logger LOGGER = Logger.getLogger(CpuProfiler.class.getName());
+
+    /**
+     * Number of samples taken per second, {@code 0} disables the profiler.
+     */
+    public static final int SAMPLING_RATE = Integer.getInteger(CpuProfiler.class.getName() + ".samplingRate", 0);
+
+    /**
+     * Length of a time window.
+     */
+    public static final int WINDOW_SECONDS = Integer.getInteger(CpuProfiler.class.getName() + ".windowSeconds", 60);
+
+    /**
+     * Number of time windows kept.
+     */
+    public static final int WINDOWS = Integer.getInteger(CpuProfiler.class.getName() + ".windows", 30);
+
+    /**
+     * Memory used by the stacks of all the windows, shared equally between the windows.
+     */
+    public static final int MEMORY_BUDGET_KB = Integer.getInteger(CpuProfiler.class.getName() + ".memoryBudgetKB", 8192);
+
+    /**
+     * Maximum number of frames taken per stack.
+     */
+    public static final int MAX_STACK_DEPTH = Integer.getInteger(CpuProfiler.class.getName() + ".maxStackDepth", 128);
+
+    /**
+     * Counted instead of a stack when its window has no room left.
+     */
+    static final String OVERFLOW_FRAME = "[stack table full]";
+
+    /**
+     * Added below the thread name when the stack may be missing its bottom frames.
+     */
+    static final String TRUNCATED_FRAME = "[truncated]";
+
+    /**
+     * Number of names kept per window for the threads whose names only differ by their numbers.
+     */
+    static final int MAX_THREAD_NAMES = 16;
+
+    /**
+     * Estimate of the memory taken by a stack besides its characters.
+     */
+    private static final int STACK_OVERHEAD_BYTES = 96;
+
+    private static volatile CpuProfiler instance;
+
+    private final ThreadMXBean mbean = ManagementFactory.getThreadMXBean();
+    private final long windowMillis;
+    private final long windowBudgetBytes;
+    private final int maxStackDepth;
+    private final Window[] windows;
+    /**
+     * Index of the current window in {@link #windows}.
+     */
+    private int current;
+    /**
+     * CPU time of each thread at the previous sample, only used by the sampling thread.
+     */
+    private Map<Long, Long> previousCpuTimes = new HashMap<>();
+    private volatile long samplingNanos;
+    private volatile long samplingCount;
+    private volatile boolean stopped;
+    @CheckForNull
+    private Thread samplerThread;
+
+    CpuProfiler(long windowMillis, int windows, long budgetBytes, int maxStackDepth) {
+        this.windowMillis = Math.max(1, windowMillis);
+        this.windows = new Window[Math.max(1, windows)];
+        this.windowBudgetBytes = Math.max(0, budgetBytes / this.windows.length);
+        this.maxStackDepth = Math.max(1, maxStackDepth);
+    }
+
+    /**
+     * @return the running profiler, {@code null} when disabled
+     */
+    @CheckForNull
+    public static CpuProfiler get() {
+        return instance;
+    }
+
+    @Initializer(after = InitMilestone.STARTED)
+    public static synchronized void start() {
+        if (SAMPLING_RATE <= 0 || instance != null) {
+            return;
+        }
+        CpuProfiler profiler = new CpuProfiler(TimeUnit.SECONDS.toMillis(WINDOW_SECONDS), WINDOWS,
+                MEMORY_BUDGET_KB * 1024L, MAX_STACK_DEPTH);
+        Thread thread = new Thread(() -> profiler.run(SAMPLING_RATE), "Support core plugin CPU profiler");
+        thread.setDaemon(true);
+        profiler.samplerThread = thread;
+        instance = profiler;
+        thread.start();
+    }
+
+    @Terminator
+    public static synchronized void stop() {
+        CpuProfiler profiler = instance;
+        if (profiler == null) {
+            return;
+        }
+        instance = null;
+        profiler.stopped = true;
+        Thread thread = profiler.samplerThread;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Body of the sampling thread, taking a sample at the given rate until stopped. Samples are skipped rather than
+     * taken in a row when sampling falls behind.
+     */
+    private void run(int rate) {
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / Math.min(rate, 1000);
+        long next = System.nanoTime();
+        while (!stopped) {
+            try {
+                sample(System.currentTimeMillis());
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not sample the threads", e);
+            } catch (LinkageError e) {
+                LOGGER.log(Level.WARNING, "Thread sampling is not supported, the CPU profiler stops", e);
+                return;
+            }
+            next += periodNanos;
+            long delay = next - System.nanoTime();
+            if (delay <= 0) {
+                next = System.nanoTime();
+                continue;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Takes a sample of the threads which used the CPU since the previous sample.
+     *
+     * @param now the time of the sample, in milliseconds since the epoch
+     */
+    void sample(long now) {
+        long start = System.nanoTime();
+        long[] ids = mbean.getAllThreadIds();
+        long[] cpuTimes = getCpuTimes(ids);
+        long self = Thread.currentThread().getId();
+        long[] busy = new long[ids.length];
+        int count = 0;
+        Map<Long, Long> cpuTimesById = new HashMap<>(ids.length * 2);
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == self) {
+                continue;
+            }
+            if (cpuTimes == null) {
+                busy[count++] = ids[i];
+            } else if (cpuTimes[i] >= 0) {
+                Long previous = previousCpuTimes.get(ids[i]);
+                if (previous != null && cpuTimes[i] > previous) {
+                    busy[count++] = ids[i];
+                }
+                cpuTimesById.put(ids[i], cpuTimes[i]);
+            }
+        }
+        previousCpuTimes = cpuTimesById;
+        List<String> stacks = new ArrayList<>(count);
+        if (count > 0) {
+            long[] selected = new long[count];
+            System.arraycopy(busy, 0, selected, 0, count);
+            for (ThreadInfo info : mbean.getThreadInfo(selected, maxStackDepth)) {
+                if (info != null && info.getThreadState() == Thread.State.RUNNABLE) {
+                    stacks.add(fold(info, maxStackDepth));
+                }
+            }
+        }
+        synchronized (this) {
+            Window window = windows[current];
+            if (window == null || now >= window.start + windowMillis) {
+                if (window != null) {
+                    current = (current + 1) % windows.length;
+                }
+                window = new Window(now - now % windowMillis);
+                windows[current] = window;
+            }
+            window.add(stacks, now, windowBudgetBytes);
+        }
+        samplingNanos += System.nanoTime() - start;
+        samplingCount++;
+    }
+
+    /**
+     * @return the CPU time of each thread, {@code null} when the JVM does not measure it
+     */
+    @IgnoreJRERequirement // com.sun.management.ThreadMXBean
+    @CheckForNull
+    private long[] getCpuTimes(long[] ids) {
+        try {
+            if (!mbean.isThreadCpuTimeSupported() || !mbean.isThreadCpuTimeEnabled()) {
+                return null;
+            }
+            if (mbean instanceof com.sun.management.ThreadMXBean) {
+                return ((com.sun.management.ThreadMXBean) mbean).getThreadCpuTime(ids);
+            }
+            long[] cpuTimes = new long[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                cpuTimes[i] = mbean.getThreadCpuTime(ids[i]);
+            }
+            return cpuTimes;
+        } catch (UnsupportedOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Collapses a stack on a line, from the thread name to the top frame, the frames separated by {@code ;}.
+     *
+     * @param maxStackDepth the depth the stack was taken with
+     */
+    static String fold(ThreadInfo info, int maxStackDepth) {
+        StackTraceElement[] frames = info.getStackTrace();
+        StringBuilder buf = new StringBuilder(32 + 64 * frames.length);
+        appendThreadName(buf, info.getThreadName(), false);
+        if (frames.length >= maxStackDepth) {
+            buf.append(';').append(TRUNCATED_FRAME);
+        }
+        for (int i = frames.length - 1; i >= 0; i--) {
+            buf.append(';').append(frames[i].getClassName()).append('.').append(frames[i].getMethodName());
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Replaces the numbers in a thread name, so the threads of a pool share the same name, and the characters which
+     * have a meaning in collapsed stacks.
+     */
+    static String threadGroupName(String threadName) {
+        StringBuilder buf = new StringBuilder(threadName.length());
+        appendThreadName(buf, threadName, true);
+        return buf.toString();
+    }
+
+    /**
+     * Appends a thread name, replacing the characters which have a meaning in collapsed stacks.
+     *
+     * @param grouped whether to replace the numbers too
+     */
+    private static void appendThreadName(StringBuilder buf, String threadName, boolean grouped) {
+        boolean digits = false;
+        for (int i = 0; i < threadName.length(); i++) {
+            char c = threadName.charAt(i);
+            if (grouped && c >= '0' && c <= '9') {
+                if (!digits) {
+                    buf.append('#');
+                    digits = true;
+                }
+                continue;
+            }
+            digits = false;
+            if (c == ';') {
+                buf.append(',');
+            } else if (Character.isISOControl(c)) {
+                buf.append(' ');
+            } else {
+                buf.append(c);
+            }
+        }
+    }
+
+    /**
+     * @return copies of the time windows, oldest first
+     */
+    @NonNull
+    public synchronized List<Window> getWindows() {
+        List<Window> copies = new ArrayList<>(windows.length);
+        for (int i = 1; i <= windows.length; i++) {
+            Window window = windows[(current + i) % windows.length];
+            if (window != null) {
+                copies.add(window.copy());
+            }
+        }
+        return copies;
+    }
+
+    /**
+     * @return the mean time spent taking a sample, in nanoseconds
+     */
+    public long getMeanSamplingNanos() {
+        long count = samplingCount;
+        return count == 0 ? 0 : samplingNanos / count;
+    }
+
+    public long getSamplingCount() {
+        return samplingCount;
+    }
+
+    /**
+     * The samples taken during a time window.
+     */
+    public static final class Window {
+        private final long start;
+        private long end;
+        private long samples;
+        private long overflows;
+        private long bytes;
+        private final Map<String, long[]> counts;
+        /**
+         * The thread names kept, by group, see {@link #threadGroupName(String)}.
+         */
+        private final Map<String, List<String>> threadNames;
+
+        Window(long start) {
+            this.start = start;
+            this.counts = new HashMap<>();
+            this.threadNames = new HashMap<>();
+        }
+
+        private Window(Window window) {
+            this.start = window.start;
+            this.end = window.end;
+            this.samples = window.samples;
+            this.overflows = window.overflows;
+            this.bytes = window.bytes;
+            this.counts = new HashMap<>(window.counts.size() * 2);
+            this.threadNames = Collections.emptyMap();
+            for (Map.Entry<String, long[]> entry : window.counts.entrySet()) {
+                counts.put(entry.getKey(), new long[] {entry.getValue()[0]});
+            }
+        }
+
+        void add(List<String> stacks, long now, long budgetBytes) {
+            samples++;
+            end = now;
+            for (String stack : stacks) {
+                stack = keepThreadName(stack);
+                long[] count = counts.get(stack);
+                if (count == null) {
+                    long size = STACK_OVERHEAD_BYTES + 2L * stack.length();
+                    if (bytes + size > budgetBytes) {
+                        overflows++;
+                        int threadName = stack.indexOf(';');
+                        stack = (threadName < 0 ? stack : stack.substring(0, threadName)) + ';' + OVERFLOW_FRAME;
+                        count = counts.get(stack);
+                        // Over the budget, but at most one short stack per thread
+                        size = STACK_OVERHEAD_BYTES + 2L * stack.length();
+                    }
+                    if (count == null) {
+                        bytes += size;
+                        count = new long[1];
+                        counts.put(stack, count);
+                    }
+                }
+                count[0]++;
+            }
+        }
+
+        /**
+         * @return the stack, rooted at one of the names kept for its thread group if there are already too many
+         */
+        private String keepThreadName(String stack) {
+            int end = stack.indexOf(';');
+            String threadName = end < 0 ? stack : stack.substring(0, end);
+            List<String> names = threadNames.computeIfAbsent(threadGroupName(threadName), k -> new ArrayList<>(1));
+            if (names.contains(threadName)) {
+                return stack;
+            }
+            if (names.size() < MAX_THREAD_NAMES) {
+                names.add(threadName);
+                return stack;
+            }
+            return end < 0 ? names.get(0) : names.get(0) + stack.substring(end);
+        }
+
+        Window copy() {
+            return new Window(this);
+        }
+
+        /**
+         * @return when the window starts, in milliseconds since the epoch
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * @return when the last sample of the window was taken, in milliseconds since the epoch
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * @return the number of times the threads were sampled
+         */
+        public long getSamples() {
+            return samples;
+        }
+
+        /**
+         * @return the number of stacks counted as {@link #OVERFLOW_FRAME} because the window had no room left
+         */
+        public long getOverflows() {
+            return overflows;
+        }
+
+        /**
+         * @return the collapsed stacks with the number of samples they were seen in, most seen first
+         */
+        @NonNull
+        public List<Map.Entry<String, Long>> getStacks() {
+            List<Map.Entry<String, Long>> stacks = new ArrayList<>(counts.size());
+            for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+                stacks.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()[0]));
+            }
+            stacks.sort(Collections.reverseOrder(Map.Entry.<String, Long>comparingByValue())
+                    .thenComparing(Map.Entry.comparingByKey()));
+            return stacks;
+        }
+    }
+}
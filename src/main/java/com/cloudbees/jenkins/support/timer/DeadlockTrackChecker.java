@@ -63,6 +63,16 @@ public class DeadlockTrackChecker extends PeriodicWork {
                         builder.println(threadInfo);
                     }
                 }
+                if (ThreadDumps.AGGREGATED) {
+                    // What the other threads were doing, compactly
+                    builder.println();
+                    builder.println("===========");
+                    builder.println("All Threads");
+                    builder.println("===========");
+                    ThreadDumps.printAggregatedThreadInfos(builder,
+                            mbean.getThreadInfo(mbean.getAllThreadIds(), ThreadDumps.MAX_STACK_DEPTH),
+                            mbean, contentFilter, ThreadDumps.MAX_STACK_DEPTH, ThreadDumps.AGGREGATION_ORDER);
+                }
             } finally {
                 builder.close();
             }
@@ -0,0 +1,238 @@
+package com.cloudbees.jenkins.support.util;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Compiled form of {@link WordReplacer} for a fixed set of words. The words are stored in a prefix tree so every
+ * input is scanned only once from left to right, whatever the number of words to replace is. As in
+ * {@link WordReplacer}, a word is only replaced when it is not part of a greater word, that is, if the previous and
+ * next characters are not {@link Character#isLetterOrDigit(char)} characters. When several words match at the same
+ * position, the longest one wins.
+ * <p>
+ * Instances are immutable and can be shared between threads. They are meant to be built once and reused as long as
+ * the set of words doesn't change.
+ */
+public final class MultiWordReplacer {
+
+    private static final MultiWordReplacer EMPTY = new MultiWordReplacer(new String[0], new String[0], false);
+
+    private final Node root = new Node();
+    private final boolean ignoreCase;
+    private final int size;
+
+    private MultiWordReplacer(@NonNull String[] words, @NonNull String[] replaces, boolean ignoreCase) {
+        // the same number of word to replace and replaces to use
+        if (words.length != replaces.length) {
+            throw new IllegalArgumentException(String.format("Words (%d) and replaces (%d) lengths should be equals", words.length, replaces.length));
+        }
+        this.ignoreCase = ignoreCase;
+        int count = 0;
+        for (int i = 0; i < words.length; i++) {
+            if (add(words[i], replaces[i])) {
+                count++;
+            }
+        }
+        this.size = count;
+    }
+
+    /**
+     * Compiles the words to replace, respecting the case.
+     * @param words the words to look for and replace
+     * @param replaces the new words to use
+     * @return the compiled replacer
+     */
+    public static @NonNull MultiWordReplacer of(@NonNull String[] words, @NonNull String[] replaces) {
+        return new MultiWordReplacer(words, replaces, false);
+    }
+
+    /**
+     * Compiles the words to replace, ignoring the case.
+     * @param words the words to look for and replace
+     * @param replaces the new words to use
+     * @return the compiled replacer
+     */
+    public static @NonNull MultiWordReplacer ofIgnoreCase(@NonNull String[] words, @NonNull String[] replaces) {
+        return new MultiWordReplacer(words, replaces, true);
+    }
+
+    /**
+     * @return a replacer which doesn't replace anything
+     */
+    public static @NonNull MultiWordReplacer empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return the number of distinct words this replacer looks for
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Replace all the words in the input by their replaces.
+     * @param input the text where the replacements take place
+     * @return the text replaced, or the very same input if nothing was replaced
+     */
+    public @NonNull String replace(@NonNull String input) {
+        return replace((CharSequence) input).toString();
+    }
+
+    /**
+     * Replace all the words in the input by their replaces. Nothing is copied unless a word is actually replaced.
+     * @param input the text where the replacements take place
+     * @return the text replaced, or the very same input if nothing was replaced
+     */
+    public @NonNull CharSequence replace(@NonNull CharSequence input) {
+        if (size == 0 || input.length() == 0) {
+            return input;
+        }
+        StringBuilder sb = null;
+        int copied = 0;
+        int length = input.length();
+        int pos = 0;
+        while (pos < length) {
+            // A word can only start at the beginning of the input or after a non word character
+            if (pos > 0 && Character.isLetterOrDigit(input.charAt(pos - 1))) {
+                pos++;
+                continue;
+            }
+            Node node = root;
+            Node found = null;
+            int end = -1;
+            for (int i = pos; i < length; i++) {
+                node = node.child(fold(input.charAt(i)));
+                if (node == null) {
+                    break;
+                }
+                // Only keep the match if the next char is not a word letter
+                if (node.replace != null && (i + 1 == length || !Character.isLetterOrDigit(input.charAt(i + 1)))) {
+                    found = node;
+                    end = i + 1;
+                }
+            }
+            if (found == null) {
+                pos++;
+                continue;
+            }
+            if (sb == null) {
+                sb = new StringBuilder(length + 16);
+            }
+            sb.append(input, copied, pos).append(found.replace);
+            copied = end;
+            pos = end;
+        }
+        if (sb == null) {
+            return input;
+        }
+        return sb.append(input, copied, length);
+    }
+
+    /**
+     * Tells whether replacing the words in two pieces of the input, split at the given place, gives the same result as
+     * replacing them in the whole input, that is whether no word could be found across the split. Nothing is replaced.
+     * @param input the text to split
+     * @param index the place of the split
+     * @return {@code false} if a word may be replaced differently once the input is split
+     */
+    public boolean canSplit(@NonNull CharSequence input, int index) {
+        int length = input.length();
+        if (size == 0 || index <= 0 || index >= length) {
+            return true;
+        }
+        // A word ending at the split is found in the first piece, but not in the whole input if a word letter follows
+        boolean letterAfter = Character.isLetterOrDigit(input.charAt(index));
+        for (int pos = 0; pos < index; pos++) {
+            if (pos > 0 && Character.isLetterOrDigit(input.charAt(pos - 1))) {
+                continue;
+            }
+            Node node = root;
+            for (int i = pos; i < length; i++) {
+                node = node.child(fold(input.charAt(i)));
+                if (node == null) {
+                    break;
+                }
+                int end = i + 1;
+                if (node.replace != null && (end > index
+                        ? end == length || !Character.isLetterOrDigit(input.charAt(end))
+                        : end == index && letterAfter)) {
+                    return false;
+                }
+            }
+        }
+        // A word starting at the split is found in the second piece, but not in the whole input if a word letter precedes
+        if (Character.isLetterOrDigit(input.charAt(index - 1))) {
+            Node node = root;
+            for (int i = index; i < length; i++) {
+                node = node.child(fold(input.charAt(i)));
+                if (node == null) {
+                    break;
+                }
+                if (node.replace != null && (i + 1 == length || !Character.isLetterOrDigit(input.charAt(i + 1)))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean add(String word, String replace) {
+        if (word == null || word.isEmpty()) {
+            return false;
+        }
+        Node node = root;
+        for (int i = 0; i < word.length(); i++) {
+            node = node.getOrCreateChild(fold(word.charAt(i)));
+        }
+        if (node.replace != null) {
+            // keep the first replace given for a word
+            return false;
+        }
+        node.replace = replace == null ? "" : replace;
+        return true;
+    }
+
+    private char fold(char c) {
+        return ignoreCase ? Character.toLowerCase(c) : c;
+    }
+
+    /**
+     * A node of the prefix tree. Children are kept in a sorted array to keep the memory footprint low with large
+     * amount of words.
+     */
+    private static final class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        private String replace;
+
+        private Node child(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index < 0 ? null : children[index];
+        }
+
+        private Node getOrCreateChild(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insertion = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertion);
+            System.arraycopy(children, 0, newChildren, 0, insertion);
+            System.arraycopy(keys, insertion, newKeys, insertion + 1, keys.length - insertion);
+            System.arraycopy(children, insertion, newChildren, insertion + 1, children.length - insertion);
+            Node child = new Node();
+            newKeys[insertion] = c;
+            newChildren[insertion] = child;
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.cloudbees.jenkins.support;
+
+import hudson.model.Node;
+import hudson.slaves.DumbSlave;
+import hudson.slaves.JNLPLauncher;
+import jenkins.security.MasterToSlaveCallable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.WeakHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AsyncResultCacheTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void batchFetchesAllNodesAndFillsTheCache() throws Exception {
+        DumbSlave agent1 = j.createOnlineSlave();
+        DumbSlave agent2 = j.createOnlineSlave();
+        DumbSlave offline = offlineAgent("offline");
+        WeakHashMap<Node, String> cache = new WeakHashMap<>();
+        cache.put(offline, "cached");
+
+        AsyncResultCache.Batch<String> batch = AsyncResultCache.batch(
+                Arrays.asList(j.jenkins, agent1, agent2, offline), cache,
+                node -> new GetAnswer(node.getNodeName()), "answer");
+
+        assertThat(batch.get(agent1)).isEqualTo("answer from " + agent1.getNodeName());
+        assertThat(batch.get(agent2)).isEqualTo("answer from " + agent2.getNodeName());
+        assertThat(batch.get(j.jenkins)).isEqualTo("answer from ");
+        assertThat(batch.get(offline)).isEqualTo("cached");
+        synchronized (cache) {
+            assertThat(cache).containsEntry(agent1, "answer from " + agent1.getNodeName())
+                    .containsEntry(agent2, "answer from " + agent2.getNodeName());
+        }
+    }
+
+    @Test
+    public void batchSkipsNodesWithoutOperation() throws Exception {
+        DumbSlave agent = j.createOnlineSlave();
+        WeakHashMap<Node, String> cache = new WeakHashMap<>();
+
+        AsyncResultCache.Batch<String> batch = AsyncResultCache.batch(
+                Collections.singletonList(agent), cache, node -> null, "nothing");
+
+        assertThat(batch.get(agent, "default")).isEqualTo("default");
+        synchronized (cache) {
+            assertThat(cache).isEmpty();
+        }
+    }
+
+    private DumbSlave offlineAgent(String name) throws Exception {
+        // An inbound agent nothing connects to
+        DumbSlave agent = new DumbSlave(name, new File(j.jenkins.getRootDir(), name).getPath(), new JNLPLauncher(true));
+        j.jenkins.addNode(agent);
+        return agent;
+    }
+
+    private static final class GetAnswer extends MasterToSlaveCallable<String, RuntimeException> {
+        private final String nodeName;
+
+        GetAnswer(String nodeName) {
+            this.nodeName = nodeName;
+        }
+
+        @Override
+        public String call() {
+            return "answer from " + nodeName;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -0,0 +1,84 @@
+package com.cloudbees.jenkins.support;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BundleArchiveTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void parallelArchiveContainsAllEntries() throws IOException {
+        String big = StringUtils.repeat("support bundle ", ParallelBundleWriter.IN_MEMORY_THRESHOLD / 10);
+        File bundle = temp.newFile();
+        try (BundleArchive archive = new BundleArchive.ParallelArchive(Files.newOutputStream(bundle.toPath()), 4, Deflater.BEST_SPEED)) {
+            for (int i = 0; i < 1000; i++) {
+                write(archive, "entry-" + i + ".txt", "content " + i);
+            }
+            write(archive, "big.txt", big);
+            write(archive, "nodes/master/logs/gc.log.gz", "not really gzipped");
+        }
+
+        try (ZipFile zip = new ZipFile(bundle)) {
+            assertThat(zip.size()).isEqualTo(1002);
+            // Appended in the order they were written
+            assertThat(Collections.list(zip.entries()).subList(998, 1002)).extracting(ZipEntry::getName)
+                    .containsExactly("entry-998.txt", "entry-999.txt", "big.txt", "nodes/master/logs/gc.log.gz");
+            assertThat(read(zip, "entry-42.txt")).isEqualTo("content 42");
+            assertThat(read(zip, "big.txt")).isEqualTo(big);
+            assertThat(zip.getEntry("big.txt").getMethod()).isEqualTo(ZipEntry.DEFLATED);
+            assertThat(zip.getEntry("nodes/master/logs/gc.log.gz").getMethod()).isEqualTo(ZipEntry.STORED);
+            assertThat(read(zip, "nodes/master/logs/gc.log.gz")).isEqualTo("not really gzipped");
+        }
+    }
+
+    @Test
+    public void directArchiveDoesNotCompressCompressedEntries() throws IOException {
+        String big = StringUtils.repeat("support bundle ", 1000);
+        File bundle = temp.newFile();
+        try (BundleArchive archive = new BundleArchive.DirectArchive(Files.newOutputStream(bundle.toPath()), Deflater.BEST_SPEED)) {
+            write(archive, "nodes/master/logs/gc.log.gz", big);
+            write(archive, "big.txt", big);
+        }
+
+        try (ZipFile zip = new ZipFile(bundle)) {
+            assertThat(zip.getEntry("nodes/master/logs/gc.log.gz").getCompressedSize()).isGreaterThanOrEqualTo(big.length());
+            assertThat(zip.getEntry("big.txt").getCompressedSize()).isLessThan(big.length() / 10);
+            assertThat(read(zip, "nodes/master/logs/gc.log.gz")).isEqualTo(big);
+            assertThat(read(zip, "big.txt")).isEqualTo(big);
+        }
+    }
+
+    @Test
+    public void alreadyCompressedEntries() {
+        assertThat(BundleArchive.isAlreadyCompressed("nodes/master/logs/gc.log.0.gz")).isTrue();
+        assertThat(BundleArchive.isAlreadyCompressed("load-stats/executors.PNG")).isTrue();
+        assertThat(BundleArchive.isAlreadyCompressed("nodes/master/logs/jenkins.log")).isFalse();
+        assertThat(BundleArchive.isAlreadyCompressed("manifest")).isFalse();
+    }
+
+    private static void write(BundleArchive archive, String name, String content) throws IOException {
+        archive.putArchiveEntry(name, System.currentTimeMillis());
+        archive.write(content.getBytes(StandardCharsets.UTF_8));
+        archive.closeArchiveEntry();
+    }
+
+    private static String read(ZipFile zip, String name) throws IOException {
+        return IOUtils.toString(zip.getInputStream(zip.getEntry(name)), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,115 @@
+package com.cloudbees.jenkins.support;
+
+import com.cloudbees.jenkins.support.api.Content;
+import com.cloudbees.jenkins.support.api.StringContent;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ParallelBundleWriterTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void entriesAreWrittenInOrder() throws Exception {
+        List<Content> contents = new ArrayList<>();
+        List<String> expectedNames = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String name = "entry-" + i + ".txt";
+            // The first contents are the slowest ones
+            contents.add(new SlowContent(name, "content " + i, 20 - i));
+            expectedNames.add(name);
+        }
+        String big = StringUtils.repeat("a", ParallelBundleWriter.IN_MEMORY_THRESHOLD + 1);
+        contents.add(new StringContent("big.txt", big));
+        expectedNames.add("big.txt");
+
+        File bundle = temp.newFile();
+        StringWriter errors = new StringWriter();
+        try (BundleArchive zip = new BundleArchive.DirectArchive(Files.newOutputStream(bundle.toPath()), Deflater.DEFAULT_COMPRESSION)) {
+            new ParallelBundleWriter(zip, Optional.empty(), new PrintWriter(errors), 4).write(contents);
+        }
+
+        assertThat(errors.toString()).isEmpty();
+        try (ZipFile zip = new ZipFile(bundle)) {
+            List<String> names = new ArrayList<>();
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                names.add(entry.getName());
+            }
+            assertThat(names).containsExactlyElementsOf(expectedNames);
+            assertThat(IOUtils.toString(zip.getInputStream(zip.getEntry("entry-3.txt")), StandardCharsets.UTF_8))
+                    .isEqualTo("content 3");
+            assertThat(IOUtils.toString(zip.getInputStream(zip.getEntry("big.txt")), StandardCharsets.UTF_8))
+                    .isEqualTo(big);
+        }
+    }
+
+    @Test
+    public void failuresAreReported() throws Exception {
+        List<Content> contents = new ArrayList<>();
+        contents.add(new StringContent("before.txt", "before"));
+        contents.add(new Content("failing.txt") {
+            @Override
+            public void writeTo(OutputStream os) throws IOException {
+                throw new IOException("Expected failure");
+            }
+        });
+        contents.add(new StringContent("after.txt", "after"));
+
+        File bundle = temp.newFile();
+        StringWriter errors = new StringWriter();
+        try (BundleArchive zip = new BundleArchive.DirectArchive(Files.newOutputStream(bundle.toPath()), Deflater.DEFAULT_COMPRESSION)) {
+            new ParallelBundleWriter(zip, Optional.empty(), new PrintWriter(errors), 2).write(contents);
+        }
+
+        assertThat(errors.toString()).contains("Could not attach 'failing.txt' to support bundle", "Expected failure");
+        try (ZipFile zip = new ZipFile(bundle)) {
+            assertThat(zip.getEntry("before.txt")).isNotNull();
+            assertThat(zip.getEntry("after.txt")).isNotNull();
+        }
+    }
+
+    private static class SlowContent extends StringContent {
+        private final long delay;
+
+        SlowContent(String name, String value, long delay) {
+            super(name, value);
+            this.delay = delay;
+        }
+
+        @Override
+        public void writeTo(OutputStream os) throws IOException {
+            try {
+                TimeUnit.MILLISECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            super.writeTo(os);
+        }
+    }
+}
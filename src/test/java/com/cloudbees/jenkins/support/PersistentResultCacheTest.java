@@ -0,0 +1,68 @@
+package com.cloudbees.jenkins.support;
+
+import hudson.slaves.DumbSlave;
+import hudson.slaves.JNLPLauncher;
+import jenkins.security.MasterToSlaveCallable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.WeakHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PersistentResultCacheTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void persistentResultsSurviveReload() throws Exception {
+        DumbSlave agent = j.createSlave("agent", null, null);
+        File file = new File(SupportPlugin.getRootDirectory(), PersistentResultCache.SNAPSHOT_FILE_NAME);
+        PersistentResultCache cache = new PersistentResultCache(file);
+        cache.put(agent, GetAnswer.class, "kept", "value", true);
+        cache.put(agent, GetAnswer.class, "secret", "password", false);
+        cache.save();
+
+        PersistentResultCache reloaded = new PersistentResultCache(file);
+        reloaded.load();
+
+        PersistentResultCache.Record record = reloaded.lookup(agent, GetAnswer.class, "kept");
+        assertThat(record).isNotNull();
+        assertThat(record.getValue()).isEqualTo("value");
+        assertThat(record.getServedFromCache()).isZero();
+        assertThat(reloaded.lookup(agent, GetAnswer.class, "secret")).isNull();
+    }
+
+    @Test
+    public void offlineNodeGetsTheLastResult() throws Exception {
+        DumbSlave agent = offlineAgent("offline");
+        PersistentResultCache.get().put(agent, GetAnswer.class, "answer", "from before", true);
+
+        // Not in the in-memory cache of the caller, for example after the node was reconfigured
+        String result = AsyncResultCache.batch(Collections.singletonList(agent), new WeakHashMap<>(),
+                node -> new GetAnswer(), "answer").get(agent);
+
+        assertThat(result).isEqualTo("from before");
+        assertThat(PersistentResultCache.get().lookup(agent, GetAnswer.class, "answer").getServedFromCache()).isPositive();
+    }
+
+    private DumbSlave offlineAgent(String name) throws Exception {
+        // An inbound agent nothing connects to
+        DumbSlave agent = new DumbSlave(name, new File(j.jenkins.getRootDir(), name).getPath(), new JNLPLauncher(true));
+        j.jenkins.addNode(agent);
+        return agent;
+    }
+
+    private static final class GetAnswer extends MasterToSlaveCallable<String, RuntimeException> {
+        @Override
+        public String call() {
+            return "now";
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+}
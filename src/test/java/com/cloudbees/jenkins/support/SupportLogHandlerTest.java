@@ -0,0 +1,152 @@
+package com.cloudbees.jenkins.support;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SupportLogHandlerTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void recentRecordsAreTheLastOnes() throws Exception {
+        SupportLogHandler handler = new SupportLogHandler(16, 2048, 8);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            String prefix = "thread-" + t + " ";
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    handler.publish(new LogRecord(Level.INFO, prefix + i));
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        handler.publish(new LogRecord(Level.INFO, "last"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        handler.writeRecent(out);
+        String[] recent = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertThat(recent).hasSize(16);
+        assertThat(recent[15]).endsWith("last");
+        assertThat(recent[14]).contains("\tINFO\t", " 999");
+
+        @SuppressWarnings("deprecation")
+        List<LogRecord> records = handler.getRecent();
+        assertThat(records).hasSize(SupportLogHandler.RECENT_RECORDS);
+        // The records as they were published
+        assertThat(records.get(SupportLogHandler.RECENT_RECORDS - 1).getMessage()).isEqualTo("last");
+        // no file, so nothing is queued
+        assertThat(handler.getQueueDepth()).isZero();
+        assertThat(handler.getDroppedCount()).isZero();
+    }
+
+    @SuppressWarnings("deprecation")
+    @Test
+    public void recentRecordsAreTheRecordsPublished() throws Exception {
+        SupportLogHandler handler = new SupportLogHandler(16, 2048, 8);
+        LogRecord record = new LogRecord(Level.WARNING, "failed {0}");
+        record.setParameters(new Object[] {"parameter"});
+        record.setThrown(new IOException("broken"));
+        handler.publish(record);
+
+        assertThat(handler.getRecent()).containsExactly(record);
+    }
+
+    @Test
+    public void longRecordsAreTruncated() throws Exception {
+        SupportLogHandler handler = new SupportLogHandler(16, 2048, 8);
+        handler.publish(new LogRecord(Level.INFO, StringUtils.repeat("a", SupportLogHandler.RECENT_BYTES)));
+        handler.publish(new LogRecord(Level.INFO, "after"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        handler.writeRecent(out);
+        String[] recent = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertThat(recent).hasSize(2);
+        assertThat(recent[0].length()).isLessThan(SupportLogHandler.RECENT_BYTES);
+        assertThat(recent[1]).endsWith("after");
+    }
+
+    @Test
+    public void recordsAreOnlyFormattedWhenLoggable() throws Exception {
+        SupportLogHandler handler = new SupportLogHandler(16, 2048, 8);
+        handler.setLevel(Level.INFO);
+        AtomicInteger formatted = new AtomicInteger();
+        Object parameter = new Object() {
+            @Override
+            public String toString() {
+                formatted.incrementAndGet();
+                return "parameter";
+            }
+        };
+        LogRecord fine = new LogRecord(Level.FINE, "fine {0}");
+        fine.setParameters(new Object[] {parameter});
+        handler.publish(fine);
+        assertThat(formatted).hasValue(0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        handler.writeRecent(out);
+        assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).contains("fine parameter");
+        assertThat(formatted).hasValue(1);
+    }
+
+    @Test
+    public void recordsWhichCannotBeFormattedAreKept() throws Exception {
+        SupportLogHandler handler = new SupportLogHandler(16, 2048, 8);
+        handler.setFormatter(new Formatter() {
+            @Override
+            public String format(LogRecord record) {
+                throw new IllegalStateException("broken");
+            }
+        });
+        handler.publish(new LogRecord(Level.WARNING, "unformatted"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        handler.writeRecent(out);
+        assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).contains("WARNING", "unformatted");
+    }
+
+    @Test
+    public void queuedRecordsAreWritten() throws Exception {
+        File dir = temp.newFolder();
+        SupportLogHandler handler = new SupportLogHandler(16, 2048, 8);
+        handler.setDirectory(dir, "all");
+        for (int i = 0; i < 100; i++) {
+            handler.publish(new LogRecord(Level.INFO, "flushed " + i));
+        }
+        handler.flush();
+        assertThat(readAll(dir)).contains("flushed 0", "flushed 99");
+
+        handler.publish(new LogRecord(Level.INFO, "closed"));
+        handler.close();
+        assertThat(readAll(dir)).contains("closed");
+        assertThat(handler.getQueueDepth()).isZero();
+        assertThat(handler.getDroppedCount()).isZero();
+    }
+
+    private static String readAll(File dir) throws IOException {
+        List<String> contents = new ArrayList<>();
+        for (File file : dir.listFiles()) {
+            contents.add(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        }
+        return contents.stream().collect(Collectors.joining());
+    }
+}
@@ -0,0 +1,36 @@
+package com.cloudbees.jenkins.support.api;
+
+import hudson.Functions;
+import hudson.slaves.DumbSlave;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.WeakHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeFalse;
+
+public class BaseCommandOutputContentTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void eachCommandGetsItsOwnCachedResult() throws Exception {
+        assumeFalse(Functions.isWindows());
+        DumbSlave agent = j.createOnlineSlave();
+        assertThat(BaseCommandOutputContent.runOnNodeAndCache(new WeakHashMap<>(), agent, "/bin/sh", "-c", "echo one"))
+                .isEqualTo("one\n");
+        assertThat(BaseCommandOutputContent.runOnNodeAndCache(new WeakHashMap<>(), agent, "/bin/sh", "-c", "echo two"))
+                .isEqualTo("two\n");
+
+        agent.toComputer().disconnect(null).get();
+
+        // Not in the in-memory caches of the callers, so only the persistent results can be used
+        assertThat(BaseCommandOutputContent.runOnNodeAndCache(new WeakHashMap<>(), agent, "/bin/sh", "-c", "echo one"))
+                .isEqualTo("one\n");
+        assertThat(BaseCommandOutputContent.runOnNodeAndCache(new WeakHashMap<>(), agent, "/bin/sh", "-c", "echo two"))
+                .isEqualTo("two\n");
+    }
+}
@@ -23,15 +23,26 @@
  */
 package com.cloudbees.jenkins.support.api;
 
+import com.cloudbees.jenkins.support.filter.ContentFilter;
+import com.cloudbees.jenkins.support.util.MultiWordReplacer;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class FileContentTest {
 
@@ -53,4 +64,123 @@ public class FileContentTest {
         new FileContent("-", f, 20).writeTo(baos);
         assertEquals("hello world\n", baos.toString());
     }
+
+    @Test public void filteredLines() throws Exception {
+        File f = tmp.newFile();
+        FileUtils.writeStringToFile(f, "foo one\r\ntwo foo\rthree\n\nlast foo", StandardCharsets.UTF_8);
+        ContentFilter filter = s -> s.replace("foo", "bar");
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new FileContent("-", f).writeTo(baos, filter);
+        assertEquals("bar one\ntwo bar\nthree\n\nlast bar\n", baos.toString("UTF-8"));
+
+        baos.reset();
+        new FileContent("-", f, 9).writeTo(baos, filter);
+        assertEquals("bar one\n", baos.toString("UTF-8"));
+    }
+
+    @Test public void longLinesAreFilteredWithoutCuttingWords() throws Exception {
+        File f = tmp.newFile();
+        String line = StringUtils.repeat("foo ", BaseFileContent.MAX_LINE_LENGTH);
+        FileUtils.writeStringToFile(f, line + "\nend", StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new FileContent("-", f).writeTo(baos, s -> s.replace("foo", "bar"));
+        assertEquals(StringUtils.repeat("bar ", BaseFileContent.MAX_LINE_LENGTH) + "\nend\n", baos.toString("UTF-8"));
+    }
+
+    @Test public void longLinesAreNotSplitInReplacedTexts() throws Exception {
+        File f = tmp.newFile();
+        // Whatever the split, it falls next to a name unless it is checked
+        String line = StringUtils.repeat("John Smith,", 2 * BaseFileContent.MAX_LINE_LENGTH / 11);
+        String words = StringUtils.repeat("JohnSmith", 2 * BaseFileContent.MAX_LINE_LENGTH / 9);
+        FileUtils.writeStringToFile(f, line + "\n" + words, StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new FileContent("-", f).writeTo(baos, s -> s.replace("John Smith", "user").replace("JohnSmith", "user"));
+        assertEquals(line.replace("John Smith", "user") + "\n" + words.replace("JohnSmith", "user") + "\n",
+                baos.toString("UTF-8"));
+    }
+
+    @Test public void longLinesAreSplitWhereTheFilterAllowsIt() throws Exception {
+        File f = tmp.newFile();
+        String line = StringUtils.repeat("John Smith, ", 4 * BaseFileContent.MAX_LINE_LENGTH / 12);
+        FileUtils.writeStringToFile(f, line + "\nend", StandardCharsets.UTF_8);
+        MultiWordReplacer replacer = MultiWordReplacer.of(new String[]{"John Smith"}, new String[]{"user"});
+        AtomicInteger calls = new AtomicInteger();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new FileContent("-", f).writeTo(baos, new ContentFilter() {
+            @Override
+            public String filter(String input) {
+                calls.incrementAndGet();
+                return replacer.replace(input);
+            }
+
+            @Override
+            public boolean canSplit(CharSequence input, int index) {
+                return replacer.canSplit(input, index);
+            }
+        });
+        assertEquals(line.replace("John Smith", "user") + "\nend\n", baos.toString("UTF-8"));
+        assertTrue(calls.get() > 2);
+    }
+
+    @Test public void linesWithoutSafeSplitAreSplitWhenTooLong() throws Exception {
+        File f = tmp.newFile();
+        String line = StringUtils.repeat("x", 3 * BaseFileContent.MAX_HELD_LINE_LENGTH);
+        FileUtils.writeStringToFile(f, line, StandardCharsets.UTF_8);
+        AtomicInteger longest = new AtomicInteger();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new FileContent("-", f).writeTo(baos, s -> {
+            longest.accumulateAndGet(s.length(), Math::max);
+            return s;
+        });
+        assertEquals(line + "\n", baos.toString("UTF-8"));
+        assertTrue(longest.get() < BaseFileContent.MAX_HELD_LINE_LENGTH + BaseFileContent.MAX_LINE_LENGTH);
+    }
+
+    @Test public void fileIsClassifiedWhenWritten() throws Exception {
+        File f = new File(tmp.getRoot(), "later");
+        FileContent content = new FileContent("-", f);
+        // Created after the content, with bytes which cannot be filtered as text
+        Files.write(f.toPath(), new byte[] {'f', 'o', 'o', 0, 1, 2, '\n'});
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        content.writeTo(baos, s -> s.replace("foo", "bar"));
+        assertEquals("foo\u0000\u0001\u0002\n", baos.toString("UTF-8"));
+    }
+
+    /**
+     * Run with a small heap, like {@code -Xmx64m}, to check the memory used does not depend on the size of the file.
+     */
+    @Ignore("Writes a 4 GB file")
+    @Test public void hugeFileIsFilteredInConstantMemory() throws Exception {
+        File f = tmp.newFile();
+        long size = 0;
+        try (Writer w = Files.newBufferedWriter(f.toPath(), StandardCharsets.UTF_8)) {
+            for (long i = 0; size < 4L * 1024 * 1024 * 1024; i++) {
+                String line = "2024-01-01 12:00:00 INFO line " + i + " written by foo\n";
+                w.write(line);
+                size += line.length();
+            }
+        }
+        long[] written = new long[1];
+        boolean[] leaked = new boolean[1];
+        new FileContent("-", f).writeTo(new OutputStream() {
+            @Override
+            public void write(int b) {
+                written[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                written[0] += len;
+                leaked[0] |= new String(b, off, len, StandardCharsets.UTF_8).contains("foo");
+            }
+        }, s -> s.replace("foo", "bar"));
+        assertEquals(size, written[0]);
+        assertFalse(leaked[0]);
+    }
 }
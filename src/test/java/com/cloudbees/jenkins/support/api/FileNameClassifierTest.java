@@ -0,0 +1,32 @@
+package com.cloudbees.jenkins.support.api;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileNameClassifierTest {
+
+    @Test
+    public void classifiesByExtension() {
+        assertThat(FileNameClassifier.INSTANCE.classify(new File("jenkins.log"))).isEqualTo(FileClassifier.Kind.TEXT);
+        assertThat(FileNameClassifier.INSTANCE.classify(new File("config.XML"))).isEqualTo(FileClassifier.Kind.TEXT);
+        assertThat(FileNameClassifier.INSTANCE.classify(new File("log.gz"))).isEqualTo(FileClassifier.Kind.BINARY);
+        assertThat(FileNameClassifier.INSTANCE.classify(new File("plugin.jpi"))).isEqualTo(FileClassifier.Kind.BINARY);
+    }
+
+    @Test
+    public void unknownFilesAreLeftToTheProbe() {
+        assertThat(FileNameClassifier.INSTANCE.classify(new File("log"))).isEqualTo(FileClassifier.Kind.UNKNOWN);
+        assertThat(FileNameClassifier.INSTANCE.classify(new File("build.unknown"))).isEqualTo(FileClassifier.Kind.UNKNOWN);
+    }
+
+    @Test
+    public void classifiesByMimeType() {
+        assertThat(FileNameClassifier.classifyMimeType("text/x-c")).isEqualTo(FileClassifier.Kind.TEXT);
+        assertThat(FileNameClassifier.classifyMimeType("image/tiff")).isEqualTo(FileClassifier.Kind.BINARY);
+        assertThat(FileNameClassifier.classifyMimeType("application/vnd.whatever")).isEqualTo(FileClassifier.Kind.UNKNOWN);
+        assertThat(FileNameClassifier.classifyMimeType(null)).isEqualTo(FileClassifier.Kind.UNKNOWN);
+    }
+}
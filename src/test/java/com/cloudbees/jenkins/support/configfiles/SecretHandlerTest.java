@@ -9,12 +9,18 @@ import org.junit.Test;
 import org.jvnet.hudson.test.Issue;
 import org.jvnet.hudson.test.JenkinsRule;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 
 import static org.hamcrest.Matchers.anyOf;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 public class SecretHandlerTest {
 
@@ -109,4 +115,54 @@ public class SecretHandlerTest {
                 containsString("<xxx/>"),
                 containsString("<xxx>" + SecretHandler.XXE_MARKER + "</xxx>")));
     }
+
+    @Test
+    public void onlyValuesShapedLikeEncryptedOnesAreDecrypted() {
+        assertTrue(SecretHandler.mayBeEncrypted(Secret.fromString("this-is-a-secret").getEncryptedValue()));
+        assertTrue(SecretHandler.mayBeEncrypted(SecretBytes.fromBytes("this-is-another-type-of-secret".getBytes()).toString()));
+        assertFalse(SecretHandler.mayBeEncrypted("true"));
+        assertFalse(SecretHandler.mayBeEncrypted("/home/jenkins/agent123"));
+        assertFalse(SecretHandler.mayBeEncrypted("hudson.plugins.git.GitSCM"));
+        assertFalse(SecretHandler.mayBeEncrypted("{}"));
+    }
+
+    @Test
+    public void largeFilesAreStreamed() throws Exception {
+        String encryptedSecret = Secret.fromString("this-is-a-secret").getEncryptedValue();
+        StringBuilder large = new StringBuilder("<?xml version='1.1' encoding='UTF-8'?>\n<slaves>\n");
+        for (int i = 0; large.length() < 2 * 1024 * 1024; i++) {
+            large.append("  <slave>\n    <name>agent-").append(i).append("</name>\n    <labels/>\n    <password>")
+                    .append(encryptedSecret).append("</password>\n  </slave>\n");
+        }
+        large.append("</slaves>");
+        File file = File.createTempFile("test", ".xml");
+        FileUtils.writeStringToFile(file, large.toString(), StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SecretHandler.writeRedacted(file, out);
+        String redacted = out.toString("UTF-8");
+
+        assertThat(redacted, startsWith("<slaves>\n  <slave>\n    <name>agent-0</name>\n    <labels/>\n    <password>"
+                + SecretHandler.SECRET_MARKER + "</password>"));
+        assertThat(redacted, not(containsString(encryptedSecret)));
+        assertEquals(large.toString().replace(encryptedSecret, SecretHandler.SECRET_MARKER)
+                .replace("<?xml version='1.1' encoding='UTF-8'?>\n", ""), redacted);
+    }
+
+    @Test
+    public void largeFilesWhichCannotBeParsedUseTheFallback() throws Exception {
+        String encryptedSecret = Secret.fromString("this-is-a-secret").getEncryptedValue();
+        StringBuilder large = new StringBuilder("<slaves>\n");
+        while (large.length() < 2 * 1024 * 1024) {
+            large.append("  <password>").append(encryptedSecret).append("</password>\n");
+        }
+        large.append("  <description>Bobby&#0x;</description>\n</slaves>");
+        File file = File.createTempFile("test", ".xml");
+        FileUtils.writeStringToFile(file, large.toString(), StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SecretHandler.writeRedacted(file, out);
+
+        assertEquals(large.toString().replace(encryptedSecret, SecretHandler.SECRET_MARKER), out.toString("UTF-8"));
+    }
 }
@@ -0,0 +1,73 @@
+package com.cloudbees.jenkins.support.filter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ContentMappingsJournalTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void mappingsAreReadBack() throws IOException {
+        File file = new File(temp.getRoot(), "journal");
+        ContentMappingsJournal journal = new ContentMappingsJournal(file);
+        journal.append("simple", "replacement");
+        journal.append("with\ttab\\and\nlines\r", "a\\t");
+        journal.append("ünïcödé » name", "");
+        assertEquals(3, journal.size());
+
+        Map<String, String> read = replay(new ContentMappingsJournal(file));
+        assertEquals(3, read.size());
+        assertEquals("replacement", read.get("simple"));
+        assertEquals("a\\t", read.get("with\ttab\\and\nlines\r"));
+        assertEquals("", read.get("ünïcödé » name"));
+    }
+
+    @Test
+    public void incompleteLineIsDropped() throws IOException {
+        File file = new File(temp.getRoot(), "journal");
+        ContentMappingsJournal journal = new ContentMappingsJournal(file);
+        journal.append("first", "1");
+        Files.write(file.toPath(), "second\t".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        journal = new ContentMappingsJournal(file);
+        Map<String, String> read = replay(journal);
+        assertEquals(1, read.size());
+        assertEquals(1, journal.size());
+
+        journal.append("third", "3");
+        read = replay(new ContentMappingsJournal(file));
+        assertEquals(2, read.size());
+        assertEquals("3", read.get("third"));
+    }
+
+    @Test
+    public void clearDeletesTheJournal() throws IOException {
+        File file = new File(temp.getRoot(), "journal");
+        ContentMappingsJournal journal = new ContentMappingsJournal(file);
+        journal.append("first", "1");
+        journal.clear();
+        assertFalse(file.exists());
+        assertEquals(0, journal.size());
+        assertEquals(0, replay(journal).size());
+    }
+
+    private static Map<String, String> replay(ContentMappingsJournal journal) throws IOException {
+        Map<String, String> read = new LinkedHashMap<>();
+        journal.replay(read::put);
+        return read;
+    }
+}
@@ -23,8 +23,11 @@
  */
 package com.cloudbees.jenkins.support.filter;
 
+import com.cloudbees.jenkins.support.util.Persistence;
+import hudson.BulkChange;
 import hudson.model.FreeStyleProject;
 import jenkins.model.Jenkins;
+import org.apache.commons.io.FileUtils;
 import org.hamcrest.MatcherAssert;
 import org.junit.After;
 import org.junit.BeforeClass;
@@ -32,10 +35,13 @@ import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.Issue;
+import org.jvnet.hudson.test.JenkinsRule;
 import org.jvnet.hudson.test.RestartableJenkinsRule;
 import org.jvnet.hudson.test.recipes.LocalData;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
@@ -241,4 +247,56 @@ public class ContentMappingsTest {
             assertTrue(stopWords.contains(originalVersion));
         });
     }
+
+    @Test
+    public void newMappingsAreJournaledUntilSaved() {
+        rr.then(r -> {
+            ContentMappings mappings = ContentMappings.get();
+            for (int i = 0; i < 10; i++) {
+                mappings.getMappingOrCreate("journaled_" + i, original -> ContentMapping.of(original, "replaced_" + original));
+            }
+            File config = Persistence.getConfigFile(ContentMappings.class).getFile();
+            assertFalse(config.exists() && FileUtils.readFileToString(config, StandardCharsets.UTF_8).contains("journaled_"));
+            assertTrue(getJournal(r).exists());
+        });
+        rr.then(r -> {
+            ContentMappings mappings = ContentMappings.get();
+            for (int i = 0; i < 10; i++) {
+                assertThat(mappings.getMappings(), hasEntry("journaled_" + i, "replaced_journaled_" + i));
+            }
+            mappings.save();
+            assertFalse(getJournal(r).exists());
+        });
+        rr.then(r -> {
+            assertThat(ContentMappings.get().getMappings(), hasEntry("journaled_9", "replaced_journaled_9"));
+        });
+    }
+
+    @Ignore("Only useful to measure the heap used by the mappings when changing them")
+    @Test
+    public void heapPerHundredThousandMappings() {
+        rr.then(r -> {
+            ContentMappings mappings = ContentMappings.get();
+            try (BulkChange ignored = new BulkChange(mappings)) {
+                long before = usedHeap();
+                for (int i = 0; i < 100_000; i++) {
+                    mappings.getMappingOrCreate("job-name-" + i, original -> ContentMapping.of(original, "item_brave_turing_" + original));
+                }
+                long after = usedHeap();
+                System.out.println("Heap used by 100k mappings: " + (after - before) / 1024 + " KB");
+            }
+        });
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static File getJournal(JenkinsRule r) {
+        return new File(r.jenkins.getRootDir(), ContentMappings.class.getCanonicalName() + ".journal");
+    }
 }
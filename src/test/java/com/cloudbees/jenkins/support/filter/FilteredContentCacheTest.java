@@ -0,0 +1,129 @@
+package com.cloudbees.jenkins.support.filter;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FilteredContentCacheTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final AtomicInteger filterings = new AtomicInteger();
+
+    @Test
+    public void unchangedFilesAreCopied() throws Exception {
+        FilteredContentCache cache = FilteredContentCache.get();
+        ContentMappings mappings = ContentMappings.get();
+        mappings.getMappingOrCreate("carol", original -> ContentMapping.of(original, "user_carol"));
+        File file = write("hello alice and carol\n");
+
+        assertThat(filter(cache, file)).isEqualTo("hello alice and user_carol\n");
+        assertThat(filter(cache, file)).isEqualTo("hello alice and user_carol\n");
+        assertThat(filterings).hasValue(1);
+
+        // A mapping not found in the file keeps the copy
+        mappings.getMappingOrCreate("bob", original -> ContentMapping.of(original, "user_bob"));
+        assertThat(filter(cache, file)).isEqualTo("hello alice and user_carol\n");
+        assertThat(filterings).hasValue(1);
+
+        mappings.getMappingOrCreate("alice", original -> ContentMapping.of(original, "user_alice"));
+        assertThat(filter(cache, file)).isEqualTo("hello user_alice and user_carol\n");
+        assertThat(filterings).hasValue(2);
+
+        Files.write(file.toPath(), "goodbye carol\n".getBytes(StandardCharsets.UTF_8));
+        assertThat(file.setLastModified(System.currentTimeMillis() - 5000)).isTrue();
+        assertThat(filter(cache, file)).isEqualTo("goodbye user_carol\n");
+        assertThat(filterings).hasValue(3);
+
+        mappings.clear();
+        assertThat(filter(cache, file)).isEqualTo("goodbye carol\n");
+        assertThat(filterings).hasValue(4);
+    }
+
+    @Test
+    public void recentlyModifiedFilesAreNotCached() throws Exception {
+        FilteredContentCache cache = FilteredContentCache.get();
+        File file = temp.newFile();
+        Files.write(file.toPath(), "just written\n".getBytes(StandardCharsets.UTF_8));
+
+        filter(cache, file);
+        filter(cache, file);
+        assertThat(filterings).hasValue(2);
+    }
+
+    @Test
+    public void mappingsAddedWhileFilteringAreKnown() throws Exception {
+        FilteredContentCache cache = FilteredContentCache.get();
+        ContentMappings mappings = ContentMappings.get();
+
+        // Like an address found in the file by the filter itself
+        File file = write("hello dave\n");
+        assertThat(filter(cache, file, () -> mappings.getMappingOrCreate("dave", original -> ContentMapping.of(original, "user_dave")), () -> {}))
+                .isEqualTo("hello user_dave\n");
+        assertThat(filter(cache, file)).isEqualTo("hello user_dave\n");
+        assertThat(filterings).hasValue(1);
+
+        // Like an address found in another file filtered at the same time
+        File other = write("hello erin\n");
+        assertThat(filter(cache, other, () -> {}, () -> mappings.getMappingOrCreate("erin", original -> ContentMapping.of(original, "user_erin"))))
+                .isEqualTo("hello erin\n");
+        assertThat(filter(cache, other)).isEqualTo("hello user_erin\n");
+        assertThat(filterings).hasValue(3);
+    }
+
+    @Test
+    public void onlyBuiltInFiltersAreCacheable() {
+        assertThat(FilteredContentCache.isCacheable(SensitiveContentFilter.get())).isTrue();
+        assertThat(FilteredContentCache.isCacheable(InetAddressContentFilter.get())).isTrue();
+        // Its state is not known, so a change would not be noticed
+        assertThat(FilteredContentCache.isCacheable(ContentFilter.ALL)).isFalse();
+    }
+
+    @TestExtension("onlyBuiltInFiltersAreCacheable")
+    public static class CustomFilter implements ContentFilter {
+        @Override
+        public @NonNull String filter(@NonNull String input) {
+            return input;
+        }
+    }
+
+    private File write(String content) throws IOException {
+        File file = temp.newFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        // Old enough to be cached
+        assertThat(file.setLastModified(System.currentTimeMillis() - 10000)).isTrue();
+        return file;
+    }
+
+    private String filter(FilteredContentCache cache, File file) throws IOException {
+        return filter(cache, file, () -> {}, () -> {});
+    }
+
+    private String filter(FilteredContentCache cache, File file, Runnable before, Runnable after) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cache.write(file, "test", out, os -> {
+            filterings.incrementAndGet();
+            before.run();
+            String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            os.write(SensitiveContentFilter.get().filter(content).getBytes(StandardCharsets.UTF_8));
+            after.run();
+        });
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -23,17 +23,22 @@
  */
 package com.cloudbees.jenkins.support.filter;
 
+import edu.umd.cs.findbugs.annotations.NonNull;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.CharSequenceInputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.jvnet.hudson.test.Issue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.nio.CharBuffer;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -149,4 +154,59 @@ public class FilteredOutputStreamTest {
                 .isNotEmpty()
                 .isEqualTo(original.toUpperCase(Locale.ENGLISH));
     }
+
+    @Test
+    public void shouldNotCopyLinesLeftUntouched() throws IOException {
+        AtomicInteger copies = new AtomicInteger();
+        ContentFilter filter = new ContentFilter() {
+            @Override
+            public @NonNull String filter(@NonNull String input) {
+                copies.incrementAndGet();
+                return input;
+            }
+
+            @Override
+            public @NonNull CharSequence filter(@NonNull CharSequence input) {
+                return input.charAt(0) == '#' ? filter(input.toString().replace("#", "//")) : input;
+            }
+        };
+        FilteredOutputStream out = new FilteredOutputStream(testOutput, filter);
+        out.write("first line\n# second line\nthird line\n".getBytes(UTF_8));
+        out.flush();
+
+        assertThat(new String(testOutput.toByteArray(), UTF_8))
+                .isEqualTo("first line\n// second line\nthird line\n");
+        assertThat(copies.get()).isEqualTo(1);
+    }
+
+    @Ignore("Only useful to measure the memory allocated when filtering huge files")
+    @Test
+    public void allocationTest() throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        byte[] line = (FAKE_TEXT + '\n').getBytes(UTF_8);
+        long lines = 1024L * 1024 * 1024 / line.length;
+        ContentFilter filter = new ContentFilter() {
+            @Override
+            public @NonNull String filter(@NonNull String input) {
+                return input;
+            }
+
+            @Override
+            public @NonNull CharSequence filter(@NonNull CharSequence input) {
+                return input;
+            }
+        };
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        try (FilteredOutputStream out = new FilteredOutputStream(NullOutputStream.NULL_OUTPUT_STREAM, filter)) {
+            for (long i = 0; i < lines; i++) {
+                out.write(line);
+            }
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        System.out.printf("Allocated %d bytes to filter %d bytes%n", allocated, lines * line.length);
+        assertThat(allocated).isLessThan(lines * line.length);
+    }
 }
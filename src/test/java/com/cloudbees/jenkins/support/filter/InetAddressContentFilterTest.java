@@ -23,12 +23,14 @@
  */
 package com.cloudbees.jenkins.support.filter;
 
+import com.cloudbees.jenkins.support.util.Chrono;
 import hudson.BulkChange;
 import jenkins.model.Jenkins;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.jvnet.hudson.test.Issue;
 import org.jvnet.hudson.test.JenkinsRule;
@@ -87,6 +89,71 @@ public class InetAddressContentFilterTest {
             .isEqualTo(Jenkins.VERSION);
     }
 
+    @Test
+    public void prefilterKeepsAllAddresses() {
+        qt().forAll(inetAddress()).checkAssert(address ->
+            assertThat(InetAddressContentFilter.mayContainAddress("Connection from " + address + " refused")).isTrue()
+        );
+        for (String line : LOG_LINES) {
+            if (!line.contains("10.0.12.34")) {
+                assertThat(InetAddressContentFilter.mayContainAddress(line)).as(line).isFalse();
+            }
+        }
+    }
+
+    @Test
+    public void cachedReplacementsAreForgottenWhenMappingsAreCleared() {
+        InetAddressContentFilter filter = InetAddressContentFilter.get();
+        String filtered = ContentFilter.filter(filter, "Connection from 10.0.12.34 refused");
+        assertThat(filtered).doesNotContain("10.0.12.34");
+        assertThat(ContentFilter.filter(filter, "Connection from 10.0.12.34 refused")).isEqualTo(filtered);
+
+        resetMappings();
+        assertThat(ContentFilter.filter(filter, "Connection from 10.0.12.34 refused")).doesNotContain("10.0.12.34");
+        assertThat(ContentMappings.get().getMappings()).containsKey("10.0.12.34");
+    }
+
+    @Ignore("Only useful to measure the filter when changing it")
+    @Test
+    public void performanceTest() {
+        InetAddressContentFilter filter = InetAddressContentFilter.get();
+        int iterations = 200000;
+        try (BulkChange ignored = new BulkChange(ContentMappings.get())) {
+            Chrono c = new Chrono("InetAddressContentFilter");
+            int found = 0;
+            for (int i = 0; i < iterations; i++) {
+                for (String line : LOG_LINES) {
+                    if (InetAddressContentFilter.IP_ADDRESS.matcher(line).find()) {
+                        found++;
+                    }
+                }
+            }
+            c.markFromPrevious("Regular expression only");
+            for (int i = 0; i < iterations; i++) {
+                for (String line : LOG_LINES) {
+                    filter.filter((CharSequence) line);
+                }
+            }
+            c.markFromPrevious("Filter");
+            assertThat(found).isEqualTo(iterations);
+            System.out.println(c.printMeasure("Regular expression only"));
+            System.out.println(c.printMeasure("Filter"));
+        }
+    }
+
+    private static final String[] LOG_LINES = {
+        "2023-01-01 12:34:56.789+0000 [id=42]\tINFO\thudson.model.AsyncPeriodicWork#lambda$doRun$1: Finished Download metadata. 18,214 ms",
+        "2023-01-01 12:34:57.001+0000 [id=87]\tWARNING\thudson.slaves.ChannelPinger$1#onDead: Ping failed. Terminating the channel agent-3.",
+        "java.util.concurrent.TimeoutException: Ping started at 1672576496789 hasn't completed by 1672576736789",
+        "\tat hudson.remoting.PingThread.ping(PingThread.java:134)",
+        "\tat hudson.remoting.Channel.call(Channel.java:1002)",
+        "Caused by: java.io.IOException: Connection reset by peer",
+        "2023-01-01 12:35:02.117+0000 [id=91]\tINFO\thudson.TcpSlaveAgentListener$ConnectionHandler#run: Accepted JNLP4-connect connection #12 from /10.0.12.34:51234",
+        "Started by user admin",
+        "[Pipeline] sh",
+        "+ mvn -B -Dmaven.test.failure.ignore=true clean verify",
+    };
+
     private Gen<String> inetAddress() {
         return ipv4().mix(ipv6());
     }
@@ -1,11 +1,19 @@
 package com.cloudbees.jenkins.support.filter;
 
+import com.cloudbees.jenkins.support.util.Chrono;
 import org.junit.ClassRule;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
@@ -87,4 +95,120 @@ public class PasswordRedactorTest {
         variables.put("secret", "gdfdfdddd");
         assertThat(new PasswordRedactor(null, null).redact(variables), is(variables));
     }
+
+    @Test
+    public void redactWhenSecretValueAlsoFollowsAnotherKeyThenOnlySecretRedacted() {
+        assertThat(PasswordRedactor.get().redact("user=word password=word"), is("user=word password=REDACTED"));
+    }
+
+    @Test
+    public void redactWhenStreamedThenSameAsWholeInput() throws IOException {
+        PasswordRedactor redactor = new PasswordRedactor(PasswordRedactorRegexBuilder.PASSWORD_PATTERN,
+                PasswordRedactorRegexBuilder.SECRET_PROPERTY_MATCHER, true);
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; input.length() < 100_000; i++) {
+            input.append("VAR_").append(i).append("=value").append(i).append(i % 3 == 0 ? '\0' : '\n');
+            input.append(i % 2 == 0 ? "password = " : "-Dtoken=").append("secret").append(i).append(' ');
+        }
+
+        StringWriter streamed = new StringWriter();
+        redactor.redact(new StringReader(input.toString()), streamed);
+
+        assertThat(streamed.toString(), is(redactor.redact(input.toString())));
+        assertFalse(streamed.toString().contains("secret"));
+    }
+
+    @Test
+    public void redactWhenStreamedWithoutWhitespaceThenSecretsNotCut() throws IOException {
+        PasswordRedactor redactor = new PasswordRedactor(PasswordRedactorRegexBuilder.PASSWORD_PATTERN,
+                PasswordRedactorRegexBuilder.SECRET_PROPERTY_MATCHER, true);
+        // Like /proc/self/environ, longer than anything held in memory before
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; input.length() < 3_000_000; i++) {
+            input.append("VAR_").append(i).append("=value").append(i).append('\0');
+            input.append("PASSWORD_").append(i).append("=secret").append(i).append(i % 5 == 0 ? ',' : '\0');
+        }
+
+        StringWriter streamed = new StringWriter();
+        // Odd reads, so the secrets are read across several of them
+        redactor.redact(new Reader() {
+            private final StringReader reader = new StringReader(input.toString());
+
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                return reader.read(cbuf, off, Math.min(len, 997));
+            }
+
+            @Override
+            public void close() {
+                reader.close();
+            }
+        }, streamed);
+
+        assertThat(streamed.toString(), is(redactor.redact(input.toString())));
+        assertFalse(streamed.toString().contains("secret"));
+    }
+
+    @Test
+    public void partialStartWhenSecretCouldGoOnThenBeforeIt() {
+        assertThat(PasswordRedactor.partialStart("a password = b"), is(2));
+        assertThat(PasswordRedactor.partialStart("password =  b c"), is(14));
+        assertThat(PasswordRedactor.partialStart("password\n=\nvalue"), is(0));
+        assertThat(PasswordRedactor.partialStart("a=b\0password"), is(2));
+        assertThat(PasswordRedactor.partialStart("a=b\0password="), is(2));
+        assertThat(PasswordRedactor.partialStart("a=b c=password=x,y"), is(15));
+        assertThat(PasswordRedactor.partialStart("x\0password=value\0"), is(11));
+        assertThat(PasswordRedactor.partialStart("password=value "), is(9));
+    }
+
+    @Ignore("Only useful to measure the redactor when changing it")
+    @Test
+    public void performanceTest() throws IOException {
+        Map<String, String> environment = new HashMap<>();
+        StringBuilder environ = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            String key = i % 10 == 0 ? "SERVICE_" + i + "_TOKEN" : "VARIABLE_" + i;
+            String value = i % 7 == 0 ? "-Dhttp.proxyPassword=secret" + i + " -Dsome.option=" + i : "/opt/tool/" + i + "/bin";
+            environment.put(key, value);
+            environ.append(key).append('=').append(value).append('\0');
+        }
+        PasswordRedactor redactor = PasswordRedactor.get();
+        for (int round = 0; round < 5; round++) {
+            Chrono c = new Chrono("PasswordRedactor");
+            Map<String, String> previous = new HashMap<>();
+            for (Map.Entry<String, String> entry : environment.entrySet()) {
+                previous.put(entry.getKey(), entry.getKey().matches(PasswordRedactorRegexBuilder.SECRET_PROPERTY_MATCHER)
+                        ? PasswordRedactor.REDACTED : previousRedact(entry.getValue()));
+            }
+            c.markFromPrevious("Previous map redaction");
+            Map<String, String> redacted = redactor.redact(environment);
+            c.markFromPrevious("Map redaction");
+            // Quadratic in the number of secrets, so only measured once
+            String previousEnviron = round == 0 ? previousRedact(environ.toString()) : null;
+            c.markFromPrevious("Previous environ redaction");
+            StringWriter streamed = new StringWriter();
+            redactor.redact(new StringReader(environ.toString()), streamed);
+            c.markFromPrevious("Streamed environ redaction");
+            assertThat(redacted, is(previous));
+            if (previousEnviron != null) {
+                assertThat(streamed.toString(), is(previousEnviron));
+                System.out.println(c.printMeasure("Previous environ redaction"));
+            }
+            System.out.println(c.printMeasure("Previous map redaction"));
+            System.out.println(c.printMeasure("Map redaction"));
+            System.out.println(c.printMeasure("Streamed environ redaction"));
+        }
+    }
+
+    /**
+     * How secrets were redacted before, recompiling an expression and scanning the input again for each secret.
+     */
+    private static String previousRedact(String input) {
+        Matcher patternMatcher = PasswordRedactorRegexBuilder.PASSWORD_PATTERN.matcher(input);
+        while (patternMatcher.find()) {
+            String secretValue = patternMatcher.group(2);
+            input = input.replaceFirst("=\\s*" + Pattern.quote(secretValue), "=" + PasswordRedactor.REDACTED);
+        }
+        return input;
+    }
 }
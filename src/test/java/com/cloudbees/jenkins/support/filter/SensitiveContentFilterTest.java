@@ -111,4 +111,41 @@ public class SensitiveContentFilterTest {
         assertThat(filter.filter(os)).isEqualTo(os);
         assertThat(filter.filter(label)).startsWith("label_").isNotEqualTo(label);
     }
+
+    @Test
+    public void namesChangedSinceTheLastReloadAreFound() throws Exception {
+        SensitiveContentFilter filter = SensitiveContentFilter.get();
+        filter.reload();
+        FreeStyleProject project = j.createFreeStyleProject("bazstrange");
+        project.setDisplayName("quxstrange");
+        FreeStyleProject renamed = j.createFreeStyleProject("tmpstrange");
+        renamed.renameTo("renamedstrange");
+        j.createSlave("nodestrange", "labelstrange", null);
+        j.getInstance().addView(new ListView("viewstrange"));
+        User.getOrCreateByIdOrFullName("userstrange");
+        filter.reload();
+
+        assertThat(filter.filter("bazstrange")).startsWith("item_");
+        assertThat(filter.filter("quxstrange")).startsWith("item_");
+        assertThat(filter.filter("renamedstrange")).startsWith("item_");
+        assertThat(filter.filter("nodestrange")).doesNotContain("nodestrange");
+        assertThat(filter.filter("labelstrange")).startsWith("label_");
+        assertThat(filter.filter("viewstrange")).startsWith("view_");
+        assertThat(filter.filter("userstrange")).startsWith("user_");
+    }
+
+    @Test
+    public void labelsOfTheControllerChangedSinceTheLastReloadAreFound() throws Exception {
+        SensitiveContentFilter filter = SensitiveContentFilter.get();
+        filter.reload();
+        try {
+            j.getInstance().setLabelString("controllerstrange");
+            assertThat(j.getInstance().getLabel("controllerstrange").getNodes()).contains(j.getInstance());
+            filter.reload();
+
+            assertThat(filter.filter("controllerstrange")).startsWith("label_");
+        } finally {
+            j.getInstance().setLabelString("");
+        }
+    }
 }
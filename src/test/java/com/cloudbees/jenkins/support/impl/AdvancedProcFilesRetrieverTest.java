@@ -0,0 +1,48 @@
+package com.cloudbees.jenkins.support.impl;
+
+import com.cloudbees.jenkins.support.util.SystemPlatform;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.Assume.assumeTrue;
+
+public class AdvancedProcFilesRetrieverTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void filesAreCollectedTogether() throws Exception {
+        assumeTrue(SystemPlatform.current() == SystemPlatform.LINUX);
+        File first = temp.newFile("first");
+        Files.write(first.toPath(), "first content\n".getBytes(StandardCharsets.UTF_8));
+        File second = temp.newFile("second");
+        Files.write(second.toPath(), "second content\n".getBytes(StandardCharsets.UTF_8));
+        String missing = new File(temp.getRoot(), "missing").getPath();
+
+        AdvancedProcFilesRetriever.CollectedProcFiles collected = AdvancedProcFilesRetriever.CollectedProcFiles.read(
+                Arrays.asList(first.getPath(), missing, second.getPath()));
+
+        assertThat(collected.getPlatform()).isEqualTo(SystemPlatform.LINUX);
+        assertThat(write(collected, second.getPath())).isEqualTo("second content\n");
+        assertThat(write(collected, first.getPath())).isEqualTo("first content\n");
+        assertThat(write(collected, missing)).startsWith("--- WARNING: Could not attach " + missing);
+        assertThatThrownBy(() -> write(collected, "/not/collected")).isInstanceOf(IOException.class);
+    }
+
+    private static String write(AdvancedProcFilesRetriever.CollectedProcFiles collected, String path) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        collected.writeTo(path, out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
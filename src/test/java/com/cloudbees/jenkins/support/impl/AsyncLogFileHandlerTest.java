@@ -0,0 +1,93 @@
+package com.cloudbees.jenkins.support.impl;
+
+import hudson.util.io.RewindableRotatingFileOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AsyncLogFileHandlerTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void filesAreRotatedBySize() throws Exception {
+        File file = new File(temp.getRoot(), "rotated.log");
+        RewindableRotatingFileOutputStream stream = new RewindableRotatingFileOutputStream(file, 9);
+        stream.rewind();
+        AsyncLogFileHandler handler = new AsyncLogFileHandler("rotated", stream, 100, 300,
+                AsyncLogFileHandler.OverflowPolicy.BLOCK);
+        for (int i = 0; i < 10; i++) {
+            handler.publish(new LogRecord(Level.INFO, "record " + i));
+        }
+        handler.flush();
+        handler.close();
+
+        assertThat(handler.getQueuedCount()).isEqualTo(10);
+        assertThat(handler.getDroppedCount()).isZero();
+        assertThat(new File(temp.getRoot(), "rotated.log.1")).exists();
+        StringBuilder all = new StringBuilder();
+        for (int i = 9; i >= 1; i--) {
+            File rotated = new File(temp.getRoot(), "rotated.log." + i);
+            if (rotated.exists()) {
+                assertThat(rotated.length()).isLessThanOrEqualTo(300);
+                all.append(read(rotated));
+            }
+        }
+        assertThat(file.length()).isLessThanOrEqualTo(300);
+        all.append(read(file));
+        for (int i = 0; i < 10; i++) {
+            assertThat(all.toString()).contains("record " + i + "\n");
+        }
+    }
+
+    @Test
+    public void oldestRecordsAreDroppedWhenTheQueueIsFull() throws Exception {
+        File file = new File(temp.getRoot(), "full.log");
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RewindableRotatingFileOutputStream stream = new RewindableRotatingFileOutputStream(file, 9) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                super.write(b, off, len);
+            }
+        };
+        stream.rewind();
+        AsyncLogFileHandler handler = new AsyncLogFileHandler("full", stream, 2, Long.MAX_VALUE,
+                AsyncLogFileHandler.OverflowPolicy.DROP_OLDEST);
+        handler.publish(new LogRecord(Level.INFO, "first"));
+        // The writer thread holds the first record and waits
+        writing.await();
+        handler.publish(new LogRecord(Level.INFO, "second"));
+        handler.publish(new LogRecord(Level.INFO, "third"));
+        handler.publish(new LogRecord(Level.INFO, "fourth"));
+        assertThat(handler.getDroppedCount()).isEqualTo(1);
+        assertThat(handler.getQueueDepth()).isEqualTo(2);
+        release.countDown();
+        handler.flush();
+        handler.close();
+
+        assertThat(read(file)).contains("first\n", "third\n", "fourth\n").doesNotContain("second");
+        assertThat(handler.getMaxEnqueueNanos()).isPositive();
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -17,10 +17,12 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Objects;
 import java.util.Set;
 import java.util.logging.Level;
+import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 
 import static org.junit.Assert.assertFalse;
@@ -71,4 +73,33 @@ public class CustomLogsTest {
         assertFalse("Should write CustomLogsTest FINE logs", customLogs.isEmpty());
         assertThat(customLogs , Matchers.containsString("Testing custom log recorders"));
     }
+
+    @Test
+    public void recordsAreRoutedByLoggerName() {
+        LogRecorder a = new LogRecorder("a");
+        a.getLoggers().add(new LogRecorder.Target("a.b", Level.FINE));
+        LogRecorder b = new LogRecorder("b");
+        b.getLoggers().add(new LogRecorder.Target("", Level.INFO));
+        LogRecorder c = new LogRecorder("c");
+        c.getLoggers().add(new LogRecorder.Target("a", Level.WARNING));
+        c.getLoggers().add(new LogRecorder.Target("a.b.c", Level.FINEST));
+        CustomLogs.RecorderIndex index = CustomLogs.RecorderIndex.of(Arrays.asList(a, b, c));
+
+        assertThat(index.route(record("a.b.c.d", Level.FINE)), Matchers.containsInAnyOrder("a", "c"));
+        assertThat(index.route(record("a.b", Level.SEVERE)), Matchers.containsInAnyOrder("a", "b", "c"));
+        assertThat(index.route(record("a.bc", Level.FINE)), Matchers.empty());
+        assertThat(index.route(record("x", Level.INFO)), Matchers.contains("b"));
+        assertThat(index.route(record(null, Level.SEVERE)), Matchers.contains("b"));
+        assertThat(index.route(record("a.b.c", Level.FINEST)), Matchers.contains("c"));
+
+        assertFalse(index.isOutdated(Arrays.asList(a, b, c)));
+        a.getLoggers().add(new LogRecorder.Target("other", Level.FINE));
+        assertTrue(index.isOutdated(Arrays.asList(a, b, c)));
+    }
+
+    private static LogRecord record(String loggerName, Level level) {
+        LogRecord record = new LogRecord(level, "message");
+        record.setLoggerName(loggerName);
+        return record;
+    }
 }
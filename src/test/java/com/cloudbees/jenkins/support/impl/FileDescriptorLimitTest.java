@@ -18,8 +18,11 @@ import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
 
 import java.io.FileInputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 
 public class FileDescriptorLimitTest {
@@ -70,4 +73,30 @@ public class FileDescriptorLimitTest {
         MatcherAssert.assertThat(output, not(containsString(SENSITIVE_JOB_NAME)));
         MatcherAssert.assertThat(output, containsString(FILTERED_JOB_NAME));
     }
+
+    @Test
+    public void summaryCountsByTypeAndDirectory() {
+        FileDescriptorLimit.FileDescriptorSummary summary = new FileDescriptorLimit.FileDescriptorSummary();
+        summary.add("/var/jenkins/jobs/a/builds/1/log");
+        summary.add("/var/jenkins/jobs/a/builds/1/log");
+        summary.add("/var/jenkins/war/WEB-INF/lib/core.jar");
+        summary.add("/tmp/deleted.txt (deleted)");
+        summary.add("/dev/null");
+        summary.add("socket:[1234]");
+        summary.add("socket:[5678]");
+        summary.add("pipe:[42]");
+        summary.add("anon_inode:[eventpoll]");
+        StringWriter out = new StringWriter();
+        summary.printTo(new PrintWriter(out), null);
+        String output = out.toString();
+        MatcherAssert.assertThat(summary.getCount(), is(9));
+        MatcherAssert.assertThat(output, containsString("  * file: 3\n"));
+        MatcherAssert.assertThat(output, containsString("  * deleted file: 1\n"));
+        MatcherAssert.assertThat(output, containsString("  * device: 1\n"));
+        MatcherAssert.assertThat(output, containsString("  * socket: 2\n"));
+        MatcherAssert.assertThat(output, containsString("  * pipe: 1\n"));
+        MatcherAssert.assertThat(output, containsString("  * anon_inode eventpoll: 1\n"));
+        MatcherAssert.assertThat(output, containsString("  * /var/jenkins/jobs/a/builds/1: 2\n"));
+        MatcherAssert.assertThat(output, containsString("  * /var/jenkins/war/WEB-INF/lib: 1\n"));
+    }
 }
@@ -0,0 +1,123 @@
+package com.cloudbees.jenkins.support.impl;
+
+import com.cloudbees.jenkins.support.SupportTestUtils;
+import hudson.slaves.DumbSlave;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+
+public class ThreadDumpsTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void agentThreadDumpIsStreamed() throws Exception {
+        DumbSlave agent = j.createOnlineSlave();
+        Map<String, String> output = SupportTestUtils.invokeComponentToMap(new ThreadDumps());
+
+        String dump = output.get("nodes/slave/" + agent.getNodeName() + "/thread-dump.txt");
+        assertThat(dump, startsWith(agent.getNodeName() + "\n======\n\n"));
+        // Written by the agent while streaming its own thread dump
+        assertThat(dump, containsString(ThreadDumps.class.getName() + ".threadDump"));
+    }
+
+    @Test
+    public void fastModeLimitsStackDepth() throws Exception {
+        ByteArrayOutputStream full = new ByteArrayOutputStream();
+        ThreadDumps.threadDump(full, false, Integer.MAX_VALUE);
+        ByteArrayOutputStream fast = new ByteArrayOutputStream();
+        ThreadDumps.threadDump(fast, true, 2);
+
+        String frame = ThreadDumpsTest.class.getName() + ".fastModeLimitsStackDepth";
+        assertThat(full.toString("UTF-8"), containsString(frame));
+        assertThat(fast.toString("UTF-8"), startsWith("Fast mode: at most 2 frames per thread"));
+        assertThat(fast.toString("UTF-8"), not(containsString(frame)));
+        assertThat(fast.toString("UTF-8"), containsString("\"" + Thread.currentThread().getName() + "\""));
+    }
+
+    @Test
+    public void identicalStacksAreAggregated() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // done
+                }
+            }, "aggregated-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        try {
+            for (Thread thread : threads) {
+                while (thread.getState() != Thread.State.WAITING) {
+                    Thread.sleep(10);
+                }
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ThreadDumps.threadDump(out, false, Integer.MAX_VALUE, true);
+            String dump = out.toString("UTF-8");
+
+            assertThat(dump, startsWith("Aggregated: "));
+            assertThat(dump, containsString("5 threads state=WAITING"));
+            for (Thread thread : threads) {
+                assertThat(dump, containsString("    \"" + thread.getName() + "\" id=" + thread.getId()));
+            }
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void aggregatedThreadsShowTheLocks() throws Exception {
+        Object lock = new Object();
+        List<Thread> threads = new ArrayList<>();
+        try {
+            synchronized (lock) {
+                for (int i = 0; i < 3; i++) {
+                    Thread thread = new Thread(() -> {
+                        synchronized (lock) {
+                            lock.notifyAll();
+                        }
+                    }, "blocked-" + i);
+                    thread.start();
+                    threads.add(thread);
+                }
+                for (Thread thread : threads) {
+                    while (thread.getState() != Thread.State.BLOCKED) {
+                        Thread.sleep(10);
+                    }
+                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ThreadDumps.threadDump(out, false, Integer.MAX_VALUE, true);
+                String dump = out.toString("UTF-8");
+
+                String hash = Integer.toHexString(System.identityHashCode(lock));
+                assertThat(dump, containsString("3 threads state=BLOCKED"));
+                assertThat(dump, containsString("    - waiting to lock <0x" + StringUtils.leftPad(hash, 8, '0')
+                        + "> (a java.lang.Object)\n      owned by \"" + Thread.currentThread().getName() + "\" id="
+                        + Thread.currentThread().getId()));
+                assertThat(dump, containsString("      - locked java.lang.Object@" + hash));
+            }
+        } finally {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+    }
+}
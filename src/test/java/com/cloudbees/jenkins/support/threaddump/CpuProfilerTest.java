@@ -0,0 +1,127 @@
+package com.cloudbees.jenkins.support.threaddump;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CpuProfilerTest {
+
+    private static volatile long sink;
+
+    @Test
+    public void busyThreadsAreSampled() throws Exception {
+        CpuProfiler profiler = new CpuProfiler(60_000, 2, 1024 * 1024, 128);
+        AtomicBoolean done = new AtomicBoolean();
+        Thread busy = new Thread(() -> spin(done), "busy-42");
+        busy.start();
+        try {
+            for (int i = 0; i < 20; i++) {
+                profiler.sample(120_000 + i);
+                Thread.sleep(20);
+            }
+        } finally {
+            done.set(true);
+            busy.join();
+        }
+
+        List<CpuProfiler.Window> windows = profiler.getWindows();
+        assertThat(windows).hasSize(1);
+        CpuProfiler.Window window = windows.get(0);
+        assertThat(window.getStart()).isEqualTo(120_000);
+        assertThat(window.getSamples()).isEqualTo(20);
+        assertThat(window.getStacks())
+                .extracting(Map.Entry::getKey)
+                .anyMatch(stack -> stack.startsWith("busy-42;java.lang.Thread.run;")
+                        && stack.contains(";" + CpuProfilerTest.class.getName() + ".spin"));
+    }
+
+    @Test
+    public void oldestWindowsAreDropped() {
+        CpuProfiler profiler = new CpuProfiler(1000, 3, 1024 * 1024, 128);
+        for (long now = 0; now < 5000; now += 500) {
+            profiler.sample(now);
+        }
+
+        assertThat(profiler.getWindows())
+                .extracting(CpuProfiler.Window::getStart)
+                .containsExactly(2000L, 3000L, 4000L);
+    }
+
+    @Test
+    public void stacksBeyondTheBudgetAreCountedTogether() {
+        CpuProfiler.Window window = new CpuProfiler.Window(0);
+        StringBuilder frames = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            frames.append(";Frame").append(i);
+            window.add(Collections.singletonList("pool-#" + frames), i, 300);
+        }
+
+        assertThat(window.getOverflows()).isPositive();
+        assertThat(window.getStacks())
+                .extracting(Map.Entry::getKey)
+                .contains("pool-#;" + CpuProfiler.OVERFLOW_FRAME);
+        assertThat(window.getStacks().stream().mapToLong(Map.Entry::getValue).sum()).isEqualTo(10);
+    }
+
+    @Test
+    public void threadNamesAreFilteredBeforeBeingGrouped() throws Exception {
+        CpuProfiler profiler = new CpuProfiler(60_000, 2, 1024 * 1024, 128);
+        AtomicBoolean done = new AtomicBoolean();
+        Thread busy = new Thread(() -> spin(done), "Executor #1 for prod-db-01");
+        busy.start();
+        try {
+            for (int i = 0; i < 20; i++) {
+                profiler.sample(120_000 + i);
+                Thread.sleep(20);
+            }
+        } finally {
+            done.set(true);
+            busy.join();
+        }
+
+        StringWriter out = new StringWriter();
+        CpuProfileComponent.printStacks(new PrintWriter(out), profiler.getWindows().get(0),
+                s -> s.replace("prod-db-01", "computer_a"));
+        assertThat(out.toString())
+                .contains("Executor ## for computer_a;java.lang.Thread.run;")
+                .doesNotContain("prod-db");
+    }
+
+    @Test
+    public void threadsOfAPoolAreCountedTogetherWhenPrinted() {
+        CpuProfiler.Window window = new CpuProfiler.Window(0);
+        List<String> stacks = new ArrayList<>();
+        for (int i = 0; i < CpuProfiler.MAX_THREAD_NAMES + 4; i++) {
+            stacks.add("pool-1-thread-" + i + ";Frame");
+        }
+        window.add(stacks, 0, 1024 * 1024);
+
+        assertThat(window.getStacks()).hasSize(CpuProfiler.MAX_THREAD_NAMES);
+        StringWriter out = new StringWriter();
+        CpuProfileComponent.printStacks(new PrintWriter(out), window, null);
+        assertThat(out.toString()).isEqualTo("pool-#-thread-#;Frame " + stacks.size() + System.lineSeparator());
+    }
+
+    @Test
+    public void threadNamesAreGrouped() {
+        assertThat(CpuProfiler.threadGroupName("Executor #12 for agent-3 : executing job;a #456"))
+                .isEqualTo("Executor ## for agent-# : executing job,a ##");
+    }
+
+    private static void spin(AtomicBoolean done) {
+        long x = 0;
+        while (!done.get()) {
+            x += System.nanoTime() % 7;
+        }
+        // So the loop is not optimized away
+        sink = x;
+    }
+}
@@ -0,0 +1,129 @@
+package com.cloudbees.jenkins.support.util;
+
+import com.cloudbees.jenkins.support.filter.FilteredOutputStreamTest;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MultiWordReplacerTest {
+
+    @Test
+    public void caseReplacementsTest() {
+        String[] originals = new String[]{"a", "b", "c"};
+        String[] replaces  = new String[]{"1", "2", "3"};
+        String input = "a A b,B.c:C abc ABC ignored";
+
+        assertEquals("1 A 2,B.3:C abc ABC ignored", MultiWordReplacer.of(originals, replaces).replace(input));
+        assertEquals("1 1 2,2.3:3 abc ABC ignored", MultiWordReplacer.ofIgnoreCase(originals, replaces).replace(input));
+    }
+
+    @Test
+    public void sameResultAsWordReplacerTest() {
+        String[] searches = new String[]{"one", "two"};
+        String[] replaces = new String[]{"111", "111"};
+
+        String[] inputs = new String[] {
+                "", "a", "none", "one should be replaced", "onecar shouldn't be replaced", "two is replaced",
+                "must replace two", "shouldn't replace twoo", "one!one,one!onetwoone_twoone#one?one:one->one\"one",
+                "'one|twoone, \"one\\two one\ntwo one\ttwo one=two (one+two*one) all replaced ",
+                "one\\two one\ntwo one\ttwo one=two (one+two*one) all replaced "};
+
+        MultiWordReplacer replacer = MultiWordReplacer.ofIgnoreCase(searches, replaces);
+        for (String input : inputs) {
+            assertEquals(WordReplacer.replaceWordsIgnoreCase(input, searches, replaces), replacer.replace(input));
+        }
+    }
+
+    @Test
+    public void longestWordWinsTest() {
+        String[] words = new String[]{"foo", "foo bar", "foo/bar"};
+        String[] replaces = new String[]{"item_1", "item_2", "item_3"};
+        MultiWordReplacer replacer = MultiWordReplacer.ofIgnoreCase(words, replaces);
+
+        assertEquals("item_2 item_1 item_3 item_1/barbar", replacer.replace("Foo Bar foo foo/bar foo/barbar"));
+    }
+
+    @Test
+    public void replacementsAreNotReplacedAgainTest() {
+        String[] words = new String[]{"input", "i"};
+        String[] replaces = new String[]{"i", "x"};
+
+        assertEquals("i x o", MultiWordReplacer.of(words, replaces).replace("input i o"));
+    }
+
+    @Test
+    public void firstReplaceIsKeptForDuplicatedWordsTest() {
+        String[] words = new String[]{"Foo", "foo"};
+        String[] replaces = new String[]{"first", "second"};
+        MultiWordReplacer replacer = MultiWordReplacer.ofIgnoreCase(words, replaces);
+
+        assertEquals(1, replacer.size());
+        assertEquals("first first", replacer.replace("foo FOO"));
+    }
+
+    @Test
+    public void sameInstanceWhenNothingReplacedTest() {
+        String input = "nothing to replace here";
+        assertSame(input, MultiWordReplacer.ofIgnoreCase(new String[]{"foo"}, new String[]{"bar"}).replace(input));
+        assertSame(input, MultiWordReplacer.empty().replace(input));
+    }
+
+    @Test
+    public void canSplitTest() {
+        MultiWordReplacer replacer = MultiWordReplacer.ofIgnoreCase(new String[]{"John Smith", "foo"}, new String[]{"user", "bar"});
+        String input = "hi John Smith, foo foobar";
+        for (int i = 0; i <= input.length(); i++) {
+            boolean expected = replacer.replace(input).equals(replacer.replace(input.substring(0, i)) + replacer.replace(input.substring(i)));
+            if (!expected) {
+                assertFalse("Split at " + i, replacer.canSplit(input, i));
+            }
+        }
+        assertTrue(replacer.canSplit(input, 3));
+        assertFalse(replacer.canSplit(input, 8));
+        assertFalse(replacer.canSplit(input, 22));
+        assertTrue(MultiWordReplacer.empty().canSplit(input, 8));
+    }
+
+    @Ignore("Only useful to compare both implementations when changing them")
+    @Test
+    public void performanceTest() {
+        // Simulate an instance with lots of items, nodes and users
+        List<String> words = new ArrayList<>();
+        List<String> replaceList = new ArrayList<>();
+        for (int i = 0; i < 40000; i++) {
+            words.add("name" + i);
+            replaceList.add("item_" + i);
+        }
+        String[] searches = words.toArray(new String[0]);
+        String[] replaces = replaceList.toArray(new String[0]);
+
+        List<String> text = Stream.generate(() -> FilteredOutputStreamTest.FAKE_TEXT).limit(5).collect(Collectors.toList());
+
+        Chrono c = new Chrono("Test WordReplacer Vs MultiWordReplacer");
+        for (String line : text) {
+            WordReplacer.replaceWordsIgnoreCase(line, searches, replaces);
+        }
+        c.markFromPrevious("WordReplacer");
+
+        MultiWordReplacer replacer = MultiWordReplacer.ofIgnoreCase(searches, replaces);
+        c.markFromPrevious("MultiWordReplacer compilation");
+        for (String line : text) {
+            replacer.replace(line);
+        }
+        c.markFromPrevious("MultiWordReplacer");
+
+        System.out.println(c.printMeasure("WordReplacer"));
+        System.out.println(c.printMeasure("MultiWordReplacer compilation"));
+        System.out.println(c.printMeasure("MultiWordReplacer"));
+        assertTrue(c.getMeasure("WordReplacer") > c.getMeasure("MultiWordReplacer"));
+    }
+}